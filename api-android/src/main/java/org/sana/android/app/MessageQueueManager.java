@@ -1,20 +1,12 @@
 package org.sana.android.app;
 
-import java.util.Collection;
-import java.util.PriorityQueue;
-
 import org.sana.android.provider.Encounters;
-import org.sana.net.Response;
-import org.sana.net.Response.Code;
 
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.util.Log;
 
 /**
  * Manages the messages waiting to be dispatched. This class replaces
@@ -129,49 +121,25 @@ public class MessageQueueManager {
         }
     }
     
-    private static final PriorityQueue<Uri> queue = new PriorityQueue<Uri>();
-    private static final String[] PROJECTION = { };
-    
     /**
-     * Initializes the in-memory queue with what is stored in the database.
-     */
-    public static void initialize(Context c) {
-        Cursor cursor = null;
-        try {
-            // Initialize the queue from the database
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (cursor != null)
-                cursor.close();
-        }
-    }
-    
-    /**
-     * Updates upload status of items currently in the queue
-     *  
+     * Initializes the shared queue with what is stored in the database.
+     * 
      * @param c the current context
-     * @param queue
+     * @return the shared queue
      */
-    public static void persist(Context c, PriorityQueue<Uri> queue) {
-        Log.i(TAG, "updateQueueInDB()");
-        
+    public static UploadQueue initialize(Context c) {
+        return UploadQueue.getInstance(c);
     }
     
     /**
      * Adds an item to the global queue.
      * 
      * @param c the current context
-     * @param queue the queue to update from 
      * @param uri the procedure in the queue
      */
-    public static void add(Context c, PriorityQueue<Uri> queue, 
-            Uri uri) 
+    public static void add(Context c, Uri uri) 
     {
-        queue.add(uri);
-        setStatus(c, uri, UPLOAD_STATUS_WAITING);
-        persist(c, queue);
+        UploadQueue.getInstance(c).offer(uri, UPLOAD_STATUS_WAITING);
     }
     
 
@@ -179,64 +147,46 @@ public class MessageQueueManager {
      * Removes an item to the global queue.
      * 
      * @param c the current context
-     * @param queue the queue to update from 
      * @param uri the procedure in the queue
      */
-    public static boolean remove(Context c, PriorityQueue<Uri> queue, 
-            Uri uri) 
+    public static boolean remove(Context c, Uri uri) 
     {
-        return remove(c, uri, State.NOT_IN_QUEUE.code);
+        return remove(c, uri, UPLOAD_STATUS_NOT_IN_QUEUE);
     }
     
     /**
      * Removes an item to the global queue and updates its upload status. 
      * 
      * @param c the current context
-     * @param queue the queue to update from 
      * @param uri the procedure in the queue
      * @param newStatus the new upload status
      * @return true if the procedure was in the queue and updated
      */
     public static boolean remove(Context c, Uri uri, int newStatus) 
     {
-        if (MessageQueueManager.contains(uri)) {
-            queue.remove(uri);
-            persist(c, queue);
-            setStatus(c, uri, newStatus);
-            return true;
-        }
-        return false;
+        return UploadQueue.getInstance(c).remove(uri, newStatus);
     }
     
     /**
      * Checks whether a procedure is in the queue
      * 
-     * @param queue the queue to check 
+     * @param c the current context
      * @param uri the procedure look for
-     * @return true if the procedure was in the queue and updated
+     * @return true if the procedure was in the queue
      */
-    public static boolean contains(Uri uri) {
-        return queue.contains(uri);
+    public static boolean contains(Context c, Uri uri) {
+        return UploadQueue.getInstance(c).contains(uri);
     }
     
     /**
      * Finds the location of procedure is in the queue
      * 
-     * @param queue the queue to check 
+     * @param c the current context
      * @param uri the procedure look for
      * @return index of the procedure in the queue or -1
      */
-    public static int indexOf(Uri uri) {
-        if (contains(uri)) {
-            int index = 0;
-            for (Uri u : queue) {
-                if (uri.equals(u)) {
-                    return index;
-                }
-                index++;
-            }
-        }
-        return -1;
+    public static int indexOf(Context c, Uri uri) {
+        return UploadQueue.getInstance(c).indexOf(uri);
     }
     
     /**
@@ -250,23 +200,19 @@ public class MessageQueueManager {
             int status) 
     {
         ContentValues cv = new ContentValues();
+        cv.put(Encounters.Contract.UPLOAD_STATUS, status);
         c.getContentResolver().update(uri, cv, null, null); 
     }
     
     /**
-     * Updates the upload status for a list procedures.
+     * Updates the upload status of every procedure in the queue.
      * 
      * @param c the current context
-     * @param uris the procedures to update
      * @param status the new status
      */
-    public static void setStatus(Context c, 
-            Collection<Uri> uris, int status) 
+    public static void setStatus(Context c, int status) 
     {
-        ContentValues cv = new ContentValues();
-        for (Uri uri : uris) {
-            c.getContentResolver().update(uri, cv, null, null);
-        }
+        UploadQueue.getInstance(c).setStatus(status);
     }
 
 }
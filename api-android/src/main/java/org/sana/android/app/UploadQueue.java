@@ -0,0 +1,275 @@
+package org.sana.android.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.sana.android.provider.Encounters;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * Durable queue of the encounters waiting to be uploaded. The queue is stored
+ * in the {@link org.sana.android.provider.Encounters.Contract#UPLOAD_QUEUE
+ * UPLOAD_QUEUE} column, which is indexed, as a position which only needs to
+ * be increasing along the queue. Rows which are not queued hold -1. Positions
+ * are not renumbered when an item leaves the queue so each change to the
+ * queue writes only the row which changed, and the queue status and position
+ * of a row are always written together in a single update.
+ * <p/>
+ * The in-memory ordering is kept in a sorted map so that adding, removing or
+ * moving an item is O(log n). A single instance is shared by every component
+ * in the process through {@link #getInstance(Context)}.
+ *
+ * @author Sana Development Team
+ * @since 2.0
+ */
+public class UploadQueue {
+    private static final String TAG = UploadQueue.class.getSimpleName();
+
+    /** The position value of rows which are not in the queue. */
+    public static final int NOT_IN_QUEUE = -1;
+
+    /** The upload status value of items which are being uploaded. */
+    public static final int STATUS_IN_PROGRESS =
+            MessageQueueManager.UPLOAD_STATUS_IN_PROGRESS;
+
+    static final String QUEUED = Encounters.Contract.UPLOAD_QUEUE + " >= 0";
+
+    private static final String[] PROJECTION = { Encounters.Contract._ID,
+        Encounters.Contract.UPLOAD_QUEUE };
+
+    private static UploadQueue sInstance = null;
+
+    private final ContentResolver mResolver;
+    private final Uri mContentUri;
+    private final TreeMap<Long, Uri> mQueue = new TreeMap<Long, Uri>();
+    private final Map<Uri, Long> mPositions = new HashMap<Uri, Long>();
+
+    /**
+     * Returns the queue of encounters, loading it from the database the first
+     * time it is requested.
+     *
+     * @param context the current context
+     * @return the shared queue
+     */
+    public static synchronized UploadQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UploadQueue(context.getContentResolver(),
+                    Encounters.CONTENT_URI);
+            sInstance.load();
+        }
+        return sInstance;
+    }
+
+    UploadQueue(ContentResolver resolver, Uri contentUri) {
+        mResolver = resolver;
+        mContentUri = contentUri;
+    }
+
+    /**
+     * Reads the queued items from the database replacing anything held in
+     * memory.
+     */
+    public synchronized void load() {
+        mQueue.clear();
+        mPositions.clear();
+        Cursor cursor = null;
+        try {
+            cursor = mResolver.query(mContentUri, PROJECTION, QUEUED, null,
+                    Encounters.QUEUE_SORT_ORDER);
+            while (cursor != null && cursor.moveToNext()) {
+                Uri uri = ContentUris.withAppendedId(mContentUri,
+                        cursor.getLong(0));
+                put(uri, cursor.getLong(1));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Unable to load queue: " + e.toString());
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+        Log.i(TAG, "Loaded " + mQueue.size() + " queued items.");
+    }
+
+    /**
+     * Adds an item to the end of the queue and sets its upload status.
+     *
+     * @param uri the encounter
+     * @param status the upload status
+     * @return true if the item was added or false if it was already queued
+     */
+    public synchronized boolean offer(Uri uri, int status) {
+        if (mPositions.containsKey(uri))
+            return false;
+        long position = mQueue.isEmpty() ? 0 : mQueue.lastKey() + 1;
+        write(uri, position, status);
+        put(uri, position);
+        return true;
+    }
+
+    /**
+     * Returns the item at the head of the queue without removing it.
+     *
+     * @return the first item or null if the queue is empty
+     */
+    public synchronized Uri peek() {
+        return mQueue.isEmpty() ? null : mQueue.get(mQueue.firstKey());
+    }
+
+    /**
+     * Removes an item from the queue and sets its upload status.
+     *
+     * @param uri the encounter
+     * @param status the upload status
+     * @return true if the item was in the queue
+     */
+    public synchronized boolean remove(Uri uri, int status) {
+        Long position = mPositions.get(uri);
+        if (position == null)
+            return false;
+        write(uri, NOT_IN_QUEUE, status);
+        mPositions.remove(uri);
+        mQueue.remove(position);
+        return true;
+    }
+
+    /**
+     * Moves a queued item ahead of every other item. The queue is renumbered
+     * only when there is no room left in front of the head, which leaves
+     * space for as many moves as there are items.
+     *
+     * @param uri the encounter
+     * @return true if the item was in the queue
+     */
+    public synchronized boolean moveToFront(Uri uri) {
+        Long position = mPositions.get(uri);
+        if (position == null)
+            return false;
+        if (position.equals(mQueue.firstKey()))
+            return true;
+        if (mQueue.firstKey() == 0)
+            shift(mQueue.size());
+        long front = mQueue.firstKey() - 1;
+        mQueue.remove(mPositions.get(uri));
+        writePosition(uri, front);
+        put(uri, front);
+        return true;
+    }
+
+    /**
+     * Marks a queued item as being uploaded. The status is only changed if
+     * the item is still queued when the update is executed so an item
+     * removed by another component is not picked up again.
+     *
+     * @param uri the encounter
+     * @return true if the item was queued and is now in progress
+     */
+    public synchronized boolean claim(Uri uri) {
+        if (!mPositions.containsKey(uri))
+            return false;
+        ContentValues values = new ContentValues();
+        values.put(Encounters.Contract.UPLOAD_STATUS, STATUS_IN_PROGRESS);
+        return mResolver.update(uri, values, QUEUED, null) > 0;
+    }
+
+    /**
+     * Sets the upload status of every queued item with a single update.
+     *
+     * @param status the upload status
+     * @return the number of rows updated
+     */
+    public synchronized int setStatus(int status) {
+        if (mQueue.isEmpty())
+            return 0;
+        ContentValues values = new ContentValues();
+        values.put(Encounters.Contract.UPLOAD_STATUS, status);
+        return mResolver.update(mContentUri, values, QUEUED, null);
+    }
+
+    public synchronized boolean contains(Uri uri) {
+        return mPositions.containsKey(uri);
+    }
+
+    /**
+     * Finds the location of an item in the queue.
+     *
+     * @param uri the encounter
+     * @return the number of items ahead of it or -1 if it is not queued
+     */
+    public synchronized int indexOf(Uri uri) {
+        Long position = mPositions.get(uri);
+        return (position == null) ? -1 : mQueue.headMap(position).size();
+    }
+
+    /**
+     * Converts a value read from the
+     * {@link org.sana.android.provider.Encounters.Contract#UPLOAD_QUEUE
+     * UPLOAD_QUEUE} column to the location in the queue.
+     *
+     * @param position the stored position
+     * @return the number of items ahead of it or -1 if it is not queued
+     */
+    public synchronized int indexOfPosition(long position) {
+        return mQueue.containsKey(position) ?
+                mQueue.headMap(position).size() : -1;
+    }
+
+    public synchronized int size() {
+        return mQueue.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return mQueue.isEmpty();
+    }
+
+    /**
+     * Returns a snapshot of the queued items in order.
+     */
+    public synchronized List<Uri> toList() {
+        return new ArrayList<Uri>(mQueue.values());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mQueue.values().toString();
+    }
+
+    private void put(Uri uri, long position) {
+        mQueue.put(position, uri);
+        mPositions.put(uri, position);
+    }
+
+    // Moves every item back by offset
+    private void shift(long offset) {
+        Log.d(TAG, "Renumbering " + mQueue.size() + " queued items.");
+        List<Uri> items = new ArrayList<Uri>(mQueue.values());
+        long position = mQueue.firstKey() + offset;
+        mQueue.clear();
+        for (Uri uri : items) {
+            writePosition(uri, position);
+            put(uri, position++);
+        }
+    }
+
+    private void write(Uri uri, long position, int status) {
+        ContentValues values = new ContentValues();
+        values.put(Encounters.Contract.UPLOAD_QUEUE, position);
+        values.put(Encounters.Contract.UPLOAD_STATUS, status);
+        mResolver.update(uri, values, null, null);
+    }
+
+    private void writePosition(Uri uri, long position) {
+        ContentValues values = new ContentValues();
+        values.put(Encounters.Contract.UPLOAD_QUEUE, position);
+        mResolver.update(uri, values, null, null);
+    }
+}
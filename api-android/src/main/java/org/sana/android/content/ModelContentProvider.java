@@ -29,6 +29,13 @@ package org.sana.android.content;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.sana.android.db.DBUtils;
 import org.sana.android.db.DatabaseManager;
@@ -44,13 +51,20 @@ import org.sana.android.db.impl.ObservationsHelper;
 import org.sana.android.db.impl.ObserversHelper;
 import org.sana.android.db.impl.ProceduresHelper;
 import org.sana.android.db.impl.SubjectsHelper;
+import org.sana.android.provider.Encounters;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
@@ -65,6 +79,11 @@ import android.util.Log;
  * {@link org.sana.android.db.TableHelper} class to handle interactions for
  * each table. Extending classes should only need to implement the {@link #onCreate()}
  * method which provide the database name and version.
+ * <p>
+ * The provider holds no lock of its own. Reads and writes are serialized by
+ * the database, which the {@link org.sana.android.db.DatabaseOpenHelper} 
+ * opens in write-ahead logging mode where available so that queries do not
+ * wait on writes.
  * 
  * @author Sana Development
  *
@@ -81,8 +100,24 @@ public abstract class ModelContentProvider extends ContentProvider {
 	public static final int ITEMS = 0;
 	public static final int ITEM_ID = 1;
 	
+	/** 
+	 * Query parameter limiting the number of rows returned by a query. It is
+	 * removed before any remaining query parameters are converted to a 
+	 * selection.
+	 */
+	public static final String QUERY_LIMIT = "limit";
+	
+	/** 
+	 * Query parameter giving the number of rows to skip. Only used along 
+	 * with {@link #QUERY_LIMIT}.
+	 */
+	public static final String QUERY_OFFSET = "offset";
+	
 	static final ModelMatcher mMatcher = ModelMatcher.getInstance();
 	
+	// Change notifications deferred while a batch is applied on a thread
+	private final ThreadLocal<Set<Uri>> mPendingChanges = new ThreadLocal<Set<Uri>>();
+	
 	protected String getTable(Uri uri){
 		return getTableHelper(uri).getTable();
 	}
@@ -120,7 +155,8 @@ public abstract class ModelContentProvider extends ContentProvider {
 	 * @see android.content.ContentProvider#delete(android.net.Uri, java.lang.String, java.lang.String[])
 	 */
 	@Override
-	public synchronized  int delete(Uri uri, String selection, String[] selectionArgs) {
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		checkWritable(uri);
         Log.d(TAG, "delete() uri=" + uri 
 				+ ", selection= " + selection
 			    + ", selectionArgs=" + ((selectionArgs != null)?TextUtils.join(",", selectionArgs):"null")
@@ -134,7 +170,7 @@ public abstract class ModelContentProvider extends ContentProvider {
         SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();//mOpener.getWritableDatabase();
 		int count = db.delete(table, selection, selectionArgs); //getTableHelper(uri).onDelete(db, whereClause, selectionArgs);
         DatabaseManager.getInstance().closeDatabase();//
-		getContext().getContentResolver().notifyChange(uri, null);
+		notifyChange(uri);
 		return count;
 	}
 
@@ -150,7 +186,8 @@ public abstract class ModelContentProvider extends ContentProvider {
 	 * @see android.content.ContentProvider#insert(android.net.Uri, android.content.ContentValues)
 	 */
 	@Override
-	public synchronized Uri insert(Uri uri, ContentValues values) {
+	public Uri insert(Uri uri, ContentValues values) {
+		checkWritable(uri);
 		Log.d(TAG, "insert(" + uri.toString() +", N = " 
 	        	+ String.valueOf((values == null)?0:values.size()) + " values.)");
         TableHelper<?> helper = getTableHelper(uri);
@@ -163,7 +200,7 @@ public abstract class ModelContentProvider extends ContentProvider {
 		DatabaseManager.getInstance().closeDatabase();
 		
 		Uri result = ContentUris.withAppendedId(uri, id);
-		getContext().getContentResolver().notifyChange(uri, null);
+		notifyChange(uri);
 		Log.d(TAG, "insert(): Successfully inserted => " + result);
 		return result;
 	}
@@ -173,13 +210,50 @@ public abstract class ModelContentProvider extends ContentProvider {
 	 * @see android.content.ContentProvider#query(android.net.Uri, java.lang.String[], java.lang.String, java.lang.String[], java.lang.String)
 	 */
 	@Override
-	public synchronized Cursor query(Uri uri, String[] projection, String selection,
+	public Cursor query(Uri uri, String[] projection, String selection,
 			String[] selectionArgs, String sortOrder) {
         Log.d(TAG, ".query(" + uri.toString() +");");
         TableHelper<?> helper = getTableHelper(uri);
         
         // set query and execute
         sortOrder = (TextUtils.isEmpty(sortOrder))? helper.onSort(uri): sortOrder;
+        String limit = uri.getQueryParameter(QUERY_LIMIT);
+        String offset = uri.getQueryParameter(QUERY_OFFSET);
+        if(limit != null){
+            try{
+                limit = String.valueOf(Integer.parseInt(limit));
+                if(offset != null)
+                    limit = Integer.parseInt(offset) + "," + limit;
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("Invalid limit: " + limit
+                        + ", offset: " + offset);
+            }
+        }
+        uri = Uris.withoutQueryParameter(uri, QUERY_LIMIT);
+        uri = Uris.withoutQueryParameter(uri, QUERY_OFFSET);
+        if(Uris.getDescriptor(uri) == Uris.ENCOUNTER_SUMMARY){
+            SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();
+            Cursor cursor = EncountersHelper.getInstance().onQuerySummary(db,
+                    projection, selection, selectionArgs, sortOrder, limit);
+            // observe the encounters so that changes to any item reload
+            cursor.setNotificationUri(getContext().getContentResolver(),
+                    Encounters.CONTENT_URI);
+            return cursor;
+        }
+        if(Uris.getDescriptor(uri) == Uris.SUBJECT_SEARCH){
+            // content://authority/core/<subject|patient>/search/<text>
+            List<String> segments = uri.getPathSegments();
+            String search = (segments.size() > 3)? segments.get(3): null;
+            SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();
+            Cursor cursor = SubjectsHelper.getInstance().onSearch(db, search,
+                    projection, selection, selectionArgs, sortOrder, limit);
+            Uri dir = uri.buildUpon()
+                    .path("/" + segments.get(0) + "/" + segments.get(1))
+                    .query(null)
+                    .build();
+            cursor.setNotificationUri(getContext().getContentResolver(), dir);
+            return cursor;
+        }
 		switch(Uris.getTypeDescriptor(uri)){
 		case(Uris.ITEM_ID):
 			selection = DBUtils.getWhereClauseWithID(uri, selection);
@@ -199,7 +273,7 @@ public abstract class ModelContentProvider extends ContentProvider {
 		qb.setTables(helper.getTable());
         SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();//mOpener.getReadableDatabase();
         //Cursor cursor = helper.onQuery(db, projection, selection, selectionArgs, sortOrder);
-        Cursor cursor = qb.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+        Cursor cursor = qb.query(db, projection, selection, selectionArgs, null, null, sortOrder, limit);
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         Log.d(TAG, ".query(" + uri.toString() +") count = " + ((cursor!=null)?cursor.getCount():0));
         return cursor;
@@ -209,8 +283,9 @@ public abstract class ModelContentProvider extends ContentProvider {
 	 * @see android.content.ContentProvider#update(android.net.Uri, android.content.ContentValues, java.lang.String, java.lang.String[])
 	 */
 	@Override
-	public synchronized int update(Uri uri, ContentValues values, String selection,
+	public int update(Uri uri, ContentValues values, String selection,
 			String[] selectionArgs) {
+		checkWritable(uri);
         Log.d(TAG, ".update(" + uri.toString() +");");//mOpener.getWritableDatabase();
 		
         // set any default update values
@@ -230,10 +305,136 @@ public abstract class ModelContentProvider extends ContentProvider {
         SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();
 		int result = db.update(table, values, selection, selectionArgs);
 		DatabaseManager.getInstance().closeDatabase();
-		getContext().getContentResolver().notifyChange(uri, null);
+		notifyChange(uri);
 		return result;
 	}
 	
+	/**
+	 * Throws an exception if a uri refers to a read only summary of joined
+	 * tables or search results, which have no single table to write to.
+	 * 
+	 * @param uri The uri to check.
+	 * @throws UnsupportedOperationException if the uri is read only.
+	 */
+	protected void checkWritable(Uri uri){
+		int type = Uris.getTypeDescriptor(uri);
+		if(type == Uris.ITEMS_SUMMARY || type == Uris.ITEMS_SEARCH)
+			throw new UnsupportedOperationException("Read only uri: " + uri);
+	}
+	
+	/**
+	 * Inserts all of the values within a single transaction. Rows with the
+	 * same set of columns share one compiled insert statement and a single
+	 * change notification is sent when the transaction completes.
+	 */
+	@Override
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		checkWritable(uri);
+		int size = (values == null)? 0: values.length;
+		Log.d(TAG, "bulkInsert(" + uri.toString() +", N = " + size + " rows.)");
+		if(size == 0)
+			return 0;
+		TableHelper<?> helper = getTableHelper(uri);
+		Map<List<String>, SQLiteStatement> statements = 
+				new HashMap<List<String>, SQLiteStatement>();
+		int count = 0;
+		SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();
+		db.beginTransaction();
+		try{
+			for(ContentValues value:values){
+				// Sort by column so that equal column sets compile once
+				TreeMap<String,Object> row = new TreeMap<String,Object>();
+				for(Map.Entry<String,Object> entry:helper.onInsert(value).valueSet())
+					row.put(entry.getKey(), entry.getValue());
+				List<String> columns = new ArrayList<String>(row.keySet());
+				SQLiteStatement statement = statements.get(columns);
+				if(statement == null){
+					statement = helper.compileInsert(db, columns);
+					statements.put(columns, statement);
+				}
+				statement.clearBindings();
+				int index = 1;
+				for(Object arg:row.values()){
+					DatabaseUtils.bindObjectToProgram(statement, index++, arg);
+				}
+				try{
+					if(statement.executeInsert() != -1)
+						count++;
+				} catch (SQLException e){
+					Log.e(TAG, "bulkInsert(): Error inserting row. " + e.getMessage());
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+			for(SQLiteStatement statement:statements.values())
+				statement.close();
+			DatabaseManager.getInstance().closeDatabase();
+		}
+		notifyChange(uri);
+		Log.d(TAG, "bulkInsert(): Successfully inserted " + count + " rows.");
+		return count;
+	}
+	
+	/**
+	 * Applies the operations within a single transaction. Change 
+	 * notifications from the individual operations are collected and sent 
+	 * once per content directory after the transaction is committed.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(
+			ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException 
+	{
+		Log.d(TAG, "applyBatch(N = " + operations.size() + " operations.)");
+		Set<Uri> changes = new HashSet<Uri>();
+		mPendingChanges.set(changes);
+		boolean successful = false;
+		SQLiteDatabase db = DatabaseManager.getInstance().openDatabase();
+		db.beginTransaction();
+		try{
+			ContentProviderResult[] results = super.applyBatch(operations);
+			db.setTransactionSuccessful();
+			successful = true;
+			return results;
+		} finally {
+			db.endTransaction();
+			DatabaseManager.getInstance().closeDatabase();
+			mPendingChanges.remove();
+			if(successful){
+				for(Uri uri:changes)
+					getContext().getContentResolver().notifyChange(uri, null);
+			}
+		}
+	}
+	
+	/**
+	 * Sends a change notification for a uri or, if a batch is being applied
+	 * by the calling thread, defers it until the batch completes.
+	 * 
+	 * @param uri The changed uri.
+	 */
+	protected void notifyChange(Uri uri){
+		Set<Uri> changes = mPendingChanges.get();
+		if(changes == null){
+			getContext().getContentResolver().notifyChange(uri, null);
+			return;
+		}
+		// collapse item changes into their content directory
+		switch(Uris.getTypeDescriptor(uri)){
+		case(Uris.ITEM_ID):
+		case(Uris.ITEM_UUID):
+			String path = uri.getPath();
+			uri = uri.buildUpon()
+				.path(path.substring(0, path.lastIndexOf('/')))
+				.query(null)
+				.build();
+			break;
+		default:
+		}
+		changes.add(uri);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see android.content.ContentProvider#openFile(android.net.Uri, java.lang.String)
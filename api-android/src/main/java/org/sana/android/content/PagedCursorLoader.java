@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.android.content;
+
+import org.sana.android.db.PagedCursor;
+import org.sana.android.db.PagedCursor.Keyset;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * A loader which returns a {@link org.sana.android.db.PagedCursor} in place
+ * of a cursor over every row of a content directory. It is used in the same
+ * way as {@link android.support.v4.content.CursorLoader} except that the sort
+ * order is given by a {@link org.sana.android.db.PagedCursor.Keyset Keyset}.
+ * The cursor is reloaded when the directory changes.
+ *
+ * @author Sana Development
+ *
+ */
+public class PagedCursorLoader extends AsyncTaskLoader<Cursor> {
+
+	final ForceLoadContentObserver mObserver;
+	final Uri mUri;
+	final String[] mProjection;
+	final String mSelection;
+	final String[] mSelectionArgs;
+	final Keyset mKeyset;
+	final int mPageSize;
+
+	Cursor mCursor;
+
+	/**
+	 * Creates a loader which reads pages of
+	 * {@link org.sana.android.db.PagedCursor#PAGE_SIZE PAGE_SIZE} rows.
+	 */
+	public PagedCursorLoader(Context context, Uri uri, String[] projection,
+			String selection, String[] selectionArgs, Keyset keyset)
+	{
+		this(context, uri, projection, selection, selectionArgs, keyset,
+				PagedCursor.PAGE_SIZE);
+	}
+
+	public PagedCursorLoader(Context context, Uri uri, String[] projection,
+			String selection, String[] selectionArgs, Keyset keyset,
+			int pageSize)
+	{
+		super(context);
+		mObserver = new ForceLoadContentObserver();
+		mUri = uri;
+		mProjection = projection;
+		mSelection = selection;
+		mSelectionArgs = selectionArgs;
+		mKeyset = keyset;
+		mPageSize = pageSize;
+	}
+
+	/* Runs on a worker thread */
+	@Override
+	public Cursor loadInBackground() {
+		PagedCursor cursor = new PagedCursor(getContext().getContentResolver(),
+				mUri, mProjection, mSelection, mSelectionArgs, mKeyset,
+				mPageSize);
+		try{
+			cursor.load();
+		} catch (RuntimeException e){
+			cursor.close();
+			throw e;
+		}
+		cursor.setNotificationUri(getContext().getContentResolver(), mUri);
+		cursor.registerContentObserver(mObserver);
+		return cursor;
+	}
+
+	/* Runs on the UI thread */
+	@Override
+	public void deliverResult(Cursor cursor) {
+		if (isReset()) {
+			// An async query came in while the loader is stopped
+			if (cursor != null) {
+				cursor.close();
+			}
+			return;
+		}
+		Cursor oldCursor = mCursor;
+		mCursor = cursor;
+
+		if (isStarted()) {
+			super.deliverResult(cursor);
+		}
+
+		if (oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()) {
+			oldCursor.close();
+		}
+	}
+
+	@Override
+	protected void onStartLoading() {
+		if (mCursor != null) {
+			deliverResult(mCursor);
+		}
+		if (takeContentChanged() || mCursor == null) {
+			forceLoad();
+		}
+	}
+
+	@Override
+	protected void onStopLoading() {
+		cancelLoad();
+	}
+
+	@Override
+	public void onCanceled(Cursor cursor) {
+		if (cursor != null && !cursor.isClosed()) {
+			cursor.close();
+		}
+	}
+
+	@Override
+	protected void onReset() {
+		super.onReset();
+
+		// Ensure the loader is stopped
+		onStopLoading();
+
+		if (mCursor != null && !mCursor.isClosed()) {
+			mCursor.close();
+		}
+		mCursor = null;
+	}
+}
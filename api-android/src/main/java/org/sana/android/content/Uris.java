@@ -76,6 +76,10 @@ public final class Uris {
 	public static final int ITEM_UUID = 4;
 	public static final int ITEM_RELATED = 8;
     public static final int ITEM_FILE = 16;
+    /** A read only directory of rows joined with their related content. */
+    public static final int ITEMS_SUMMARY = 32;
+    /** A read only directory of rows matching a full text search. */
+    public static final int ITEMS_SEARCH = 64;
 
 	public static final int TYPE_WIDTH = 8;
 	public static final int TYPE_SHIFT = 0;
@@ -191,6 +195,12 @@ public final class Uris {
 	public static final int ENCOUNTER_TASK_UUID = ENCOUNTER_TASK | ITEM_UUID;
 	public static final int OBSERVATION_TASK_UUID = OBSERVATION_TASK | ITEM_UUID;
 	
+	// Summary matches
+	public static final int ENCOUNTER_SUMMARY = ENCOUNTER | ITEMS_SUMMARY;
+	
+	// Search matches
+	public static final int SUBJECT_SEARCH = SUBJECT | ITEMS_SEARCH;
+	
 	// Matcher for mapping the Uri to code mappings 
 	private static final UriMatcher mMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 	static{
@@ -209,6 +219,8 @@ public final class Uris {
 		mMatcher.addURI(Models.AUTHORITY, "core/concept/#", CONCEPT_ITEM);
 		mMatcher.addURI(Models.AUTHORITY, "core/concept/*", CONCEPT_UUID);
 		mMatcher.addURI(Models.AUTHORITY, "core/encounter/", ENCOUNTER_DIR);
+		// must precede the uuid match
+		mMatcher.addURI(Models.AUTHORITY, "core/encounter/summary", ENCOUNTER_SUMMARY);
 		mMatcher.addURI(Models.AUTHORITY, "core/encounter/#", ENCOUNTER_ITEM);
 		mMatcher.addURI(Models.AUTHORITY, "core/encounter/*", ENCOUNTER_UUID);
 		mMatcher.addURI(Models.AUTHORITY, "core/event/", EVENT_DIR);
@@ -230,9 +242,14 @@ public final class Uris {
 		mMatcher.addURI(Models.AUTHORITY, "core/procedure/#", PROCEDURE_ITEM);
 		mMatcher.addURI(Models.AUTHORITY, "core/procedure/*", PROCEDURE_UUID);
 		mMatcher.addURI(Models.AUTHORITY, "core/subject/", SUBJECT_DIR);
+		// must precede the uuid match
+		mMatcher.addURI(Models.AUTHORITY, "core/subject/search", SUBJECT_SEARCH);
+		mMatcher.addURI(Models.AUTHORITY, "core/subject/search/*", SUBJECT_SEARCH);
 		mMatcher.addURI(Models.AUTHORITY, "core/subject/#", SUBJECT_ITEM);
 		mMatcher.addURI(Models.AUTHORITY, "core/subject/*", SUBJECT_UUID);
 		mMatcher.addURI(Models.AUTHORITY, "core/patient/", SUBJECT_DIR);
+		mMatcher.addURI(Models.AUTHORITY, "core/patient/search", SUBJECT_SEARCH);
+		mMatcher.addURI(Models.AUTHORITY, "core/patient/search/*", SUBJECT_SEARCH);
 		mMatcher.addURI(Models.AUTHORITY, "core/patient/#", SUBJECT_ITEM);
 		mMatcher.addURI(Models.AUTHORITY, "core/patient/*", SUBJECT_UUID);
 
@@ -334,6 +351,31 @@ public final class Uris {
 		return uri.getLastPathSegment();
 	}
 	
+	/**
+	 * Removes every value of a query parameter from a Uri leaving any other
+	 * parameters in place.
+	 * 
+	 * @param uri The Uri to modify.
+	 * @param key The name of the parameter.
+	 * @return A Uri without the parameter.
+	 */
+	public static Uri withoutQueryParameter(Uri uri, String key){
+		String query = uri.getEncodedQuery();
+		if(TextUtils.isEmpty(query))
+			return uri;
+		StringBuilder remaining = new StringBuilder();
+		for(String param:query.split("&")){
+			if(param.equals(key) || param.startsWith(key + "="))
+				continue;
+			if(remaining.length() > 0)
+				remaining.append("&");
+			remaining.append(param);
+		}
+		return uri.buildUpon()
+			.encodedQuery((remaining.length() > 0)? remaining.toString(): null)
+			.build();
+	}
+	
 	/**
 	 * Appends a uuid String as the last path segment. This method performs no
 	 * validation on the format.
@@ -370,6 +412,7 @@ public final class Uris {
 		case CONCEPT_ITEM:
 			return Concepts.CONTENT_ITEM_TYPE;
 		case ENCOUNTER_DIR:
+		case ENCOUNTER_SUMMARY:
 			return Encounters.CONTENT_TYPE;
 		case ENCOUNTER_UUID:
 		case ENCOUNTER_ITEM:
@@ -405,6 +448,7 @@ public final class Uris {
 		case PROCEDURE_ITEM:
 			return Procedures.CONTENT_ITEM_TYPE;
 		case SUBJECT_DIR:
+		case SUBJECT_SEARCH:
 			return Subjects.CONTENT_TYPE;
 		case SUBJECT_UUID:
 		case SUBJECT_ITEM:
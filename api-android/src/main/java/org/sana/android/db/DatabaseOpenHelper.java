@@ -34,8 +34,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import android.content.Context;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -58,6 +60,24 @@ public abstract class DatabaseOpenHelper extends SQLiteOpenHelper
 	 */
 	public DatabaseOpenHelper(Context context, String name, int version){
 		super(context,name,null,version);
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+			setWriteAheadLoggingEnabled(true);
+	}
+	
+	/**
+	 * Enables write-ahead logging on Honeycomb through Ice Cream Sandwich so
+	 * that readers are not blocked by a writer. Jelly Bean and later enable
+	 * it when the helper is constructed.
+	 */
+	@Override
+	public void onOpen(SQLiteDatabase db){
+		super.onOpen(db);
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+				&& Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+				&& !db.isReadOnly())
+		{
+			db.enableWriteAheadLogging();
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -212,6 +232,30 @@ public abstract class DatabaseOpenHelper extends SQLiteOpenHelper
         }
 	}
 	
+	/**
+	 * Creates the secondary indexes declared by each of the helpers. A unique
+	 * index which can not be created because of existing duplicate rows is 
+	 * created as a plain index instead.
+	 * 
+	 * @param db The database.
+	 * @param helpers The index declarations.
+	 */
+	protected void createIndexes(SQLiteDatabase db, IndexHelper... helpers){
+		for(IndexHelper helper:helpers){
+			for(String sql:helper.onCreateIndexes()){
+				Log.d(TAG, "Executing: "+ sql);
+				try{
+					db.execSQL(sql);
+				} catch (SQLException e){
+					if(!sql.startsWith("CREATE UNIQUE "))
+						throw e;
+					Log.w(TAG, "Unique index failed. " + e.getMessage());
+					db.execSQL(sql.replaceFirst("UNIQUE ", ""));
+				}
+			}
+		}
+	}
+	
 	protected void readAndExecuteStream(SQLiteDatabase db, InputStream in) 
 			throws IOException
 	{
@@ -0,0 +1,440 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.android.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.sana.android.content.ModelContentProvider;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * A read only cursor over a content directory which holds only a few pages
+ * of rows in memory at a time. Pages are read from the provider with a row
+ * limit and are located by a {@link Keyset}, the sort column and row id of
+ * the last row of the preceding page, so that the database seeks directly to
+ * the page through an index rather than stepping over every earlier row. A
+ * page which has not been preceded by a loaded page, for example after a
+ * jump with the fast scroll thumb, is read once by offset instead.
+ * <p>
+ * Moving to a row loads its page if required, starts loading the next and
+ * previous pages in the background and closes pages which are more than
+ * {@link #RETAINED_PAGES} away. The number of rows is counted when the
+ * cursor is loaded, so rows inserted or deleted afterwards are only seen
+ * once the cursor is replaced, typically by a loader observing the
+ * directory.
+ * <p>
+ * Methods other than {@link #load()} should be called from a single thread,
+ * normally the UI thread.
+ *
+ * @author Sana Development
+ *
+ */
+public class PagedCursor extends AbstractCursor {
+	public static final String TAG = PagedCursor.class.getSimpleName();
+
+	/** The default number of rows in a page. */
+	public static final int PAGE_SIZE = 50;
+
+	/** The number of pages either side of the current one kept open. */
+	public static final int RETAINED_PAGES = 2;
+
+	// pages are prefetched one at a time at background priority
+	private static final ExecutorService sPrefetch =
+			Executors.newSingleThreadExecutor(new ThreadFactory(){
+				@Override
+				public Thread newThread(final Runnable r) {
+					return new Thread(new Runnable(){
+						@Override
+						public void run() {
+							Process.setThreadPriority(
+									Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, TAG);
+				}
+			});
+
+	/**
+	 * The ordering of a paged query. Rows are sorted by a column and then by
+	 * row id so that every row has a distinct position. The sort column
+	 * should be indexed. Null values sort before every other value, as they
+	 * do in SQLite, so they come first in ascending order and last in
+	 * descending order.
+	 */
+	public static class Keyset {
+		final String column;
+		final String qualifiedColumn;
+		final String id;
+		final String qualifiedId;
+		final boolean descending;
+
+		/**
+		 * Creates a keyset for a single table.
+		 *
+		 * @param column The sort column.
+		 * @param descending true to sort in descending order.
+		 */
+		public Keyset(String column, boolean descending){
+			this(column, column, BaseColumns._ID, BaseColumns._ID, descending);
+		}
+
+		/**
+		 * Creates a keyset for a query where the column names in the result
+		 * differ from those which must be used in a selection, for example
+		 * a join where the names must be qualified by table.
+		 *
+		 * @param column The sort column in the result.
+		 * @param qualifiedColumn The sort column in a selection.
+		 * @param id The row id column in the result.
+		 * @param qualifiedId The row id column in a selection.
+		 * @param descending true to sort in descending order.
+		 */
+		public Keyset(String column, String qualifiedColumn, String id,
+				String qualifiedId, boolean descending)
+		{
+			this.column = column;
+			this.qualifiedColumn = qualifiedColumn;
+			this.id = id;
+			this.qualifiedId = qualifiedId;
+			this.descending = descending;
+		}
+
+		/**
+		 * Returns the sort order of the query.
+		 */
+		public String getSortOrder(){
+			String direction = (descending)? " DESC": " ASC";
+			return column + direction + "," + id + direction;
+		}
+
+		// The sort order using the selection names, for queries which do
+		// not return the sort columns
+		String getQualifiedSortOrder(){
+			String direction = (descending)? " DESC": " ASC";
+			return qualifiedColumn + direction + "," + qualifiedId + direction;
+		}
+
+		// Selects the rows following a row whose key is bound to the three
+		// arguments as value, value, id or, if the value is null, to the
+		// single argument id
+		String getSelectionAfter(boolean isNull){
+			String op = (descending)? " < ?": " > ?";
+			if(isNull){
+				// only nulls precede non null values
+				return (descending)?
+						"(" + qualifiedColumn + " IS NULL AND " + qualifiedId
+							+ op + ")":
+						"(" + qualifiedColumn + " IS NOT NULL OR "
+							+ qualifiedId + op + ")";
+			}
+			// only nulls follow non null values
+			return "(" + qualifiedColumn + op + " OR (" + qualifiedColumn
+					+ " = ? AND " + qualifiedId + op + ")"
+					+ ((descending)? " OR " + qualifiedColumn + " IS NULL": "")
+					+ ")";
+		}
+	}
+
+	private final ContentResolver mResolver;
+	private final Uri mUri;
+	private final String[] mProjection;
+	private final String mSelection;
+	private final String[] mSelectionArgs;
+	private final Keyset mKeyset;
+	private final int mPageSize;
+	private final int mColumn;
+	private final int mId;
+
+	private int mCount = 0;
+	// Loaded pages which may be written from the prefetch thread
+	private final SparseArray<Cursor> mPages = new SparseArray<Cursor>();
+	// The key of the last row of each page that has been loaded
+	private final SparseArray<String[]> mLastKeys = new SparseArray<String[]>();
+	private final SparseArray<Boolean> mPending = new SparseArray<Boolean>();
+	private Cursor mPage = null;
+
+	/**
+	 * Creates a new cursor. The rows are not read until {@link #load()} is
+	 * called.
+	 *
+	 * @param resolver The resolver to query.
+	 * @param uri The content directory.
+	 * @param projection The columns to return. Must include the keyset
+	 * 	columns.
+	 * @param selection The selection or null.
+	 * @param selectionArgs The selection arguments or null.
+	 * @param keyset The ordering of the rows.
+	 * @param pageSize The number of rows in a page.
+	 * @throws IllegalArgumentException if the projection does not include
+	 * 	the keyset columns.
+	 */
+	public PagedCursor(ContentResolver resolver, Uri uri, String[] projection,
+			String selection, String[] selectionArgs, Keyset keyset,
+			int pageSize)
+	{
+		mResolver = resolver;
+		mUri = uri;
+		mProjection = projection;
+		mSelection = selection;
+		mSelectionArgs = selectionArgs;
+		mKeyset = keyset;
+		mPageSize = pageSize;
+		List<String> columns = Arrays.asList(projection);
+		mColumn = columns.indexOf(keyset.column);
+		mId = columns.indexOf(keyset.id);
+		if(mColumn < 0 || mId < 0)
+			throw new IllegalArgumentException("Projection must include "
+					+ keyset.column + " and " + keyset.id);
+	}
+
+	/**
+	 * Counts the rows and reads the first page. May be called from a
+	 * background thread before the cursor is used.
+	 *
+	 * @return this cursor
+	 */
+	public PagedCursor load(){
+		Cursor c = null;
+		try{
+			c = mResolver.query(mUri, new String[]{ "count(*) AS "
+					+ BaseColumns._COUNT }, mSelection, mSelectionArgs,
+					mKeyset.getQualifiedSortOrder());
+			mCount = (c != null && c.moveToFirst())? c.getInt(0): 0;
+		} finally {
+			if(c != null) c.close();
+		}
+		if(mCount > 0)
+			put(0, query(0));
+		return this;
+	}
+
+	/**
+	 * Returns the number of pages which are open.
+	 */
+	public int getLoadedPageCount(){
+		synchronized(mPages){
+			return mPages.size();
+		}
+	}
+
+	@Override
+	public int getCount() {
+		return mCount;
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return mProjection;
+	}
+
+	@Override
+	public boolean onMove(int oldPosition, int newPosition) {
+		int page = newPosition / mPageSize;
+		Cursor cursor = get(page);
+		if(cursor == null){
+			cursor = query(page);
+			put(page, cursor);
+		}
+		mPage = cursor;
+		prefetch(page + 1);
+		prefetch(page - 1);
+		release(page);
+		// rows deleted since the count are missing from the end of a page
+		return cursor.moveToPosition(newPosition % mPageSize);
+	}
+
+	@Override
+	public String getString(int column) {
+		return mPage.getString(column);
+	}
+
+	@Override
+	public short getShort(int column) {
+		return mPage.getShort(column);
+	}
+
+	@Override
+	public int getInt(int column) {
+		return mPage.getInt(column);
+	}
+
+	@Override
+	public long getLong(int column) {
+		return mPage.getLong(column);
+	}
+
+	@Override
+	public float getFloat(int column) {
+		return mPage.getFloat(column);
+	}
+
+	@Override
+	public double getDouble(int column) {
+		return mPage.getDouble(column);
+	}
+
+	@Override
+	public byte[] getBlob(int column) {
+		return mPage.getBlob(column);
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	@Override
+	public int getType(int column) {
+		return mPage.getType(column);
+	}
+
+	@Override
+	public boolean isNull(int column) {
+		return mPage.isNull(column);
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		synchronized(mPages){
+			for(int i = 0; i < mPages.size(); i++)
+				mPages.valueAt(i).close();
+			mPages.clear();
+		}
+		mPage = null;
+	}
+
+	private Cursor get(int page){
+		synchronized(mPages){
+			return mPages.get(page);
+		}
+	}
+
+	// Adds a loaded page unless the cursor was closed or it was loaded twice
+	private void put(int page, Cursor cursor){
+		synchronized(mPages){
+			if(isClosed() || mPages.get(page) != null){
+				if(cursor != mPages.get(page))
+					cursor.close();
+				return;
+			}
+			mPages.put(page, cursor);
+			if(cursor.moveToLast()){
+				mLastKeys.put(page, new String[]{
+						cursor.getString(mColumn), cursor.getString(mId) });
+			}
+		}
+	}
+
+	// Reads a page by keyset if the previous page has been seen
+	private Cursor query(int page){
+		String[] key = null;
+		synchronized(mPages){
+			key = mLastKeys.get(page - 1);
+		}
+		Uri.Builder builder = mUri.buildUpon();
+		String selection = mSelection;
+		List<String> args = new ArrayList<String>();
+		if(mSelectionArgs != null)
+			args.addAll(Arrays.asList(mSelectionArgs));
+		if(key != null){
+			String after = mKeyset.getSelectionAfter(key[0] == null);
+			selection = (TextUtils.isEmpty(selection))? after:
+					"(" + selection + ") AND " + after;
+			// null can not be bound as an argument
+			if(key[0] != null){
+				args.add(key[0]);
+				args.add(key[0]);
+			}
+			args.add(key[1]);
+			builder.appendQueryParameter(ModelContentProvider.QUERY_LIMIT,
+					String.valueOf(mPageSize));
+		} else {
+			builder.appendQueryParameter(ModelContentProvider.QUERY_OFFSET,
+					String.valueOf(page * mPageSize));
+			builder.appendQueryParameter(ModelContentProvider.QUERY_LIMIT,
+					String.valueOf(mPageSize));
+		}
+		Cursor cursor = mResolver.query(builder.build(), mProjection,
+				selection, args.toArray(new String[args.size()]),
+				mKeyset.getSortOrder());
+		// the rows are read into the window now rather than on first move
+		cursor.getCount();
+		return cursor;
+	}
+
+	private void prefetch(final int page){
+		if(page < 0 || page * mPageSize >= mCount)
+			return;
+		synchronized(mPages){
+			if(mPages.get(page) != null || mPending.get(page) != null)
+				return;
+			mPending.put(page, Boolean.TRUE);
+		}
+		sPrefetch.execute(new Runnable(){
+			@Override
+			public void run() {
+				try{
+					if(!isClosed())
+						put(page, query(page));
+				} catch (Exception e){
+					Log.w(TAG, "Unable to prefetch page " + page + ": "
+							+ e.toString());
+				} finally {
+					synchronized(mPages){
+						mPending.remove(page);
+					}
+				}
+			}
+		});
+	}
+
+	// Closes pages far from the current page
+	private void release(int page){
+		synchronized(mPages){
+			for(int i = mPages.size() - 1; i >= 0; i--){
+				if(Math.abs(mPages.keyAt(i) - page) > RETAINED_PAGES){
+					mPages.valueAt(i).close();
+					mPages.removeAt(i);
+				}
+			}
+		}
+	}
+}
@@ -28,6 +28,7 @@
 package org.sana.android.db;
 
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -42,15 +43,17 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.text.TextUtils;
 
 /**
  * @author Sana Development
  *
  */
 public abstract class TableHelper<T extends IModel> implements  CreateHelper, 
-	DeleteHelper, InsertHelper, QueryHelper, SortHelper,UpdateHelper, 
-	UpgradeHelper
+	DeleteHelper, IndexHelper, InsertHelper, QueryHelper, SortHelper,
+	UpdateHelper, UpgradeHelper
 {
 	public static final String TAG = TableHelper.class.getSimpleName();
 
@@ -182,6 +185,62 @@ public abstract class TableHelper<T extends IModel> implements  CreateHelper,
 		this.projection= Collections.unmodifiableMap(projection);
 	}
 	
+	/**
+	 * Default implementation which creates a unique index on the uuid 
+	 * column. Extending classes should add indexes for any columns which are
+	 * frequently used in a selection.
+	 */
+	@Override
+	public String[] onCreateIndexes(){
+		return new String[]{ createIndex(true, BaseContract.UUID) };
+	}
+	
+	/**
+	 * Builds a CREATE INDEX statement for one or more columns of this table. 
+	 * The index is named from the table and column names.
+	 * 
+	 * @param unique Whether the index should be unique.
+	 * @param columns The indexed columns in order.
+	 * @return A SQL CREATE INDEX statement.
+	 */
+	protected final String createIndex(boolean unique, String... columns){
+		StringBuilder name = new StringBuilder(getTable());
+		for(String column:columns)
+			name.append("_").append(column);
+		name.append("_idx");
+		return String.format("CREATE %sINDEX IF NOT EXISTS %s ON %s (%s);",
+				(unique)? "UNIQUE ": "", name, getTable(),
+				TextUtils.join(",", columns));
+	}
+	
+	/**
+	 * Compiles an insert statement into this table for a set of columns. The
+	 * statement arguments are bound in the iteration order of the columns.
+	 * Callers inserting many rows with the same columns should reuse the 
+	 * returned statement and close it when finished.
+	 * 
+	 * @param db The database to compile against.
+	 * @param columns The columns which will be bound.
+	 * @return A compiled insert statement.
+	 */
+	public SQLiteStatement compileInsert(SQLiteDatabase db, Collection<String> columns){
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(getTable()).append(" (");
+		StringBuilder args = new StringBuilder();
+		int index = 0;
+		for(String column:columns){
+			if(index > 0){
+				sql.append(",");
+				args.append(",");
+			}
+			sql.append(column);
+			args.append("?");
+			index++;
+		}
+		sql.append(") VALUES (").append(args).append(")");
+		return db.compileStatement(sql.toString());
+	}
+	
 	@Override
 	public int onDelete(SQLiteDatabase db, String selection, String[] selectionArgs){
 		return db.delete(getTable(), selection, selectionArgs);
@@ -29,19 +29,21 @@ package org.sana.android.db;
 
 
 /**
- * Provides the upgrade statement string for a SQL table;
+ * Provides the upgrade statements for a SQL table;
  * 
  * @author Sana Development
  *
  */
 public interface UpgradeHelper {
 	/**
-	 * Returns an upgrade statement for a table if the version has been 
-	 * incremented.
+	 * Returns the upgrade statements for a table if the version has been 
+	 * incremented. Each statement is executed separately, in order. The 
+	 * statements must preserve the rows already in the table.
 	 *  
 	 * @param oldVersion The current version of the table in the database.
 	 * @param newVersion The version it will be upgraded to.
-	 * @return The statement string which will upgrade this table
+	 * @return The statements which will upgrade this table or null if there 
+	 * 	are none.
 	 */
-	String onUpgrade(int oldVersion, int newVersion) ;
+	String[] onUpgrade(int oldVersion, int newVersion) ;
 }
@@ -103,9 +103,19 @@ public class ConceptsHelper extends TableHelper<Concept>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
+	public String[] onUpgrade(int oldVersion, int newVersion) {
 		// TODO Auto-generated method stub
 		return null;
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Concepts.Contract.UUID),
+			createIndex(false, Concepts.Contract.NAME)
+		};
+	}
 }
@@ -110,6 +110,9 @@ public class EncounterTasksHelper extends TableHelper<EncounterTask>{
         vals.put( Contract.DUE_DATE, sdf.format(dueDate));
         
         vals.putAll(values);
+        // a null due date does not replace the default
+        if(dueStr == null)
+            vals.put( Contract.DUE_DATE, sdf.format(dueDate));
 		return super.onInsert(vals);
 	}
 
@@ -166,10 +169,8 @@ public class EncounterTasksHelper extends TableHelper<EncounterTask>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
-		if(oldVersion < newVersion){
-			return "DROP TABLE " + getTable() +"; " + onCreate();
-		}
+	public String[] onUpgrade(int oldVersion, int newVersion) {
+		// The table has not changed since version 2
 		return null;
 	}
 	
@@ -179,4 +180,20 @@ public class EncounterTasksHelper extends TableHelper<EncounterTask>{
 	public static EncounterTasksHelper getInstance(){
 		return HELPER;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Contract.UUID),
+			createIndex(false, Contract.SUBJECT),
+			createIndex(false, Contract.OBSERVER, Contract.STATUS),
+			createIndex(false, Contract.ENCOUNTER),
+			createIndex(false, Contract.PROCEDURE),
+			// keyset paging of the task list
+			createIndex(false, Contract.DUE_DATE, Contract._ID)
+		};
+	}
 }
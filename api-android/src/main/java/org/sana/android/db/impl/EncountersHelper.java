@@ -41,6 +41,7 @@ import android.util.Log;
 import org.sana.android.db.TableHelper;
 import org.sana.android.provider.Encounters;
 import org.sana.android.provider.Patients;
+import org.sana.android.provider.Procedures;
 import org.sana.core.Encounter;
 import org.sana.util.UUIDUtil;
 /**
@@ -69,11 +70,55 @@ public class EncountersHelper extends TableHelper<Encounter>{
             + " LEFT JOIN patient ON encountertask.patient = patient.uuid"
             + " LEFT JOIN procedure ON encountertask.procedure = procedure.uuid";
     
+    static final String TABLE = "encounter";
+    static final String PROCEDURE_TABLE = "procedure";
+    static final String SUBJECT_TABLE = "subject";
+    
+    /** 
+     * The tables of the summary query. Procedures and subjects are joined on
+     * their uuid columns, which are uniquely indexed, so each encounter is
+     * returned once.
+     */
+    public static final String SUMMARY_TABLES = TABLE
+            + " LEFT OUTER JOIN " + PROCEDURE_TABLE + " ON "
+            + TABLE + "." + Encounters.Contract.PROCEDURE + " = "
+            + PROCEDURE_TABLE + "." + Procedures.Contract.UUID
+            + " LEFT OUTER JOIN " + SUBJECT_TABLE + " ON "
+            + TABLE + "." + Encounters.Contract.SUBJECT + " = "
+            + SUBJECT_TABLE + "." + Patients.Contract.UUID;
+    
+    // Maps the summary columns to qualified columns of the joined tables
     static final Map<String, String> sProjectionMap = new HashMap<String, String>();
     
     static{
-        sProjectionMap.put(Encounters.Contract.STATE, Encounters.Contract.STATE);
-        
+        for(String column: new String[]{ 
+                Encounters.Contract._ID,
+                Encounters.Contract.UUID,
+                Encounters.Contract.PROCEDURE,
+                Encounters.Contract.SUBJECT,
+                Encounters.Contract.OBSERVER,
+                Encounters.Contract.STATE,
+                Encounters.Contract.FINISHED,
+                Encounters.Contract.UPLOADED,
+                Encounters.Contract.UPLOAD_STATUS,
+                Encounters.Contract.UPLOAD_QUEUE,
+                Encounters.Contract.CREATED,
+                Encounters.Contract.MODIFIED })
+        {
+            sProjectionMap.put(column, TABLE + "." + column + " AS " + column);
+        }
+        sProjectionMap.put(Encounters.Summary.PROCEDURE_TITLE, 
+                PROCEDURE_TABLE + "." + Procedures.Contract.TITLE 
+                + " AS " + Encounters.Summary.PROCEDURE_TITLE);
+        sProjectionMap.put(Encounters.Summary.SUBJECT_GIVEN_NAME, 
+                SUBJECT_TABLE + "." + Patients.Contract.GIVEN_NAME 
+                + " AS " + Encounters.Summary.SUBJECT_GIVEN_NAME);
+        sProjectionMap.put(Encounters.Summary.SUBJECT_FAMILY_NAME, 
+                SUBJECT_TABLE + "." + Patients.Contract.FAMILY_NAME 
+                + " AS " + Encounters.Summary.SUBJECT_FAMILY_NAME);
+        sProjectionMap.put(Encounters.Summary.SUBJECT_SYSTEM_ID, 
+                SUBJECT_TABLE + "." + Patients.Contract.PATIENT_ID 
+                + " AS " + Encounters.Summary.SUBJECT_SYSTEM_ID);
     }
     
     private static final EncountersHelper HELPER = new EncountersHelper();
@@ -153,7 +198,7 @@ public class EncountersHelper extends TableHelper<Encounter>{
      * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
      */
     @Override
-    public String onUpgrade(int oldVersion, int newVersion) {
+    public String[] onUpgrade(int oldVersion, int newVersion) {
         // TODO Auto-generated method stub
         return null;
     }
@@ -166,21 +211,47 @@ public class EncountersHelper extends TableHelper<Encounter>{
         return Encounters.Contract.CREATED + " DESC";
     }
     
-    /*
-    @Override
-    public Cursor onQuery(SQLiteDatabase db, String[] projection, 
-            String selection, String[] selectionArgs, String sortOrder){
+    /**
+     * Queries the encounters joined with the title of their procedure and 
+     * the name and id of their subject so that a list of encounters can be 
+     * displayed from a single cursor. Columns in the projection and sort 
+     * order are those of {@link Encounters.Contract} and 
+     * {@link Encounters.Summary}. Columns in the selection are not mapped and
+     * should be qualified with the table name where they are ambiguous.
+     * 
+     * @param db The database to query.
+     * @param projection The summary columns to return or null for all.
+     * @param selection The selection.
+     * @param selectionArgs The selection arguments.
+     * @param sortOrder The sort order.
+     * @param limit The maximum number of rows or null for all.
+     * @return A cursor over the joined rows.
+     */
+    public Cursor onQuerySummary(SQLiteDatabase db, String[] projection, 
+            String selection, String[] selectionArgs, String sortOrder,
+            String limit)
+    {
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
-        if(TextUtils.isEmpty(selection)){
-            String[] tables = new String[] { getTable(), SubjectsHelper.getInstance().getTable()};
-            selection = String.format("%s LEFT OUTER JOIN %s ON %s = %s",
-                    tables[0], tables[1], Encounters.Contract.SUBJECT, Patients.Contract.UUID);
-            qb.setTables(tables[0]+","+tables[1]);
-        } else {
-            qb.setTables(getTable());
-        }
-        Cursor cursor = qb.query(db, projection, selection, selectionArgs, null,null, sortOrder);
-        return cursor;
+        qb.setTables(SUMMARY_TABLES);
+        qb.setProjectionMap(sProjectionMap);
+        return qb.query(db, projection, selection, selectionArgs, null, null,
+                sortOrder, limit);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+     */
+    @Override
+    public String[] onCreateIndexes() {
+        return new String[]{
+            createIndex(true, Encounters.Contract.UUID),
+            createIndex(false, Encounters.Contract.SUBJECT),
+            createIndex(false, Encounters.Contract.PROCEDURE),
+            createIndex(false, Encounters.Contract.OBSERVER),
+            createIndex(false, Encounters.Contract.UPLOAD_QUEUE),
+            createIndex(false, Encounters.Contract.UPLOADED),
+            // keyset paging of the encounter list
+            createIndex(false, Encounters.Contract.CREATED, Encounters.Contract._ID)
+        };
     }
-    */
 }
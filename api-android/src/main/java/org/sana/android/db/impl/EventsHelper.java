@@ -118,11 +118,22 @@ public class EventsHelper extends TableHelper<Event>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
+	public String[] onUpgrade(int oldVersion, int newVersion) {
 		if(oldVersion < newVersion){
 			
 		}
 		return null;
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Contract.UUID),
+			createIndex(false, Contract.UPLOADED),
+			createIndex(false, Contract.ENCOUNTER)
+		};
+	}
 }
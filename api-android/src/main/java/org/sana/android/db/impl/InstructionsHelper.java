@@ -99,9 +99,19 @@ public class InstructionsHelper extends TableHelper<Instruction>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
+	public String[] onUpgrade(int oldVersion, int newVersion) {
 		// TODO Auto-generated method stub
 		return null;
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Contract.UUID),
+			createIndex(false, Contract.CONCEPT)
+		};
+	}
 }
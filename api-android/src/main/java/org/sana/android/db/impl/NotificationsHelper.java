@@ -99,11 +99,21 @@ public class NotificationsHelper extends TableHelper<Notification>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
+	public String[] onUpgrade(int oldVersion, int newVersion) {
 		if(oldVersion < newVersion){
 			
 		}
 		return null;
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Contract.UUID),
+			createIndex(false, Contract.PATIENT_ID)
+		};
+	}
 }
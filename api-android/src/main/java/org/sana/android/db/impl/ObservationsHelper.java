@@ -123,8 +123,20 @@ public class ObservationsHelper extends TableHelper<Observation>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
+	public String[] onUpgrade(int oldVersion, int newVersion) {
 		return null;
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Contract.UUID),
+			createIndex(false, Contract.ENCOUNTER),
+			createIndex(false, Contract.SUBJECT, Contract.CONCEPT),
+			createIndex(false, Contract.UPLOADED)
+		};
+	}
 }
@@ -98,9 +98,25 @@ public class ProceduresHelper extends TableHelper<Procedure>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
-		// TODO Auto-generated method stub
-		return null;
+	public String[] onUpgrade(int oldVersion, int newVersion) {
+		// The uuid index was unique before version 6. It is dropped so that
+		// it is created again without the constraint.
+		if(newVersion <= oldVersion || oldVersion >= 6)
+			return null;
+		return new String[]{
+			"DROP INDEX IF EXISTS " + getTable() + "_" + Contract.UUID + "_idx;"
+		};
+	}
+
+	/**
+	 * The uuid index is not unique since procedures loaded from xml without
+	 * a uuid attribute are all inserted with an empty uuid.
+	 * 
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{ createIndex(false, Contract.UUID) };
 	}
 	
 }
@@ -28,7 +28,11 @@
 package org.sana.android.db.impl;
 
 import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.text.TextUtils;
 import android.util.Log;
 
 import org.sana.android.db.TableHelper;
@@ -36,13 +40,26 @@ import org.sana.android.provider.Patients.Contract;
 import org.sana.core.Subject;
 
 /**
- * A database table helper for a table of subjects.
+ * A database table helper for a table of subjects. The names and system id 
+ * of each subject are also kept in a full text search table which is updated
+ * by triggers on the subject table so that every write, including bulk 
+ * inserts and batches, keeps it current.
  * 
  * @author Sana Development
  *
  */
 public class SubjectsHelper extends TableHelper<Subject>{
 	public static final String TAG = SubjectsHelper.class.getSimpleName();
+	
+	/** The full text search table. Its docid is the subject _id. */
+	public static final String SEARCH_TABLE = "subject_search";
+	
+	// The searchable columns
+	static final String[] SEARCH_COLUMNS = { 
+		Contract.GIVEN_NAME, 
+		Contract.FAMILY_NAME, 
+		Contract.PATIENT_ID 
+	};
 
 	private static final SubjectsHelper HELPER = new SubjectsHelper();
 	
@@ -110,14 +127,131 @@ public class SubjectsHelper extends TableHelper<Subject>{
 	 * @see org.sana.android.db.UpgradeHelper#onUpgrade(int, int)
 	 */
 	@Override
-	public String onUpgrade(int oldVersion, int newVersion) {
+	public String[] onUpgrade(int oldVersion, int newVersion) {
 		Log.i(TAG, "onUpgrade()");
-		String sql = null;
-		if(newVersion > oldVersion && oldVersion <= 3){
-			sql = "DROP TABLE " + getTable() +";";
-			sql += onCreate();
-		}
+		// The table has not changed since version 2
+		if(newVersion <= oldVersion || oldVersion >= 4)
+			return null;
+		// The search table was added in version 4
+		String[] create = onCreateSearch();
+		String[] sql = new String[create.length + 1];
+		System.arraycopy(create, 0, sql, 0, create.length);
+		sql[create.length] = onPopulateSearch();
 		return sql;
 	}
+
+	/**
+	 * Returns the statements which create the search table and the triggers
+	 * which maintain it. The search table is only updated when one of the 
+	 * searchable columns changes.
+	 * 
+	 * @return SQL statements to execute in order.
+	 */
+	public String[] onCreateSearch(){
+		String columns = TextUtils.join(",", SEARCH_COLUMNS);
+		String newValues = "new." + TextUtils.join(",new.", SEARCH_COLUMNS);
+		String insert = "INSERT INTO " + SEARCH_TABLE + " (docid," + columns
+				+ ") VALUES (new." + Contract._ID + "," + newValues + ");";
+		String delete = "DELETE FROM " + SEARCH_TABLE + " WHERE docid = old."
+				+ Contract._ID + ";";
+		return new String[]{
+			"CREATE VIRTUAL TABLE " + SEARCH_TABLE + " USING fts3(" + columns 
+				+ ");",
+			"CREATE TRIGGER " + SEARCH_TABLE + "_insert AFTER INSERT ON " 
+				+ getTable() + " BEGIN " + insert + " END;",
+			"CREATE TRIGGER " + SEARCH_TABLE + "_update AFTER UPDATE OF " 
+				+ Contract._ID + "," + columns + " ON " + getTable() 
+				+ " BEGIN " + delete + insert + " END;",
+			"CREATE TRIGGER " + SEARCH_TABLE + "_delete AFTER DELETE ON " 
+				+ getTable() + " BEGIN " + delete + " END;"
+		};
+	}
 	
+	/**
+	 * Returns the statement which copies the existing subjects into the 
+	 * search table. Only required when the search table is added to an 
+	 * existing database.
+	 * 
+	 * @return A SQL INSERT statement.
+	 */
+	public String onPopulateSearch(){
+		String columns = TextUtils.join(",", SEARCH_COLUMNS);
+		return "INSERT INTO " + SEARCH_TABLE + " (docid," + columns + ") SELECT "
+				+ Contract._ID + "," + columns + " FROM " + getTable() + ";";
+	}
+	
+	/**
+	 * Queries the subjects matching a search string. Each word of the search
+	 * string must match the start of a word in the given name, family name or
+	 * system id. An empty search string matches every subject.
+	 * 
+	 * @param db The database to query.
+	 * @param search The text entered by the user.
+	 * @param projection The columns to return.
+	 * @param selection An additional selection or null.
+	 * @param selectionArgs The additional selection arguments.
+	 * @param sortOrder The sort order.
+	 * @param limit The maximum number of rows or null for all.
+	 * @return A cursor over the matching subjects.
+	 */
+	public Cursor onSearch(SQLiteDatabase db, String search, 
+			String[] projection, String selection, String[] selectionArgs, 
+			String sortOrder, String limit)
+	{
+		SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+		qb.setTables(getTable());
+		String match = buildMatch(search);
+		if(match != null){
+			qb.appendWhere(Contract._ID + " IN (SELECT docid FROM " 
+					+ SEARCH_TABLE + " WHERE " + SEARCH_TABLE + " MATCH ");
+			qb.appendWhereEscapeString(match);
+			qb.appendWhere(")");
+		}
+		return qb.query(db, projection, selection, selectionArgs, null, null, 
+				sortOrder, limit);
+	}
+	
+	/**
+	 * Converts text entered by a user into a full text prefix query. 
+	 * Characters other than letters and digits separate words so that the
+	 * query syntax can not be injected.
+	 * 
+	 * @param search The entered text.
+	 * @return The query or null if the text contains no words.
+	 */
+	public static String buildMatch(String search){
+		if(search == null)
+			return null;
+		StringBuilder match = new StringBuilder();
+		boolean inWord = false;
+		for(int i = 0; i < search.length(); i++){
+			char c = search.charAt(i);
+			if(Character.isLetterOrDigit(c)){
+				if(!inWord && match.length() > 0)
+					match.append(' ');
+				match.append(c);
+				inWord = true;
+			} else if(inWord){
+				match.append('*');
+				inWord = false;
+			}
+		}
+		if(inWord)
+			match.append('*');
+		return (match.length() > 0)? match.toString(): null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.sana.android.db.IndexHelper#onCreateIndexes()
+	 */
+	@Override
+	public String[] onCreateIndexes() {
+		return new String[]{
+			createIndex(true, Contract.UUID),
+			createIndex(false, Contract.PATIENT_ID),
+			createIndex(false, Contract.LOCATION),
+			// keyset paging of the patient list
+			createIndex(false, Contract.GIVEN_NAME, Contract._ID)
+		};
+	}
 }
@@ -44,9 +44,9 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 import org.sana.net.Response;
 import org.sana.net.http.HttpTaskFactory;
+import org.sana.text.json.JsonCodecs;
 
 import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
@@ -112,7 +112,8 @@ public class HttpTask<T> extends AsyncTask<HttpUriRequest,Integer, Response<T>>{
 	protected Response<T> doInBackground(HttpUriRequest... params) {
 		HttpUriRequest method = params[0];
 		HttpClient client = HttpTaskFactory.CLIENT_FACTORY.produce();
-		HttpParams httpParams = client.getParams();
+		// The client is shared so timeouts are set on the request only
+		HttpParams httpParams = method.getParams();
 		if(timeout > 0){
 			HttpConnectionParams.setConnectionTimeout(httpParams, timeout);
 			HttpConnectionParams.setSoTimeout(httpParams, timeout);
@@ -134,7 +135,7 @@ public class HttpTask<T> extends AsyncTask<HttpUriRequest,Integer, Response<T>>{
 				message.sendToTarget();
 			} else {
 				Type type = new TypeToken<Response<T>>(){}.getType();
-				response = new Gson().fromJson(responseString, type);
+				response = JsonCodecs.get().fromJson(responseString, type);
 			}
 		} catch (ClientProtocolException e) {
 			Log.e(TAG, "ClientProtocolException: " + e.getMessage());
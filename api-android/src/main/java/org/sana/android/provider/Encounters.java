@@ -48,6 +48,14 @@ public final class Encounters {
      */
     public static final Uri CONTENT_URI = Uri.parse("content://"
             + Encounters.AUTHORITY + "/core/encounter");
+    
+    /** 
+     * The content:// style URI for a read only directory of encounters 
+     * joined with their procedure and subject. The columns are those of 
+     * {@link Contract} and {@link Summary}.
+     */
+    public static final Uri SUMMARY_URI = Uri.parse(CONTENT_URI.toString()
+            + "/summary");
 
     /**
      * The MIME type of CONTENT_URI providing a directory of saved procedures.
@@ -152,4 +160,27 @@ public final class Encounters {
     	 */
     	public static final String UPLOAD_QUEUE = "_upload_queue";
     }
+
+    /**
+     * Columns of {@link Encounters#SUMMARY_URI} read from the procedure and
+     * subject of each encounter. The values are null if the related row does
+     * not exist.
+     * 
+     * @author Sana Development
+     *
+     */
+    public static interface Summary {
+    	
+    	/** The title of the procedure. */
+    	public static final String PROCEDURE_TITLE = "procedure_title";
+    	
+    	/** The given name of the subject. */
+    	public static final String SUBJECT_GIVEN_NAME = "subject_given_name";
+    	
+    	/** The family name of the subject. */
+    	public static final String SUBJECT_FAMILY_NAME = "subject_family_name";
+    	
+    	/** The system id of the subject. */
+    	public static final String SUBJECT_SYSTEM_ID = "subject_system_id";
+    }
 }
\ No newline at end of file
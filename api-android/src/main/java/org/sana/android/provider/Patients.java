@@ -35,6 +35,13 @@ public final class Patients{
 	public static final Uri CONTENT_URI = Uri.parse("content://"
 			+ AUTHORITY + "/core/patient");
 	
+	/**
+	 * The content:// style URI for searching patients by name or system id.
+	 * The search text is appended as the last path segment.
+	 */
+	public static final Uri SEARCH_URI = Uri.parse(CONTENT_URI.toString() 
+			+ "/search");
+	
 	/** Default sort order. */
 	public static final String DEFAULT_SORT_ORDER = Contract.FAMILY_NAME + "  ASC";
 	
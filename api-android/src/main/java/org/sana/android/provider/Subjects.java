@@ -43,6 +43,13 @@ public class Subjects {
     public static final Uri CONTENT_URI = Uri.parse("content://"
             + AUTHORITY + "/core/subject");
     
+    /** 
+     * The content:// style URI for searching subjects by name or system id.
+     * The search text is appended as the last path segment.
+     */
+    public static final Uri SEARCH_URI = Uri.parse(CONTENT_URI.toString() 
+            + "/search");
+    
 	/** The MIME type of CONTENT_URI providing a directory of subjects. */
 	public static final String CONTENT_TYPE = 
 		"vnd.android.cursor.dir/org.sana.subject";
@@ -46,6 +46,12 @@ public abstract class Model implements IModel{
 	
 	public Date modified;
 	
+	/**
+	 * Set on records which were deleted on the server and are only sent so
+	 * that incremental syncs can remove them.
+	 */
+	public boolean voided = false;
+	
 	public Model(){}
 	
 	/*
@@ -180,4 +180,8 @@ public class Observation extends Model implements IObservation {
 	public void setIsComplex(Concept concept){
 		isComplex = concept.isComplex();
 	}
+	
+	public void setIsComplex(boolean isComplex){
+		this.isComplex = isComplex;
+	}
 }
@@ -30,77 +30,405 @@
  */
 package org.sana.net;
 
+import java.util.AbstractQueue;
 import java.util.Collection;
-import java.util.Map;
-import java.util.Hashtable;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * 
- * 
+ * A bounded queue of messages waiting to be dispatched which may be shared by
+ * any number of producer and consumer threads. Messages are ordered by
+ * {@link Priority} and within a priority in the order they were added.
+ * <p/>
+ * Each priority is held in a non-blocking {@link ConcurrentLinkedQueue} and
+ * capacity is reserved with a compare and set on a single counter, so
+ * {@link #offer(Object, Priority)} and {@link #poll()} never acquire a lock.
+ * When the queue is full <code>offer</code> fails rather than growing the
+ * queue; producers which would rather wait for space, and consumers which
+ * would rather wait for a message, use the timed variants, which only
+ * synchronize while a thread is actually waiting.
+ * <p/>
+ * A {@link Journal} may be set to record each message as it is added and
+ * removed so that the contents of the queue can be persisted and restored.
+ * <p/>
+ * Iteration follows priority order and is weakly consistent, as with the
+ * underlying queues, and {@link #size()} may briefly count a message which
+ * is still being added.
+ *
+ * @param <E> the message type
  */
-public class MessageQueue<E>{
-    
-    private ConcurrentHashMap<Integer,E> queue;
+public class MessageQueue<E> extends AbstractQueue<E>{
+
+    /**
+     * Message priorities in the order they are dispatched. The codes match
+     * those used by <code>MessageQueueManager.Priority</code>.
+     */
+    public enum Priority{
+        IMMEDIATE(-1),
+        NORMAL(0),
+        LOW(1);
+
+        public final int code;
+        Priority(int code){ this.code = code; }
+
+        public static Priority fromCode(int code){
+            for(Priority priority: Priority.values()){
+                if(priority.code == code) return priority;
+            }
+            throw new IllegalArgumentException("Illegal priority: " + code);
+        }
+    }
+
+    /**
+     * Receives each change to the contents of a queue. Methods are called
+     * by the thread which changed the queue after the change is made and
+     * should not block.
+     *
+     * @param <E> the message type
+     */
+    public interface Journal<E>{
+
+        /**
+         * Called after a message is added.
+         *
+         * @param message the message
+         * @param priority the priority it was added with
+         */
+        public void added(E message, Priority priority);
+
+        /**
+         * Called after a message is removed, whether it was taken by a
+         * consumer or removed explicitly.
+         *
+         * @param message the message
+         */
+        public void removed(E message);
+    }
+
+    private final ConcurrentLinkedQueue<E>[] queues;
+    private final int capacity;
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile Journal<E> journal = null;
+
+    // Threads waiting in offer or poll and the monitors they wait on
+    private final AtomicInteger putters = new AtomicInteger();
+    private final AtomicInteger takers = new AtomicInteger();
+    private final Object notFull = new Object();
+    private final Object notEmpty = new Object();
+
+    /**
+     * Creates a new <code>MessageQueue</code> that is initially empty
+     * and has no capacity limit.
+     */
+    public MessageQueue(){
+        this(Integer.MAX_VALUE);
+    }
+
     /**
      * Creates a new <code>MessageQueue</code> that is initially empty.
+     *
+     * @param size the maximum number of messages held
+     * @throws IllegalArgumentException if size is less than 1
      */
-    public MessageQueue(){}
-   
-    
+    @SuppressWarnings("unchecked")
     public MessageQueue(int size){
-     
+        if(size < 1)
+            throw new IllegalArgumentException("Illegal capacity: " + size);
+        capacity = size;
+        Priority[] priorities = Priority.values();
+        queues = new ConcurrentLinkedQueue[priorities.length];
+        for(int i = 0; i < queues.length; i++)
+            queues[i] = new ConcurrentLinkedQueue<E>();
     }
-    
-    public boolean addAll(Collection<? extends E> c){
-        return false;
+
+    /**
+     * Sets the journal which is told about each message added or removed.
+     *
+     * @param journal the journal or <code>null</code> to remove it
+     */
+    public void setJournal(Journal<E> journal){
+        this.journal = journal;
     }
-    
-    public E clear(){
-        return null;
+
+    /**
+     * Returns the maximum number of messages held.
+     */
+    public int capacity(){
+        return capacity;
     }
-    
-    public E element(){
-        return null;
+
+    /**
+     * Returns the number of messages which can be added before the queue
+     * is full.
+     */
+    public int remainingCapacity(){
+        return capacity - count.get();
     }
-    
+
     /**
-     * Inserts the specified element into this queue if it is possible 
-     * to do so immediately without violating capacity restrictions. 
-     * When using a capacity-restricted queue, this method is generally preferable to add(E), which can fail to insert an element only by throwing an exception.
-     * 
+     * Inserts the specified element into this queue with
+     * {@link Priority#NORMAL NORMAL} priority if it is possible to do so
+     * immediately without violating capacity restrictions.
+     *
      * @param   message the message to add
-     * @return  <code>true</code> if the message was added, else 
+     * @return  <code>true</code> if the message was added, else
      *          <code>false</code>
-     * @throws  ClassCastException if the class of the specified 
-     *          element prevents it from being added to this queue
-     * @throws  NullPointerException if the specified element is null 
-     *          and this queue does not permit null elements
-     * @throws  IllegalArgumentException if some property of this 
-     *          element prevents it from being added to this queue
+     * @throws  NullPointerException if the specified element is null
      */
+    @Override
     public boolean offer(E message){
-        return false;
+        return offer(message, Priority.NORMAL);
     }
-    
-    public E peek(){
-        return null;
+
+    /**
+     * Inserts the specified element into this queue if it is possible
+     * to do so immediately without violating capacity restrictions.
+     *
+     * @param   message the message to add
+     * @param   priority the priority of the message
+     * @return  <code>true</code> if the message was added, else
+     *          <code>false</code> if the queue is full
+     * @throws  NullPointerException if the message or priority is null
+     */
+    public boolean offer(E message, Priority priority){
+        if(message == null || priority == null)
+            throw new NullPointerException();
+        if(!reserve())
+            return false;
+        queues[priority.ordinal()].offer(message);
+        Journal<E> j = journal;
+        if(j != null)
+            j.added(message, priority);
+        signal(takers, notEmpty);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element into this queue, waiting up to the
+     * timeout for space to become available.
+     *
+     * @param   message the message to add
+     * @param   priority the priority of the message
+     * @param   timeout how long to wait
+     * @param   unit the unit of the timeout
+     * @return  <code>true</code> if the message was added, else
+     *          <code>false</code> if the queue was still full
+     * @throws  InterruptedException if interrupted while waiting
+     */
+    public boolean offer(E message, Priority priority, long timeout,
+            TimeUnit unit) throws InterruptedException
+    {
+        if(offer(message, priority))
+            return true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        putters.incrementAndGet();
+        try{
+            while(!offer(message, priority)){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0)
+                    return false;
+                // no other monitor may be taken while holding this one
+                synchronized(notFull){
+                    if(count.get() >= capacity)
+                        TimeUnit.NANOSECONDS.timedWait(notFull, remaining);
+                }
+            }
+        } finally {
+            putters.decrementAndGet();
+        }
+        return true;
     }
-    
+
+    /**
+     * Retrieves and removes the highest priority message which has been
+     * waiting longest.
+     *
+     * @return the message or <code>null</code> if the queue is empty
+     */
+    @Override
     public E poll(){
+        if(count.get() == 0)
+            return null;
+        for(ConcurrentLinkedQueue<E> queue: queues){
+            E message = queue.poll();
+            if(message != null){
+                onRemoved(message);
+                return message;
+            }
+        }
         return null;
     }
-    
-    public E remove(){
+
+    /**
+     * Retrieves and removes the head of the queue, waiting up to the timeout
+     * for a message to become available.
+     *
+     * @param   timeout how long to wait
+     * @param   unit the unit of the timeout
+     * @return  the message or <code>null</code> if the queue was still empty
+     * @throws  InterruptedException if interrupted while waiting
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException{
+        E message = poll();
+        if(message != null)
+            return message;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        takers.incrementAndGet();
+        try{
+            while((message = poll()) == null){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0)
+                    return null;
+                synchronized(notEmpty){
+                    if(count.get() == 0)
+                        TimeUnit.NANOSECONDS.timedWait(notEmpty, remaining);
+                }
+            }
+        } finally {
+            takers.decrementAndGet();
+        }
+        return message;
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue.
+     *
+     * @return the message or <code>null</code> if the queue is empty
+     */
+    @Override
+    public E peek(){
+        for(ConcurrentLinkedQueue<E> queue: queues){
+            E message = queue.peek();
+            if(message != null)
+                return message;
+        }
         return null;
     }
-    
-    public boolean isEmpty(){
-        return true;
+
+    /**
+     * Removes a single instance of a message, if present.
+     *
+     * @param o the message to remove
+     * @return <code>true</code> if a message was removed
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object o){
+        if(o == null)
+            return false;
+        for(ConcurrentLinkedQueue<E> queue: queues){
+            if(queue.remove(o)){
+                onRemoved((E) o);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes up to <code>max</code> messages in priority order and adds them
+     * to a collection. Consumers which dispatch messages in batches should
+     * prefer this to repeated calls to {@link #poll()}.
+     *
+     * @param c the collection to add the messages to
+     * @param max the maximum number of messages to remove
+     * @return the number of messages removed
+     */
+    public int drainTo(Collection<? super E> c, int max){
+        if(c == this)
+            throw new IllegalArgumentException();
+        int n = 0;
+        E message = null;
+        while(n < max && (message = poll()) != null){
+            c.add(message);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of messages with a given priority.
+     */
+    public int size(Priority priority){
+        return queues[priority.ordinal()].size();
     }
-    
+
+    @Override
     public int size(){
-        return 0;
+        return count.get();
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return count.get() == 0;
+    }
+
+    @Override
+    public Iterator<E> iterator(){
+        return new Itr();
+    }
+
+    // Claims a slot, failing when the queue is full
+    private boolean reserve(){
+        for(;;){
+            int n = count.get();
+            if(n >= capacity)
+                return false;
+            if(count.compareAndSet(n, n + 1))
+                return true;
+        }
+    }
+
+    private void onRemoved(E message){
+        count.decrementAndGet();
+        Journal<E> j = journal;
+        if(j != null)
+            j.removed(message);
+        signal(putters, notFull);
+    }
+
+    // Only synchronizes if some thread is waiting on the monitor
+    private static void signal(AtomicInteger waiters, Object monitor){
+        if(waiters.get() > 0){
+            synchronized(monitor){
+                monitor.notify();
+            }
+        }
+    }
+
+    // Iterates each priority in turn
+    private class Itr implements Iterator<E>{
+        private int level = 0;
+        private Iterator<E> current = queues[0].iterator();
+        private E last = null;
+
+        @Override
+        public boolean hasNext(){
+            while(!current.hasNext()){
+                if(++level >= queues.length)
+                    return false;
+                current = queues[level].iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public E next(){
+            if(!hasNext())
+                throw new NoSuchElementException();
+            last = current.next();
+            return last;
+        }
+
+        @Override
+        public void remove(){
+            if(last == null)
+                throw new IllegalStateException();
+            MessageQueue.this.remove(last);
+            last = null;
+        }
     }
 }
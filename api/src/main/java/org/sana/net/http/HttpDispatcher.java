@@ -73,9 +73,11 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.SyncBasicHttpContext;
 import org.apache.http.util.EntityUtils;
 import org.sana.net.Response;
+import org.sana.net.http.handler.ApiResponseHandler;
+import org.sana.text.json.JsonCodecs;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 /**
  * @author Sana Development
@@ -126,12 +128,16 @@ public class HttpDispatcher{
 				throws ClientProtocolException, IOException {
 			
 			HttpEntity entity = response.getEntity();
-			String responseString = EntityUtils.toString(response.getEntity());
-			EntityUtils.consume(response.getEntity());
-			
+			if(entity == null)
+				return null;
 			Type type = new TypeToken<Response<T>>(){}.getType();
-			T t = new Gson().fromJson(responseString, type);
-			return t;
+			JsonReader reader = ApiResponseHandler.newReader(entity);
+			try{
+				T t = JsonCodecs.get().fromJson(reader, type);
+				return t;
+			} finally {
+				reader.close();
+			}
 		}
 		
 	}
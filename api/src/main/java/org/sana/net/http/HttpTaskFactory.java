@@ -28,15 +28,12 @@
 package org.sana.net.http;
 
 import java.io.File;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.security.KeyStore;
 import java.util.Map;
 
 
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpDelete;
@@ -44,22 +41,9 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.protocol.HTTP;
-import org.sana.net.http.ssl.EasySSLSocketFactory;
 
 /**
  * @author Sana Development
@@ -148,55 +132,8 @@ public class HttpTaskFactory {
         }
     };
     
-    public static ClientFactory CLIENT_FACTORY = new ClientFactory(){
-
-        @Override
-        public HttpClient produce() {
-            //Set up your HTTPS connection
-            SchemeRegistry schemeRegistry = new SchemeRegistry();
-            // http scheme
-            schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-            // https scheme
-            schemeRegistry.register(new Scheme("https", new EasySSLSocketFactory(), 443));
-            
-            HttpParams params = basicParams();
-            ClientConnectionManager cm = new ThreadSafeClientConnManager(params, schemeRegistry);
-            return new DefaultHttpClient(cm, params);
-        }
-
-        @Override
-        public HttpClient produce(InputStream keystore, String keypass) {
-            try {
-                KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                trustStore.load(keystore, keypass.toCharArray());
-
-                SSLSocketFactory sf = SSLSocketFactory.getSocketFactory();
-                sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-
-                HttpParams params = basicParams();
-                SchemeRegistry registry = new SchemeRegistry();
-                registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-                registry.register(new Scheme("https", sf, 443));
-
-                ClientConnectionManager ccm = new ThreadSafeClientConnManager(params, registry);
-
-                return new DefaultHttpClient(ccm, params);
-            } catch (Exception e) {
-                return new DefaultHttpClient();
-            }
-        }
-        
-        protected HttpParams basicParams(){
-            HttpParams params = new BasicHttpParams();
-            HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-            HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
-            // Make sure this connection will timeout
-            HttpConnectionParams.setConnectionTimeout(params, 300000);
-            HttpConnectionParams.setSoTimeout(params, 300000);
-            return params;
-        }
-        
-    };
+    /* Shared, pooled client factory. */
+    public static ClientFactory CLIENT_FACTORY = new PooledClientFactory();
     
     private HttpTaskFactory() {}
 
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.net.http;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.sana.net.http.ssl.EasySSLSocketFactory;
+
+/**
+ * A {@link ClientFactory} which hands out a single, process wide
+ * {@link HttpClient} backed by a keep-alive connection pool. Connections are
+ * returned to the pool once the response entity has been consumed so that
+ * subsequent requests to the same route skip the TCP and TLS handshake.
+ * <p>
+ * Because the client is shared, it must not carry per-user state. Cookies
+ * are ignored so that no session carries over from one user's requests to
+ * the next. Credentials should be attached to each request with
+ * {@link #setCredentials(HttpRequest, String, String)} and per-request
+ * settings, i.e. timeouts, should be set on the request parameters rather
+ * than the client parameters. Callers must never shut down the connection
+ * manager of a client obtained from {@link #produce()}; use
+ * {@link #shutdown()} instead.
+ * 
+ * @author Sana Development
+ *
+ */
+public class PooledClientFactory implements ClientFactory {
+
+	/** Default maximum number of pooled connections. */
+	public static final int DEFAULT_MAX_TOTAL = 20;
+	/** Default maximum number of pooled connections to a single route. */
+	public static final int DEFAULT_MAX_PER_ROUTE = 6;
+	/** Default time, in ms, an unused connection may idle in the pool. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+	/** Default maximum lifetime, in ms, of a pooled connection. */
+	public static final long DEFAULT_CONNECTION_TTL = 300000;
+	/** Default connect and socket timeout in ms. */
+	public static final int DEFAULT_TIMEOUT = 300000;
+
+	private final int maxTotal;
+	private final int maxPerRoute;
+	private final long idleTimeout;
+	private final long connectionTTL;
+	private final int timeout;
+
+	private DefaultHttpClient client = null;
+	private IdleConnectionMonitor monitor = null;
+
+	/**
+	 * Creates a new factory with the default pool settings.
+	 */
+	public PooledClientFactory(){
+		this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT,
+				DEFAULT_CONNECTION_TTL, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Creates a new factory.
+	 * 
+	 * @param maxTotal The maximum number of connections in the pool.
+	 * @param maxPerRoute The maximum number of connections for any one route.
+	 * @param idleTimeout Time, in ms, after which idle connections are evicted.
+	 * @param connectionTTL Maximum time, in ms, a connection is kept alive.
+	 * @param timeout The connect and socket timeout, in ms.
+	 */
+	public PooledClientFactory(int maxTotal, int maxPerRoute, long idleTimeout,
+			long connectionTTL, int timeout)
+	{
+		if(maxTotal < 1 || maxPerRoute < 1)
+			throw new IllegalArgumentException("Pool size must be positive");
+		this.maxTotal = maxTotal;
+		this.maxPerRoute = Math.min(maxPerRoute, maxTotal);
+		this.idleTimeout = idleTimeout;
+		this.connectionTTL = connectionTTL;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the shared, pooled client. The client and its idle connection
+	 * monitor are created lazily on the first call.
+	 * 
+	 * @see org.sana.net.http.ClientFactory#produce()
+	 */
+	@Override
+	public synchronized HttpClient produce() {
+		if(client == null){
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http",
+					PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https",
+					new EasySSLSocketFactory(), 443));
+			client = newClient(registry);
+			monitor = new IdleConnectionMonitor(client.getConnectionManager());
+			monitor.start();
+		}
+		return client;
+	}
+
+	/**
+	 * Returns a new pooled client which trusts the certificates in the given
+	 * key store. Clients returned by this method are not shared and should be
+	 * retained by the caller for as long as connections are to be reused.
+	 * 
+	 * @see org.sana.net.http.ClientFactory#produce(java.io.InputStream, java.lang.String)
+	 */
+	@Override
+	public HttpClient produce(InputStream keystore, String keypass) {
+		try {
+			KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+			trustStore.load(keystore, keypass.toCharArray());
+			SSLSocketFactory sf = new SSLSocketFactory(trustStore);
+			sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http",
+					PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https", sf, 443));
+			return newClient(registry);
+		} catch (Exception e) {
+			return produce();
+		}
+	}
+
+	/**
+	 * Closes all pooled connections and stops the idle connection monitor.
+	 * The next call to {@link #produce()} will create a new client.
+	 */
+	public synchronized void shutdown(){
+		if(monitor != null){
+			monitor.shutdown();
+			monitor = null;
+		}
+		if(client != null){
+			client.getConnectionManager().shutdown();
+			client = null;
+		}
+	}
+
+	protected HttpParams basicParams(){
+		HttpParams params = new BasicHttpParams();
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+		HttpProtocolParams.setUseExpectContinue(params, false);
+		HttpConnectionParams.setConnectionTimeout(params, timeout);
+		HttpConnectionParams.setSoTimeout(params, timeout);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		// A cookie store on a shared client would be shared by every user
+		HttpClientParams.setCookiePolicy(params, CookiePolicy.IGNORE_COOKIES);
+		ConnManagerParams.setMaxTotalConnections(params, maxTotal);
+		ConnManagerParams.setMaxConnectionsPerRoute(params,
+				new ConnPerRouteBean(maxPerRoute));
+		ConnManagerParams.setTimeout(params, timeout);
+		return params;
+	}
+
+	protected DefaultHttpClient newClient(SchemeRegistry registry){
+		HttpParams params = basicParams();
+		ClientConnectionManager cm = new ThreadSafeClientConnManager(params,
+				registry);
+		DefaultHttpClient newClient = new DefaultHttpClient(cm, params);
+		newClient.setKeepAliveStrategy(new BoundedKeepAliveStrategy(
+				connectionTTL));
+		return newClient;
+	}
+
+	/**
+	 * Attaches preemptive basic authorization to a single request. Empty
+	 * credentials are ignored. This replaces setting a credentials provider
+	 * on the client, which is not possible once the client is shared.
+	 * 
+	 * @param request The request to authorize.
+	 * @param username The username credential.
+	 * @param password The password credential.
+	 */
+	public static void setCredentials(HttpRequest request, String username,
+			String password)
+	{
+		if(username == null || username.length() == 0
+				|| password == null || password.length() == 0)
+			return;
+		request.setHeader(BasicScheme.authenticate(
+				new UsernamePasswordCredentials(username, password),
+				HTTP.UTF_8, false));
+	}
+
+	/**
+	 * Honors the server's keep-alive header but never keeps a connection
+	 * longer than a fixed maximum.
+	 */
+	static class BoundedKeepAliveStrategy extends DefaultConnectionKeepAliveStrategy{
+
+		final long maxDuration;
+
+		BoundedKeepAliveStrategy(long maxDuration){
+			this.maxDuration = maxDuration;
+		}
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response,
+				HttpContext context)
+		{
+			long duration = super.getKeepAliveDuration(response, context);
+			if(duration < 0 || duration > maxDuration)
+				return maxDuration;
+			return duration;
+		}
+	}
+
+	/**
+	 * Background thread which periodically evicts expired and idle
+	 * connections from a pool.
+	 */
+	class IdleConnectionMonitor extends Thread{
+
+		private final ClientConnectionManager manager;
+		private volatile boolean shutdown = false;
+
+		IdleConnectionMonitor(ClientConnectionManager manager){
+			super("IdleConnectionMonitor");
+			this.manager = manager;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long interval = Math.max(idleTimeout / 2, 1000);
+			try {
+				while(!shutdown){
+					synchronized(this){
+						wait(interval);
+					}
+					manager.closeExpiredConnections();
+					manager.closeIdleConnections(idleTimeout,
+							TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				// terminate
+			}
+		}
+
+		public void shutdown(){
+			shutdown = true;
+			synchronized(this){
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.net.http;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.sana.net.Response;
+
+/**
+ * Executes REST requests concurrently against the shared client produced by
+ * {@link HttpTaskFactory#CLIENT_FACTORY}. Requests are run either on the
+ * calling thread, {@link #execute(HttpUriRequest, ResponseHandler)}, or on a
+ * bounded worker pool, {@link #submit(HttpUriRequest, ResponseHandler, Callback)}.
+ * In both cases the number of requests in flight to any one host is limited
+ * so that a large sync can not starve other requests to the same server.
+ * <p>
+ * Failures are never thrown; they are reported in the returned
+ * {@link org.sana.net.Response Response} using the same codes as the
+ * <code>MDSInterface2.api*</code> methods, i.e. 500 for protocol errors and
+ * 501 for I/O errors.
+ * 
+ * @author Sana Development
+ *
+ */
+public class RequestExecutor {
+
+	/**
+	 * Receives the result of a request submitted for asynchronous execution.
+	 * Called on the worker thread which executed the request.
+	 *
+	 * @param <T> The response message type.
+	 */
+	public interface Callback<T>{
+		void onResponse(Response<T> response);
+	}
+
+	/** Default number of worker threads. */
+	public static final int DEFAULT_POOL_SIZE = 4;
+	/** Default maximum number of concurrent requests to a single host. */
+	public static final int DEFAULT_MAX_PER_HOST = 4;
+	/** Default number of submitted requests which may wait for a worker. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+	private static RequestExecutor instance = null;
+
+	/**
+	 * Returns the shared executor, creating it with the default settings if
+	 * necessary.
+	 */
+	public static synchronized RequestExecutor getInstance(){
+		if(instance == null)
+			instance = new RequestExecutor(HttpTaskFactory.CLIENT_FACTORY,
+					DEFAULT_POOL_SIZE, DEFAULT_MAX_PER_HOST,
+					DEFAULT_QUEUE_CAPACITY);
+		return instance;
+	}
+
+	private final ClientFactory factory;
+	private final int maxPerHost;
+	private final ThreadPoolExecutor workers;
+	private final ConcurrentMap<String, Semaphore> hosts =
+			new ConcurrentHashMap<String, Semaphore>();
+
+	/**
+	 * Creates a new executor.
+	 * 
+	 * @param factory Source of the client used to execute requests.
+	 * @param poolSize The number of worker threads.
+	 * @param maxPerHost Maximum concurrent requests to any one host.
+	 * @param queueCapacity Maximum number of submitted requests waiting for a
+	 * 	worker. When full, the submitting thread executes the request itself.
+	 */
+	public RequestExecutor(ClientFactory factory, int poolSize, int maxPerHost,
+			int queueCapacity)
+	{
+		if(poolSize < 1 || maxPerHost < 1 || queueCapacity < 1)
+			throw new IllegalArgumentException("Executor limits must be positive");
+		this.factory = factory;
+		this.maxPerHost = maxPerHost;
+		this.workers = new ThreadPoolExecutor(poolSize, poolSize,
+				30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new WorkerThreadFactory(),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Executes a request on the calling thread, blocking only while the
+	 * target host is at its concurrency limit. The response entity is always
+	 * consumed, or the request aborted on failure, so that the pooled
+	 * connection is returned to the client.
+	 * 
+	 * @param request The request to execute.
+	 * @param handler Converts the http response.
+	 * @return The converted response or a failure response.
+	 */
+	public <T> Response<T> execute(HttpUriRequest request,
+			ResponseHandler<Response<T>> handler)
+	{
+		Response<T> response = null;
+		Semaphore permits = permitsFor(request);
+		try{
+			permits.acquire();
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			request.abort();
+			return failure(Response.Code.UNAVAILABLE.code);
+		}
+		HttpResponse httpResponse = null;
+		boolean handled = false;
+		try {
+			HttpClient client = factory.produce();
+			httpResponse = client.execute(request);
+			response = handler.handleResponse(httpResponse);
+			handled = true;
+		} catch (ClientProtocolException e) {
+			e.printStackTrace();
+			response = failure(500);
+		} catch (IOException e) {
+			e.printStackTrace();
+			response = failure(501);
+		} finally {
+			release(request, httpResponse, handled);
+			permits.release();
+		}
+		return (response != null)? response: Response.<T>empty();
+	}
+
+	/**
+	 * Queues a request for execution on a worker thread. Cancelling the
+	 * returned Future aborts the request.
+	 * 
+	 * @param request The request to execute.
+	 * @param handler Converts the http response.
+	 * @param callback Optional callback for the result. May be null.
+	 * @return A Future holding the converted response.
+	 */
+	public <T> Future<Response<T>> submit(final HttpUriRequest request,
+			final ResponseHandler<Response<T>> handler,
+			final Callback<T> callback)
+	{
+		RequestTask<T> task = new RequestTask<T>(request,
+				new Callable<Response<T>>(){
+					@Override
+					public Response<T> call() throws Exception {
+						Response<T> response = execute(request, handler);
+						if(callback != null)
+							callback.onResponse(response);
+						return response;
+					}
+				});
+		workers.execute(task);
+		return task;
+	}
+
+	/**
+	 * Stops accepting new requests. Requests already queued will still be
+	 * executed.
+	 */
+	public void shutdown(){
+		workers.shutdown();
+	}
+
+	// Returns the connection to the pool. A partially read or unhandled
+	// response is aborted rather than read to the end.
+	static void release(HttpUriRequest request, HttpResponse httpResponse,
+			boolean handled)
+	{
+		if(httpResponse == null || !handled){
+			request.abort();
+			return;
+		}
+		HttpEntity entity = httpResponse.getEntity();
+		try{
+			EntityUtils.consume(entity);
+		} catch (IOException e){
+			request.abort();
+		}
+	}
+
+	Semaphore permitsFor(HttpUriRequest request){
+		String host = (request.getURI() != null)?
+				String.valueOf(request.getURI().getHost()): "";
+		Semaphore permits = hosts.get(host);
+		if(permits == null){
+			Semaphore created = new Semaphore(maxPerHost, true);
+			permits = hosts.putIfAbsent(host, created);
+			if(permits == null)
+				permits = created;
+		}
+		return permits;
+	}
+
+	static <T> Response<T> failure(int code){
+		Response<T> response = Response.empty();
+		response.setCode(code);
+		response.setStatus(Response.FAILURE);
+		return response;
+	}
+
+	/**
+	 * Aborts the underlying request when cancelled.
+	 */
+	static class RequestTask<T> extends FutureTask<Response<T>>{
+
+		final HttpUriRequest request;
+
+		RequestTask(HttpUriRequest request, Callable<Response<T>> callable){
+			super(callable);
+			this.request = request;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if(cancelled)
+				request.abort();
+			return cancelled;
+		}
+	}
+
+	static class WorkerThreadFactory implements ThreadFactory{
+
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "RequestExecutor-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
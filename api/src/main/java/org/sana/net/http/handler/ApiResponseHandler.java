@@ -1,40 +1,67 @@
 package org.sana.net.http.handler;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Type;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 
-import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 
 import org.sana.net.Response;
 import org.sana.net.ResponseException;
+import org.sana.text.json.JsonCodecs;
 
 public abstract class ApiResponseHandler<T> implements ResponseHandler<T>{
 
-    final static Gson gson = new GsonBuilder()
-        .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-        .setDateFormat("yyyy-MM-dd HH:mm:ss")
-        .create();
+    static final int BUFFER_SIZE = 8192;
+
+    final static Gson gson = JsonCodecs.getApi();
 
     public abstract Type getType();
 
+    /**
+     * Decodes the response entity directly from its content stream rather
+     * than buffering the body as a String first.
+     */
     @Override
     public T handleResponse(HttpResponse response)
             throws ClientProtocolException, IOException {
-        String json = EntityUtils.toString(response.getEntity());
+        HttpEntity entity = response.getEntity();
+        if(entity == null)
+            throw new ResponseException(String.valueOf(response.getStatusLine()));
         Type type = getType();
+        JsonReader reader = newReader(entity);
         try{
-            return gson.fromJson(json, type);
-                } catch (JsonSyntaxException e){
-                    throw new ResponseException(json, e);
-                }
+            return gson.<T>fromJson(reader, type);
+        } catch (JsonParseException e){
+            throw new ResponseException(String.valueOf(response.getStatusLine()), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns a JsonReader over the content of an entity using the entity
+     * charset, or UTF-8 if none is declared. Closing the reader releases the
+     * underlying connection.
+     */
+    public static JsonReader newReader(HttpEntity entity) throws IOException{
+        String charset = EntityUtils.getContentCharSet(entity);
+        if(charset == null)
+            charset = HTTP.UTF_8;
+        InputStream in = entity.getContent();
+        return new JsonReader(new BufferedReader(
+                new InputStreamReader(in, charset), BUFFER_SIZE));
     }
 
     public static <K> K fromJson(String json, Type typeOf){
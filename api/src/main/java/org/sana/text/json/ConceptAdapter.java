@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.io.IOException;
+
+import org.sana.core.Concept;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming adapter for {@link org.sana.core.Concept}.
+ * 
+ * @author Sana Development
+ *
+ */
+public class ConceptAdapter extends ModelAdapter<Concept>{
+
+	public ConceptAdapter(Gson gson){
+		super(gson);
+	}
+	
+	@Override
+	protected Concept newInstance() {
+		return new Concept();
+	}
+
+	@Override
+	protected boolean readField(JsonReader in, String name, Concept value)
+			throws IOException 
+	{
+		if(name.equals("name")){
+			value.name = readString(in);
+		} else if(name.equals("display_name")){
+			value.display_name = readString(in);
+		} else if(name.equals("description")){
+			value.description = readString(in);
+		} else if(name.equals("datatype")){
+			value.datatype = readString(in);
+		} else if(name.equals("mediatype")){
+			value.mediatype = readString(in);
+		} else if(name.equals("constraint")){
+			value.constraint = readString(in);
+		} else if(name.equals("conceptclass")){
+			value.conceptclass = readString(in);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected void writeFields(JsonWriter out, Concept value)
+			throws IOException 
+	{
+		writeString(out, "name", value.name);
+		writeString(out, "display_name", value.display_name);
+		writeString(out, "description", value.description);
+		writeString(out, "datatype", value.datatype);
+		writeString(out, "mediatype", value.mediatype);
+		writeString(out, "constraint", value.constraint);
+		writeString(out, "conceptclass", value.conceptclass);
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.sana.core.Encounter;
+import org.sana.core.Observation;
+import org.sana.core.Observer;
+import org.sana.core.Procedure;
+import org.sana.core.Subject;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming adapter for {@link org.sana.core.Encounter}.
+ * 
+ * @author Sana Development
+ *
+ */
+public class EncounterAdapter extends ModelAdapter<Encounter>{
+
+	final TypeAdapter<Subject> subjectAdapter;
+	final TypeAdapter<Procedure> procedureAdapter;
+	final TypeAdapter<Observer> observerAdapter;
+	final TypeAdapter<List<Observation>> observationsAdapter;
+	
+	public EncounterAdapter(Gson gson){
+		super(gson);
+		subjectAdapter = gson.getAdapter(Subject.class);
+		procedureAdapter = gson.getAdapter(Procedure.class);
+		observerAdapter = gson.getAdapter(Observer.class);
+		observationsAdapter = gson.getAdapter(
+				new TypeToken<List<Observation>>(){});
+	}
+	
+	@Override
+	protected Encounter newInstance() {
+		return new Encounter();
+	}
+
+	@Override
+	protected boolean readField(JsonReader in, String name, Encounter value)
+			throws IOException 
+	{
+		if(name.equals("subject")){
+			value.subject = subjectAdapter.read(in);
+		} else if(name.equals("procedure")){
+			value.procedure = procedureAdapter.read(in);
+		} else if(name.equals("observer")){
+			value.observer = observerAdapter.read(in);
+		} else if(name.equals("observations")){
+			value.observations = observationsAdapter.read(in);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected void writeFields(JsonWriter out, Encounter value)
+			throws IOException 
+	{
+		writeValue(out, "subject", subjectAdapter, value.subject);
+		writeValue(out, "procedure", procedureAdapter, value.procedure);
+		writeValue(out, "observer", observerAdapter, value.observer);
+		writeValue(out, "observations", observationsAdapter, value.observations);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.io.IOException;
+
+import org.sana.api.task.EncounterTask;
+import org.sana.api.task.Task;
+import org.sana.core.Encounter;
+import org.sana.core.Observer;
+import org.sana.core.Procedure;
+import org.sana.core.Subject;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming adapter for {@link org.sana.api.task.EncounterTask}.
+ * 
+ * @author Sana Development
+ *
+ */
+public class EncounterTaskAdapter extends ModelAdapter<EncounterTask>{
+
+	final TypeAdapter<Encounter> encounterAdapter;
+	final TypeAdapter<Procedure> procedureAdapter;
+	final TypeAdapter<Subject> subjectAdapter;
+	final TypeAdapter<Observer> observerAdapter;
+	
+	public EncounterTaskAdapter(Gson gson){
+		super(gson);
+		encounterAdapter = gson.getAdapter(Encounter.class);
+		procedureAdapter = gson.getAdapter(Procedure.class);
+		subjectAdapter = gson.getAdapter(Subject.class);
+		observerAdapter = gson.getAdapter(Observer.class);
+	}
+	
+	@Override
+	protected EncounterTask newInstance() {
+		return new EncounterTask();
+	}
+
+	@Override
+	protected boolean readField(JsonReader in, String name, EncounterTask value)
+			throws IOException 
+	{
+		if(name.equals("encounter")){
+			value.encounter = encounterAdapter.read(in);
+		} else if(name.equals("procedure")){
+			value.procedure = procedureAdapter.read(in);
+		} else if(name.equals("subject")){
+			value.subject = subjectAdapter.read(in);
+		} else if(name.equals("assigned_to")){
+			value.assigned_to = observerAdapter.read(in);
+		} else if(name.equals("due_date")){
+			value.dueDate = dateAdapter.read(in);
+		} else if(name.equals("due_on")){
+			value.due_on = readString(in);
+		} else if(name.equals("completed")){
+			value.completed = readString(in);
+		} else if(name.equals("started")){
+			value.started = readString(in);
+		} else if(name.equals("status")){
+			value.status = readStatus(in);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected void writeFields(JsonWriter out, EncounterTask value)
+			throws IOException 
+	{
+		writeValue(out, "encounter", encounterAdapter, value.encounter);
+		writeValue(out, "procedure", procedureAdapter, value.procedure);
+		writeValue(out, "subject", subjectAdapter, value.subject);
+		writeValue(out, "assigned_to", observerAdapter, value.assigned_to);
+		writeDate(out, "due_date", value.dueDate);
+		writeString(out, "due_on", value.due_on);
+		writeString(out, "completed", value.completed);
+		writeString(out, "started", value.started);
+		if(value.status != null){
+			out.name("status").beginObject();
+			writeString(out, "current", value.status.current);
+			out.endObject();
+		}
+	}
+	
+	static Task.Status readStatus(JsonReader in) throws IOException{
+		Task.Status status = new Task.Status();
+		in.beginObject();
+		while(in.hasNext()){
+			String name = in.nextName();
+			if(name.equals("current") && in.peek() != JsonToken.NULL){
+				status.current = readString(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return status;
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Registry of shared Gson instances keyed by date format and field naming
+ * policy. Gson instances are thread safe and cache the type adapters they
+ * build, so reusing them avoids rebuilding adapters on every response.
+ * Instances using the <code>LOWER_CASE_WITH_UNDERSCORES</code> policy of the
+ * MDS API have the {@link ResponseTypeAdapterFactoy} and
+ * {@link ModelAdapterFactory} registered.
+ * 
+ * @author Sana Development
+ *
+ */
+public final class JsonCodecs {
+
+	/** The date format used by the MDS API. */
+	public static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+	
+	private static final ConcurrentMap<String, Gson> CODECS = 
+			new ConcurrentHashMap<String, Gson>();
+	
+	private JsonCodecs(){}
+	
+	/**
+	 * @return A shared Gson equivalent to <code>new Gson()</code>.
+	 */
+	public static Gson get(){
+		return get(null, FieldNamingPolicy.IDENTITY);
+	}
+	
+	/**
+	 * @return The shared Gson for the MDS API using the default date format.
+	 */
+	public static Gson getApi(){
+		return get(DEFAULT_DATE_FORMAT, 
+				FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+	}
+	
+	/**
+	 * @param dateFormat The date format pattern.
+	 * @return The shared Gson for the MDS API using the given date format.
+	 */
+	public static Gson getApi(String dateFormat){
+		return get(dateFormat, FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+	}
+	
+	/**
+	 * Returns the shared Gson for a date format and naming policy, creating
+	 * it if necessary.
+	 * 
+	 * @param dateFormat The date format pattern. May be null for the Gson
+	 * 	default.
+	 * @param policy The field naming policy.
+	 * @return A shared Gson instance.
+	 */
+	public static Gson get(String dateFormat, FieldNamingPolicy policy){
+		String key = policy.name() + "|" + dateFormat;
+		Gson gson = CODECS.get(key);
+		if(gson == null){
+			Gson created = create(dateFormat, policy);
+			gson = CODECS.putIfAbsent(key, created);
+			if(gson == null)
+				gson = created;
+		}
+		return gson;
+	}
+	
+	static Gson create(String dateFormat, FieldNamingPolicy policy){
+		GsonBuilder builder = new GsonBuilder().setFieldNamingPolicy(policy);
+		if(dateFormat != null)
+			builder.setDateFormat(dateFormat);
+		if(policy == FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES){
+			builder.registerTypeAdapterFactory(new ResponseTypeAdapterFactoy())
+				.registerTypeAdapterFactory(new ModelAdapterFactory());
+		}
+		return builder.create();
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.sana.core.Model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Base class for the hand written {@link org.sana.core.Model} adapters. 
+ * Handles the fields common to all models and delegates the remaining
+ * fields to the subclass. Json names follow the 
+ * <code>LOWER_CASE_WITH_UNDERSCORES</code> naming used by the MDS API, 
+ * unknown names are skipped and explicit nulls leave the field unset. Dates
+ * are read and written with the Date adapter of the owning Gson instance so
+ * that its configured date format applies.
+ * 
+ * @author Sana Development
+ *
+ * @param <T> The model type.
+ */
+public abstract class ModelAdapter<T extends Model> extends TypeAdapter<T>{
+
+	protected final Gson gson;
+	protected final TypeAdapter<Date> dateAdapter;
+	
+	protected ModelAdapter(Gson gson){
+		this.gson = gson;
+		this.dateAdapter = gson.getAdapter(Date.class);
+	}
+	
+	/**
+	 * @return A new, empty instance of the model.
+	 */
+	protected abstract T newInstance();
+	
+	/**
+	 * Reads the value of a single, non-null, model specific field.
+	 * 
+	 * @param in The reader positioned at the field value.
+	 * @param name The json field name.
+	 * @param value The instance being read into.
+	 * @return <code>false</code> if the name is not recognized and the value
+	 * 	was not consumed.
+	 * @throws IOException
+	 */
+	protected abstract boolean readField(JsonReader in, String name, T value) 
+			throws IOException;
+	
+	/**
+	 * Writes the model specific fields.
+	 * 
+	 * @param out The writer positioned within the object.
+	 * @param value The instance being written.
+	 * @throws IOException
+	 */
+	protected abstract void writeFields(JsonWriter out, T value) 
+			throws IOException;
+
+	/* (non-Javadoc)
+	 * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+	 */
+	@Override
+	public T read(JsonReader in) throws IOException {
+		if(in.peek() == JsonToken.NULL){
+			in.nextNull();
+			return null;
+		}
+		T value = newInstance();
+		in.beginObject();
+		while(in.hasNext()){
+			String name = in.nextName();
+			if(in.peek() == JsonToken.NULL){
+				in.nextNull();
+			} else if(name.equals("uuid")){
+				value.uuid = in.nextString();
+			} else if(name.equals("created")){
+				value.created = dateAdapter.read(in);
+			} else if(name.equals("modified")){
+				value.modified = dateAdapter.read(in);
+			} else if(name.equals("voided")){
+				value.voided = readBoolean(in);
+			} else if(!readField(in, name, value)){
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
+	 */
+	@Override
+	public void write(JsonWriter out, T value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		writeString(out, "uuid", value.uuid);
+		writeDate(out, "created", value.created);
+		writeDate(out, "modified", value.modified);
+		if(value.voided)
+			out.name("voided").value(true);
+		writeFields(out, value);
+		out.endObject();
+	}
+	
+	/**
+	 * Reads a value, which may be a json number or boolean, as a String.
+	 */
+	protected static String readString(JsonReader in) throws IOException{
+		if(in.peek() == JsonToken.BOOLEAN)
+			return Boolean.toString(in.nextBoolean());
+		return in.nextString();
+	}
+	
+	/**
+	 * Reads a value, which may be a json boolean, String, or null, as a 
+	 * boolean. Null is read as <code>false</code>.
+	 */
+	protected static boolean readBoolean(JsonReader in) throws IOException{
+		switch(in.peek()){
+		case NULL:
+			in.nextNull();
+			return false;
+		case BOOLEAN:
+			return in.nextBoolean();
+		default:
+			return Boolean.parseBoolean(in.nextString());
+		}
+	}
+	
+	/**
+	 * Writes a named String value. Null values are omitted.
+	 */
+	protected static void writeString(JsonWriter out, String name, String value)
+			throws IOException
+	{
+		if(value != null)
+			out.name(name).value(value);
+	}
+	
+	/**
+	 * Writes a named Date value. Null values are omitted.
+	 */
+	protected void writeDate(JsonWriter out, String name, Date value)
+			throws IOException
+	{
+		if(value != null){
+			out.name(name);
+			dateAdapter.write(out, value);
+		}
+	}
+	
+	/**
+	 * Writes a named value with the given adapter. Null values are omitted.
+	 */
+	protected static <K> void writeValue(JsonWriter out, String name, 
+			TypeAdapter<K> adapter, K value) throws IOException
+	{
+		if(value != null){
+			out.name(name);
+			adapter.write(out, value);
+		}
+	}
+}
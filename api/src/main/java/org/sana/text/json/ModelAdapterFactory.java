@@ -27,12 +27,30 @@
  */
 package org.sana.text.json;
 
+import org.sana.api.task.EncounterTask;
+import org.sana.core.Concept;
+import org.sana.core.Encounter;
+import org.sana.core.Event;
+import org.sana.core.Location;
+import org.sana.core.Observation;
+import org.sana.core.Observer;
+import org.sana.core.Patient;
+import org.sana.core.Procedure;
+import org.sana.core.Subject;
+
 import com.google.gson.Gson;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
 import com.google.gson.reflect.TypeToken;
 
 /**
+ * Provides the hand written, streaming adapters for the 
+ * {@link org.sana.core.Model} classes so that Gson does not fall back to
+ * reflection when decoding them. Matches on the exact class; subclasses not
+ * listed here are left to Gson. The adapters use the 
+ * <code>LOWER_CASE_WITH_UNDERSCORES</code> field names so this factory should
+ * only be registered with Gson instances using that naming policy.
+ * 
  * @author Sana Development
  *
  */
@@ -42,15 +60,37 @@ public class ModelAdapterFactory implements TypeAdapterFactory {
 	 * 
 	 */
 	public ModelAdapterFactory() {
-		// TODO Auto-generated constructor stub
 	}
 
 	/* (non-Javadoc)
 	 * @see com.google.gson.TypeAdapterFactory#create(com.google.gson.Gson, com.google.gson.reflect.TypeToken)
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
-	public <T> TypeAdapter<T> create(Gson arg0, TypeToken<T> arg1) {
-		// TODO Auto-generated method stub
-		return null;
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+		Class<? super T> raw = typeToken.getRawType();
+		TypeAdapter<?> adapter = null;
+		if(raw == Patient.class){
+			adapter = new PatientAdapter(gson);
+		} else if(raw == Subject.class){
+			adapter = new SubjectAdapter(gson);
+		} else if(raw == Encounter.class){
+			adapter = new EncounterAdapter(gson);
+		} else if(raw == EncounterTask.class){
+			adapter = new EncounterTaskAdapter(gson);
+		} else if(raw == Observation.class){
+			adapter = new ObservationAdapter(gson);
+		} else if(raw == Procedure.class){
+			adapter = new ProcedureAdapter(gson);
+		} else if(raw == Concept.class){
+			adapter = new ConceptAdapter(gson);
+		} else if(raw == Location.class){
+			adapter = new LocationAdapter(gson);
+		} else if(raw == Observer.class){
+			adapter = new ObserverAdapter(gson);
+		} else if(raw == Event.class){
+			adapter = new EventAdapter(gson);
+		}
+		return (TypeAdapter<T>) adapter;
 	}
 }
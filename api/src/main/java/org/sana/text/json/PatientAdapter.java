@@ -28,56 +28,72 @@
 package org.sana.text.json;
 
 import java.io.IOException;
+import java.net.URI;
 
+import org.sana.core.Location;
 import org.sana.core.Patient;
 
+import com.google.gson.Gson;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
-public class PatientAdapter extends TypeAdapter<Patient>{
+/**
+ * Streaming adapter for {@link org.sana.core.Patient}.
+ * 
+ * @author Sana Development
+ *
+ */
+public class PatientAdapter extends ModelAdapter<Patient>{
 
-	/* (non-Javadoc)
-	 * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
-	 */
+	final TypeAdapter<URI> uriAdapter;
+	final TypeAdapter<Location> locationAdapter;
+	
+	public PatientAdapter(Gson gson){
+		super(gson);
+		uriAdapter = gson.getAdapter(URI.class);
+		locationAdapter = gson.getAdapter(Location.class);
+	}
+	
 	@Override
-	public Patient read(JsonReader in) throws IOException {
-		if(in.peek() == JsonToken.NULL){
-			in.nextNull();
-	        return null;
-	     }
-		Patient result = new Patient();
-		while(in.hasNext()){
-       	 JsonToken next = in.peek();
-    	 switch(next){
-    	 case BEGIN_ARRAY:
-    		 
-    		 break;
-    	 case BEGIN_OBJECT:
-    		 break;
-    	 case NAME:
-    		 String name = in.nextName();
-    		 
-    	 	 break;
-    	 default:
-    		 break;
-    	 }
-			
+	protected Patient newInstance() {
+		return new Patient();
+	}
+
+	@Override
+	protected boolean readField(JsonReader in, String name, Patient value)
+			throws IOException 
+	{
+		if(name.equals("given_name")){
+			value.given_name = readString(in);
+		} else if(name.equals("family_name")){
+			value.family_name = readString(in);
+		} else if(name.equals("dob")){
+			value.dob = dateAdapter.read(in);
+		} else if(name.equals("gender")){
+			value.gender = readString(in);
+		} else if(name.equals("image")){
+			value.image = uriAdapter.read(in);
+		} else if(name.equals("location")){
+			value.location = locationAdapter.read(in);
+		} else if(name.equals("system_id")){
+			value.system_id = readString(in);
+		} else {
+			return false;
 		}
-		return null;
+		return true;
 	}
 
-	/* (non-Javadoc)
-	 * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
-	 */
 	@Override
-	public void write(JsonWriter out, Patient value) throws IOException {
-		if (value == null) {
-	         out.nullValue();
-	         return;
-	    }
-		
+	protected void writeFields(JsonWriter out, Patient value)
+			throws IOException 
+	{
+		writeString(out, "given_name", value.given_name);
+		writeString(out, "family_name", value.family_name);
+		writeDate(out, "dob", value.dob);
+		writeString(out, "gender", value.gender);
+		writeValue(out, "image", uriAdapter, value.image);
+		writeValue(out, "location", locationAdapter, value.location);
+		writeString(out, "system_id", value.system_id);
 	}
-	
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.io.IOException;
+
+import org.sana.core.Procedure;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming adapter for {@link org.sana.core.Procedure}.
+ * 
+ * @author Sana Development
+ *
+ */
+public class ProcedureAdapter extends ModelAdapter<Procedure>{
+
+	public ProcedureAdapter(Gson gson){
+		super(gson);
+	}
+	
+	@Override
+	protected Procedure newInstance() {
+		return new Procedure();
+	}
+
+	@Override
+	protected boolean readField(JsonReader in, String name, Procedure value)
+			throws IOException 
+	{
+		if(name.equals("author")){
+			value.author = readString(in);
+		} else if(name.equals("version")){
+			value.version = readString(in);
+		} else if(name.equals("description")){
+			value.description = readString(in);
+		} else if(name.equals("src")){
+			value.src = readString(in);
+		} else if(name.equals("title")){
+			value.title = readString(in);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected void writeFields(JsonWriter out, Procedure value)
+			throws IOException 
+	{
+		writeString(out, "author", value.author);
+		writeString(out, "version", value.version);
+		writeString(out, "description", value.description);
+		writeString(out, "src", value.src);
+		writeString(out, "title", value.title);
+	}
+}
@@ -30,6 +30,8 @@ package org.sana.text.json;
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.sana.net.Response;
 
@@ -51,6 +53,7 @@ public class ResponseTypeAdapterFactoy implements TypeAdapterFactory {
 	/* (non-Javadoc)
 	 * @see com.google.gson.TypeAdapterFactory#create(com.google.gson.Gson, com.google.gson.reflect.TypeToken)
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
 	    Type type = typeToken.getType();
@@ -73,9 +76,21 @@ public class ResponseTypeAdapterFactoy implements TypeAdapterFactory {
 	              out.nullValue();
 	                   return;
 	            }
-	           out.name("status").value(value.getStatus());
+	           out.beginObject();
+	           if(value.getStatus() != null)
+	               out.name("status").value(value.getStatus());
 	           out.name("code").value(value.getCode());
-	           adapter.write(out, value.getMessage());
+	           if(value.getMessage() != null){
+	               out.name("message");
+	               adapter.write(out, value.getMessage());
+	           }
+	           if(value.errors != null){
+	               out.name("errors").beginArray();
+	               for(String error: value.errors)
+	                   out.value(error);
+	               out.endArray();
+	           }
+	           out.endObject();
 	        }
 
 			@Override
@@ -87,34 +102,47 @@ public class ResponseTypeAdapterFactoy implements TypeAdapterFactory {
 	             Response<E> result = Response.empty();
 	             in.beginObject();
 	             while(in.hasNext()){
-	            	 JsonToken next = in.peek();
-	            	 switch(next){
-	            	 case BEGIN_ARRAY:
-	            		 
-	            		 break;
-	            	 case BEGIN_OBJECT:
-	            		 break;
-	            	 case NAME:
-	            		 String name = in.nextName();
-	            	 	 if(name.equals("status")){
-	            	 		result.setStatus(in.nextString());
-	            	 	 } else if(name.equals("code")){
-	            	 		int code = in.nextInt();
-	            	 		result.setCode(code);
-	            	 	 } else if(name.equals("message")){
-	            	 		E msg = adapter.read(in);
-	            		 	result.setMessage(msg);
-	            		 }
-	            	 	 break;
-	            	 default:
-	            		 break;
+	            	 String name = in.nextName();
+	            	 if(in.peek() == JsonToken.NULL){
+	            		 in.nextNull();
+	            	 } else if(name.equals("status")){
+	            		 result.setStatus(in.nextString());
+	            	 } else if(name.equals("code")){
+	            		 result.setCode(in.nextInt());
+	            	 } else if(name.equals("message")){
+	            		 result.setMessage(adapter.read(in));
+	            	 } else if(name.equals("errors")){
+	            		 result.errors = readErrors(in);
+	            	 } else {
+	            		 in.skipValue();
 	            	 }
 	             }
 	             in.endObject();
 	             return result;
 			}
-	    	
-			
 	      };
 	}
+
+	/**
+	 * Reads the <code>errors</code> field of a response which may be either
+	 * a single String or an array of Strings. Any other value is skipped.
+	 */
+	public static String[] readErrors(JsonReader in) throws IOException{
+		List<String> errors = new ArrayList<String>();
+		if(in.peek() == JsonToken.BEGIN_ARRAY){
+			in.beginArray();
+			while(in.hasNext()){
+				if(in.peek() == JsonToken.STRING)
+					errors.add(in.nextString());
+				else
+					in.skipValue();
+			}
+			in.endArray();
+		} else if(in.peek() == JsonToken.STRING){
+			errors.add(in.nextString());
+		} else {
+			in.skipValue();
+		}
+		return errors.toArray(new String[errors.size()]);
+	}
 }
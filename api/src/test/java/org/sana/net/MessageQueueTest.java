@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2014, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the 
+ *   distribution.
+ * * Neither the name of the Sana nor the names of its contributors may 
+ *   be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR 
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+import org.sana.net.MessageQueue.Journal;
+import org.sana.net.MessageQueue.Priority;
+
+/**
+ * Checks the ordering, capacity, and journal of the message queue and that
+ * messages are neither lost nor duplicated when it is shared by several
+ * producer and consumer threads.
+ *
+ * @author Sana Development
+ *
+ */
+public class MessageQueueTest extends TestCase {
+
+    public void testPriorityOrdering(){
+        MessageQueue<String> queue = new MessageQueue<String>();
+        queue.offer("low", Priority.LOW);
+        queue.offer("normal 1");
+        queue.offer("immediate", Priority.IMMEDIATE);
+        queue.offer("normal 2", Priority.NORMAL);
+        assertEquals(4, queue.size());
+        assertEquals(2, queue.size(Priority.NORMAL));
+        assertEquals("immediate", queue.peek());
+
+        List<String> iterated = new ArrayList<String>(queue);
+        assertEquals("immediate", iterated.get(0));
+        assertEquals("low", iterated.get(3));
+
+        assertEquals("immediate", queue.poll());
+        assertEquals("normal 1", queue.poll());
+        assertEquals("normal 2", queue.poll());
+        assertEquals("low", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testOfferFailsWhenFull(){
+        MessageQueue<String> queue = new MessageQueue<String>(2);
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b", Priority.LOW));
+        assertEquals(0, queue.remainingCapacity());
+        // a higher priority does not make room
+        assertFalse(queue.offer("c", Priority.IMMEDIATE));
+        assertEquals(2, queue.size());
+
+        assertEquals("a", queue.poll());
+        assertEquals(1, queue.remainingCapacity());
+        assertTrue(queue.offer("c", Priority.IMMEDIATE));
+        assertEquals("c", queue.poll());
+    }
+
+    public void testTimedOfferWaitsForSpace() throws Exception {
+        final MessageQueue<String> queue = new MessageQueue<String>(1);
+        queue.offer("a");
+        long start = System.nanoTime();
+        assertFalse(queue.offer("b", Priority.NORMAL, 50,
+                TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        Thread consumer = new Thread(new Runnable(){
+            @Override
+            public void run() {
+                sleep(50);
+                queue.poll();
+            }
+        });
+        consumer.start();
+        assertTrue(queue.offer("b", Priority.NORMAL, 5, TimeUnit.SECONDS));
+        consumer.join();
+        assertEquals("b", queue.poll());
+    }
+
+    public void testTimedPollWaitsForMessage() throws Exception {
+        final MessageQueue<String> queue = new MessageQueue<String>(1);
+        long start = System.nanoTime();
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        Thread producer = new Thread(new Runnable(){
+            @Override
+            public void run() {
+                sleep(50);
+                queue.offer("a");
+            }
+        });
+        producer.start();
+        assertEquals("a", queue.poll(5, TimeUnit.SECONDS));
+        producer.join();
+    }
+
+    public void testDrainTo(){
+        MessageQueue<String> queue = new MessageQueue<String>();
+        queue.offer("low", Priority.LOW);
+        queue.offer("normal");
+        queue.offer("immediate", Priority.IMMEDIATE);
+        List<String> drained = new ArrayList<String>();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals("immediate", drained.get(0));
+        assertEquals("normal", drained.get(1));
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.drainTo(drained, 10));
+        assertEquals("low", drained.get(2));
+        assertEquals(0, queue.drainTo(drained, 10));
+        try {
+            queue.drainTo(queue, 1);
+            fail("Drained a queue into itself");
+        } catch (IllegalArgumentException e){
+        }
+    }
+
+    public void testJournal(){
+        final List<String> log = new ArrayList<String>();
+        MessageQueue<String> queue = new MessageQueue<String>(3);
+        queue.setJournal(new Journal<String>(){
+            @Override
+            public void added(String message, Priority priority) {
+                log.add("+" + message + " " + priority);
+            }
+
+            @Override
+            public void removed(String message) {
+                log.add("-" + message);
+            }
+        });
+        queue.offer("a");
+        queue.offer("b", Priority.LOW);
+        queue.offer("c", Priority.IMMEDIATE);
+        // rejected and missing messages are not recorded
+        queue.offer("d");
+        queue.remove("e");
+        queue.remove("b");
+        queue.poll();
+        queue.drainTo(new ArrayList<String>(), 1);
+        queue.setJournal(null);
+        queue.offer("f");
+
+        assertEquals(6, log.size());
+        assertEquals("+a NORMAL", log.get(0));
+        assertEquals("+b LOW", log.get(1));
+        assertEquals("+c IMMEDIATE", log.get(2));
+        assertEquals("-b", log.get(3));
+        assertEquals("-c", log.get(4));
+        assertEquals("-a", log.get(5));
+    }
+
+    public void testConcurrentProducersAndConsumers() throws Exception {
+        final int producers = 4;
+        final int consumers = 4;
+        final int perProducer = 5000;
+        final int total = producers * perProducer;
+        final MessageQueue<Integer> queue = new MessageQueue<Integer>(16);
+        final AtomicIntegerArray received = new AtomicIntegerArray(total);
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(producers + consumers);
+        final Priority[] priorities = Priority.values();
+
+        for(int p = 0; p < producers; p++){
+            final int first = p * perProducer;
+            new Thread(new Runnable(){
+                @Override
+                public void run() {
+                    try {
+                        for(int i = first; i < first + perProducer; i++){
+                            if(!queue.offer(i, priorities[i % priorities.length],
+                                    10, TimeUnit.SECONDS))
+                                failures.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        for(int c = 0; c < consumers; c++){
+            new Thread(new Runnable(){
+                @Override
+                public void run() {
+                    try {
+                        List<Integer> batch = new ArrayList<Integer>();
+                        while(remaining.get() > 0){
+                            // alternate between single and batched removal
+                            Integer message = queue.poll(10,
+                                    TimeUnit.MILLISECONDS);
+                            if(message != null)
+                                batch.add(message);
+                            queue.drainTo(batch, 4);
+                            for(Integer m: batch){
+                                received.incrementAndGet(m);
+                                remaining.decrementAndGet();
+                            }
+                            batch.clear();
+                        }
+                    } catch (InterruptedException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        assertEquals(0, remaining.get());
+        assertTrue(queue.isEmpty());
+        for(int i = 0; i < total; i++){
+            assertEquals("Message " + i, 1, received.get(i));
+        }
+    }
+
+    static void sleep(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
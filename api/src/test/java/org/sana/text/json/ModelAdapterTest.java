@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.text.json;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.sana.api.task.EncounterTask;
+import org.sana.api.task.Task;
+import org.sana.core.Concept;
+import org.sana.core.Encounter;
+import org.sana.core.Event;
+import org.sana.core.Location;
+import org.sana.core.Model;
+import org.sana.core.Observation;
+import org.sana.core.Observer;
+import org.sana.core.Patient;
+import org.sana.core.Procedure;
+import org.sana.core.Subject;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Checks the hand written model adapters against reflective Gson configured
+ * with the same naming policy and date format. Each model is written by one
+ * and read by the other and the results compared as json trees, both for
+ * fully populated models and for models whose fields are null.
+ *
+ * @author Sana Development
+ *
+ */
+public class ModelAdapterTest extends TestCase {
+
+	// whole seconds since the api date format has no milliseconds
+	static final Date DATE = new Date(1400000000000L);
+
+	final Gson reflective = new GsonBuilder()
+			.setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+			.setDateFormat(JsonCodecs.DEFAULT_DATE_FORMAT)
+			.create();
+	final Gson adapters = JsonCodecs.getApi();
+
+	static <T extends Model> T model(T value, String uuid){
+		value.uuid = uuid;
+		value.created = DATE;
+		value.modified = DATE;
+		value.voided = true;
+		return value;
+	}
+
+	static Location location(){
+		Location value = model(new Location(), "location-uuid");
+		value.name = "Clinic";
+		value.code = 7;
+		return value;
+	}
+
+	static Observer observer(){
+		Observer value = model(new Observer(), "observer-uuid");
+		value.setUsername("user");
+		value.setPassword("secret");
+		value.setRole("nurse");
+		return value;
+	}
+
+	static Procedure procedure(){
+		Procedure value = model(new Procedure(), "procedure-uuid");
+		value.author = "author";
+		value.version = "1.0";
+		value.description = "description";
+		value.src = "procedure.xml";
+		value.title = "title";
+		return value;
+	}
+
+	static Subject subject(){
+		return model(new Subject(), "subject-uuid");
+	}
+
+	static Patient patient(){
+		Patient value = model(new Patient(), "patient-uuid");
+		value.given_name = "Given";
+		value.family_name = "Family";
+		value.dob = DATE;
+		value.gender = "F";
+		value.image = URI.create("content://org.sana/image/1");
+		value.location = location();
+		value.system_id = "123";
+		return value;
+	}
+
+	static Concept concept(){
+		Concept value = model(new Concept(), "concept-uuid");
+		value.name = "NAME";
+		value.display_name = "Name";
+		value.description = "description";
+		value.datatype = "string";
+		value.mediatype = "text/plain";
+		value.constraint = "";
+		value.conceptclass = "class";
+		return value;
+	}
+
+	static Observation observation(){
+		Observation value = model(new Observation(), "observation-uuid");
+		value.setId("1");
+		value.setEncounter("encounter-uuid");
+		value.setConcept("NAME");
+		value.setValue_complex("complex");
+		value.setValue_text("text");
+		value.setIsComplex(true);
+		return value;
+	}
+
+	static Encounter encounter(){
+		Encounter value = model(new Encounter(), "encounter-uuid");
+		value.subject = subject();
+		value.procedure = procedure();
+		value.observer = observer();
+		value.observations = new ArrayList<Observation>();
+		value.observations.add(observation());
+		return value;
+	}
+
+	static EncounterTask encounterTask(){
+		EncounterTask value = model(new EncounterTask(), "task-uuid");
+		value.encounter = encounter();
+		value.procedure = procedure();
+		value.subject = subject();
+		value.assigned_to = observer();
+		value.dueDate = DATE;
+		value.due_on = "2014-05-13";
+		value.completed = "2014-05-14";
+		value.started = "2014-05-12";
+		value.status = new Task.Status();
+		value.status.current = "ASSIGNED";
+		return value;
+	}
+
+	static Event event(){
+		Event value = model(new Event(), "event-uuid");
+		value.event_type = "ENCOUNTER_SAVE";
+		value.event_value = "value";
+		value.event_time = 1400000000123L;
+		value.encounter = "encounter-uuid";
+		value.subject = "subject-uuid";
+		value.observer = "observer-uuid";
+		return value;
+	}
+
+	<T> void assertRoundTrip(String name, T value, Type type){
+		JsonElement expected = reflective.toJsonTree(value, type);
+		T written = reflective.fromJson(adapters.toJson(value, type), type);
+		assertEquals(name + " written", expected,
+				reflective.toJsonTree(written, type));
+		T read = adapters.fromJson(reflective.toJson(value, type), type);
+		assertEquals(name + " read", expected,
+				reflective.toJsonTree(read, type));
+	}
+
+	// Reads an object with every field of a populated model set to null
+	<T> void assertReadsNulls(String name, T populated, T empty, Type type){
+		JsonObject nulls = new JsonObject();
+		for(Map.Entry<String, JsonElement> entry:
+				reflective.toJsonTree(populated, type).getAsJsonObject().entrySet())
+		{
+			nulls.add(entry.getKey(), JsonNull.INSTANCE);
+		}
+		T read = adapters.fromJson(nulls, type);
+		assertEquals(name + " nulls", reflective.toJsonTree(empty, type),
+				reflective.toJsonTree(read, type));
+	}
+
+	public void testPopulatedModels(){
+		assertRoundTrip("Location", location(), Location.class);
+		assertRoundTrip("Observer", observer(), Observer.class);
+		assertRoundTrip("Procedure", procedure(), Procedure.class);
+		assertRoundTrip("Subject", subject(), Subject.class);
+		assertRoundTrip("Patient", patient(), Patient.class);
+		assertRoundTrip("Concept", concept(), Concept.class);
+		assertRoundTrip("Observation", observation(), Observation.class);
+		assertRoundTrip("Encounter", encounter(), Encounter.class);
+		assertRoundTrip("EncounterTask", encounterTask(), EncounterTask.class);
+		assertRoundTrip("Event", event(), Event.class);
+	}
+
+	public void testEmptyModels(){
+		assertRoundTrip("Location", new Location(), Location.class);
+		assertRoundTrip("Observer", new Observer(), Observer.class);
+		assertRoundTrip("Procedure", new Procedure(), Procedure.class);
+		assertRoundTrip("Subject", new Subject(), Subject.class);
+		assertRoundTrip("Patient", new Patient(), Patient.class);
+		assertRoundTrip("Concept", new Concept(), Concept.class);
+		assertRoundTrip("Observation", new Observation(), Observation.class);
+		assertRoundTrip("Encounter", new Encounter(), Encounter.class);
+		assertRoundTrip("EncounterTask", new EncounterTask(), EncounterTask.class);
+		assertRoundTrip("Event", new Event(), Event.class);
+	}
+
+	public void testNullFields(){
+		assertReadsNulls("Location", location(), new Location(), Location.class);
+		assertReadsNulls("Observer", observer(), new Observer(), Observer.class);
+		assertReadsNulls("Procedure", procedure(), new Procedure(), Procedure.class);
+		assertReadsNulls("Patient", patient(), new Patient(), Patient.class);
+		assertReadsNulls("Concept", concept(), new Concept(), Concept.class);
+		assertReadsNulls("Observation", observation(), new Observation(),
+				Observation.class);
+		assertReadsNulls("Encounter", encounter(), new Encounter(), Encounter.class);
+		assertReadsNulls("EncounterTask", encounterTask(), new EncounterTask(),
+				EncounterTask.class);
+		assertReadsNulls("Event", event(), new Event(), Event.class);
+	}
+
+	public void testQuotedBooleans(){
+		String json = "{\"voided\":\"true\",\"is_complex\":\"true\"}";
+		assertEquals("Observation",
+				reflective.toJsonTree(reflective.fromJson(json, Observation.class)),
+				reflective.toJsonTree(adapters.fromJson(json, Observation.class)));
+	}
+
+	public void testNullModel(){
+		assertEquals("null", adapters.toJson(null, Patient.class));
+		assertNull(adapters.fromJson("null", Patient.class));
+	}
+
+	public void testModelList(){
+		List<Patient> patients = new ArrayList<Patient>();
+		patients.add(patient());
+		patients.add(new Patient());
+		Type type = new TypeToken<List<Patient>>(){}.getType();
+		assertRoundTrip("List<Patient>", patients, type);
+	}
+}
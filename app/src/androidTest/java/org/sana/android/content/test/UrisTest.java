@@ -106,6 +106,14 @@ public class UrisTest extends AndroidTestCase {
     	assertEquals(Uris.getDescriptor(uri), Uris.ENCOUNTER_UUID);
     	assertEquals(Uris.ITEM_UUID, Uris.getTypeDescriptor(uri));
     	assertEquals(Uris.ENCOUNTER, Uris.getContentDescriptor(uri));
+    	
+    	// Test SUMMARY
+    	uri = Encounters.SUMMARY_URI;
+		logUri(uri);
+    	assertEquals(Uris.getDescriptor(uri), Uris.ENCOUNTER_SUMMARY);
+    	assertEquals(Uris.ITEMS_SUMMARY, Uris.getTypeDescriptor(uri));
+    	assertEquals(Uris.ENCOUNTER, Uris.getContentDescriptor(uri));
+    	assertEquals(Encounters.CONTENT_TYPE, Uris.getType(uri));
 	}
 	
 	public void testEventDescriptors(){
@@ -27,6 +27,8 @@
  */
 package org.sana.android.db.impl.test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import org.sana.R;
@@ -52,11 +54,19 @@ import org.sana.android.provider.Instructions;
 import org.sana.android.provider.Notifications;
 import org.sana.android.provider.Observations;
 import org.sana.android.provider.Observers;
+import org.sana.android.provider.Patients;
 import org.sana.android.provider.Procedures;
 import org.sana.android.provider.Subjects;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.provider.BaseColumns;
+import android.test.IsolatedContext;
 import android.test.ProviderTestCase2;
 import android.test.mock.MockContentResolver;
 import android.test.mock.MockContext;
@@ -305,4 +315,333 @@ public class ModelContentProviderImplTest extends
     	uri = Uri.withAppendedPath(EncounterTasks.CONTENT_URI, uuid);
     	assertEquals(EncounterTasks.CONTENT_ITEM_TYPE, mMockResolver.getType(uri));
     }
-}
+    
+    /**
+     * Tests the subject search uri against rows written through the provider
+     */
+    public void testSubjectSearch(){
+    	assertNull(SubjectsHelper.buildMatch(" -* "));
+    	assertEquals("Jo* 12*", SubjectsHelper.buildMatch("Jo\"-12"));
+    	
+    	Uri uri = insertSubject("John", "Smith", "A-1234");
+    	insertSubject("Joan", "Jones", "B-5678");
+    	insertSubject("Mary", "Johnson", "C-1299");
+    	
+    	assertEquals(3, countSearch("jo"));
+    	assertEquals(1, countSearch("jo sm"));
+    	assertEquals(2, countSearch("12"));
+    	assertEquals(0, countSearch("smithers"));
+    	assertEquals(3, countSearch(""));
+    	
+    	// the index follows updates and deletes
+    	ContentValues values = new ContentValues();
+    	values.put(Patients.Contract.FAMILY_NAME, "Brown");
+    	mMockResolver.update(uri, values, null, null);
+    	assertEquals(0, countSearch("smith"));
+    	assertEquals(1, countSearch("brown"));
+    	mMockResolver.delete(Subjects.CONTENT_URI, 
+    			Patients.Contract.FAMILY_NAME + " = ?", new String[]{ "Jones" });
+    	assertEquals(2, countSearch("jo"));
+    }
+    
+    /**
+     * Tests that bulkInsert writes rows with different sets of columns and
+     * sends a single change notification.
+     */
+    public void testBulkInsertMixedColumns(){
+    	RecordingResolver resolver = newRecordingResolver();
+    	ContentValues[] values = new ContentValues[]{
+    			subjectValues("John", "Smith"),
+    			subjectValues("Joan", "Jones"),
+    			subjectValues("Mary", "Johnson"),
+    			subjectValues("Jim", "Brown") };
+    	values[1].put(Patients.Contract.PATIENT_ID, "B-5678");
+    	values[3].put(Patients.Contract.PATIENT_ID, "D-1234");
+    	values[3].put(Patients.Contract.DOB, "2000-01-01");
+    	
+    	assertEquals(4, resolver.bulkInsert(Subjects.CONTENT_URI, values));
+    	assertEquals(1, resolver.changes.size());
+    	assertEquals(Subjects.CONTENT_URI, resolver.changes.get(0));
+    	
+    	Cursor c = null;
+    	try{
+    		c = resolver.query(Subjects.CONTENT_URI, new String[]{
+    				Patients.Contract.GIVEN_NAME,
+    				Patients.Contract.PATIENT_ID,
+    				Patients.Contract.DOB }, 
+    				null, null, Patients.Contract.GIVEN_NAME);
+    		assertEquals(4, c.getCount());
+    		// Jim, Joan, John, Mary
+    		c.moveToPosition(0);
+    		assertEquals("D-1234", c.getString(1));
+    		assertEquals("2000-01-01", c.getString(2));
+    		c.moveToPosition(1);
+    		assertEquals("B-5678", c.getString(1));
+    		assertTrue(c.isNull(2));
+    		c.moveToPosition(2);
+    		assertTrue(c.isNull(1));
+    		assertTrue(c.isNull(2));
+    		c.moveToPosition(3);
+    		assertEquals("Mary", c.getString(0));
+    		assertTrue(c.isNull(1));
+    	} finally {
+    		if(c != null) c.close();
+    	}
+    }
+    
+    /**
+     * Tests that a failing operation rolls back the operations applied 
+     * before it in the same batch and that no change is notified.
+     */
+    public void testApplyBatchRollsBackOnFailure() throws Exception {
+    	RecordingResolver resolver = newRecordingResolver();
+    	ArrayList<ContentProviderOperation> ops = 
+    			new ArrayList<ContentProviderOperation>();
+    	ops.add(ContentProviderOperation.newInsert(Subjects.CONTENT_URI)
+    			.withValues(subjectValues("John", "Smith")).build());
+    	ops.add(ContentProviderOperation.newInsert(Subjects.CONTENT_URI)
+    			.withValues(subjectValues("Joan", "Jones")).build());
+    	// there is no such row so the expected count fails the batch
+    	ops.add(ContentProviderOperation.newUpdate(
+    				Uri.withAppendedPath(Subjects.CONTENT_URI, "9999"))
+    			.withValue(Patients.Contract.FAMILY_NAME, "Brown")
+    			.withExpectedCount(1).build());
+    	try{
+    		resolver.applyBatch(ModelContentProviderImpl.AUTHORITY, ops);
+    		fail("Batch applied with a failing operation");
+    	} catch (OperationApplicationException e){
+    	}
+    	assertEquals(0, count(resolver, Subjects.CONTENT_URI));
+    	assertTrue(resolver.changes.isEmpty());
+    }
+    
+    /**
+     * Tests that the changes made by a batch are notified once per content
+     * directory after the batch is applied.
+     */
+    public void testApplyBatchNotifiesOncePerUri() throws Exception {
+    	RecordingResolver resolver = newRecordingResolver();
+    	Uri subject = resolver.insert(Subjects.CONTENT_URI, 
+    			subjectValues("John", "Smith"));
+    	resolver.changes.clear();
+    	
+    	ArrayList<ContentProviderOperation> ops = 
+    			new ArrayList<ContentProviderOperation>();
+    	ops.add(ContentProviderOperation.newInsert(Subjects.CONTENT_URI)
+    			.withValues(subjectValues("Joan", "Jones")).build());
+    	ops.add(ContentProviderOperation.newInsert(Subjects.CONTENT_URI)
+    			.withValues(subjectValues("Mary", "Johnson")).build());
+    	ops.add(ContentProviderOperation.newUpdate(subject)
+    			.withValue(Patients.Contract.FAMILY_NAME, "Brown").build());
+    	ContentValues task = new ContentValues();
+    	task.put(EncounterTasks.Contract.UUID, UUID.randomUUID().toString());
+    	task.put(EncounterTasks.Contract.OBSERVER, "observer");
+    	task.put(EncounterTasks.Contract.STATUS, "ASSIGNED");
+    	ops.add(ContentProviderOperation.newInsert(EncounterTasks.CONTENT_URI)
+    			.withValues(task).build());
+    	
+    	assertEquals(4, resolver.applyBatch(ModelContentProviderImpl.AUTHORITY,
+    			ops).length);
+    	assertEquals(2, resolver.changes.size());
+    	assertTrue(resolver.changes.contains(Subjects.CONTENT_URI));
+    	assertTrue(resolver.changes.contains(EncounterTasks.CONTENT_URI));
+    	assertEquals(3, count(resolver, Subjects.CONTENT_URI));
+    	assertEquals(1, count(resolver, EncounterTasks.CONTENT_URI));
+    }
+    
+    /**
+     * Tests that procedures loaded without a uuid, which are all inserted 
+     * with an empty uuid, do not collide on the uuid index.
+     */
+    public void testInsertProceduresWithoutUuid(){
+    	assertNotNull(insertProcedure("Procedure One"));
+    	assertNotNull(insertProcedure("Procedure Two"));
+    	Cursor c = null;
+    	try{
+    		c = mMockResolver.query(Procedures.CONTENT_URI, 
+    				new String[]{ Procedures.Contract._ID }, 
+    				Procedures.Contract.UUID + " = ?", new String[]{ "" }, null);
+    		assertEquals(2, c.getCount());
+    	} finally {
+    		if(c != null) c.close();
+    	}
+    }
+    
+    /**
+     * Tests that an upgrade from version 2, without indexes or search, keeps
+     * the existing rows.
+     */
+    public void testUpgradeFromVersion2(){
+    	assertUpgradeKeepsRows(2);
+    }
+    
+    /**
+     * Tests that an upgrade from version 3, with indexes but without search,
+     * keeps the existing rows.
+     */
+    public void testUpgradeFromVersion3(){
+    	assertUpgradeKeepsRows(3);
+    }
+    
+    void assertUpgradeKeepsRows(int oldVersion){
+		String name = getContext().getString(R.string.db_name);
+		int version = getContext().getResources().getInteger(R.integer.cfg_db_version_value);
+		TableHelper<?>[] helpers = new TableHelper<?>[]{
+				ConceptsHelper.getInstance(),
+				EncountersHelper.getInstance(),
+				EncounterTasksHelper.getInstance(),
+				EventsHelper.getInstance(),
+				InstructionsHelper.getInstance(),
+				NotificationsHelper.getInstance(),
+				ObservationsHelper.getInstance(),
+				ObserversHelper.getInstance(),
+				ProceduresHelper.getInstance(),
+				SubjectsHelper.getInstance() };
+		SQLiteDatabase db = getContext().openOrCreateDatabase(name, 0, null);
+		try{
+			// the tables have not changed since version 2
+			for(TableHelper<?> helper:helpers){
+				db.execSQL(helper.onCreate());
+				if(oldVersion >= 3){
+					for(String sql:helper.onCreateIndexes())
+						db.execSQL(sql);
+				}
+			}
+			ContentValues values = new ContentValues();
+			values.put(Patients.Contract.UUID, UUID.randomUUID().toString());
+			values.put(Patients.Contract.GIVEN_NAME, "John");
+			values.put(Patients.Contract.FAMILY_NAME, "Smith");
+			values.put(Patients.Contract.PATIENT_ID, "A-1234");
+			db.insert(SubjectsHelper.getInstance().getTable(), null, values);
+			values = new ContentValues();
+			values.put(EncounterTasks.Contract.UUID, UUID.randomUUID().toString());
+			values.put(EncounterTasks.Contract.OBSERVER, "observer");
+			values.put(EncounterTasks.Contract.STATUS, "ASSIGNED");
+			db.insert(EncounterTasksHelper.getInstance().getTable(), null, values);
+			
+			mOpener = new DatabaseOpenHelperImpl(getContext(), name, version);
+			mOpener.onUpgrade(db, oldVersion, version);
+			
+			assertEquals(1, count(db, "SELECT * FROM " 
+					+ SubjectsHelper.getInstance().getTable()));
+			assertEquals(1, count(db, "SELECT * FROM " 
+					+ EncounterTasksHelper.getInstance().getTable()));
+			// existing rows are searchable and new rows are indexed 
+			String search = "SELECT docid FROM " + SubjectsHelper.SEARCH_TABLE
+					+ " WHERE " + SubjectsHelper.SEARCH_TABLE + " MATCH ";
+			assertEquals(1, count(db, search + "'smi*'"));
+			values = new ContentValues();
+			values.put(Patients.Contract.UUID, UUID.randomUUID().toString());
+			values.put(Patients.Contract.FAMILY_NAME, "Smithers");
+			db.insert(SubjectsHelper.getInstance().getTable(), null, values);
+			assertEquals(2, count(db, search + "'smi*'"));
+			assertEquals(1, count(db, "SELECT name FROM sqlite_master WHERE "
+					+ "type = 'index' AND name = '" 
+					+ EncounterTasksHelper.getInstance().getTable() + "_"
+					+ EncounterTasks.Contract.UUID + "_idx'"));
+			assertEquals(1, count(db, "SELECT name FROM sqlite_master WHERE "
+					+ "type = 'index' AND name = '" 
+					+ EncountersHelper.getInstance().getTable() + "_"
+					+ Encounters.Contract.CREATED + "_" 
+					+ Encounters.Contract._ID + "_idx'"));
+			// the procedure uuid index is recreated without the constraint
+			assertEquals(0, count(db, "SELECT name FROM sqlite_master WHERE "
+					+ "type = 'index' AND sql LIKE 'CREATE UNIQUE%' AND name = '" 
+					+ ProceduresHelper.getInstance().getTable() + "_"
+					+ Procedures.Contract.UUID + "_idx'"));
+			assertEquals(1, count(db, "SELECT name FROM sqlite_master WHERE "
+					+ "type = 'index' AND name = '" 
+					+ ProceduresHelper.getInstance().getTable() + "_"
+					+ Procedures.Contract.UUID + "_idx'"));
+		} finally {
+			db.close();
+		}
+    }
+    
+    int count(SQLiteDatabase db, String sql){
+    	Cursor c = null;
+    	try{
+    		c = db.rawQuery(sql, null);
+    		return c.getCount();
+    	} finally {
+    		if(c != null) c.close();
+    	}
+    }
+    
+    /**
+     * Records the change notifications sent through it.
+     */
+    static class RecordingResolver extends MockContentResolver {
+    	final List<Uri> changes = new ArrayList<Uri>();
+    	
+    	@Override
+    	public void notifyChange(Uri uri, ContentObserver observer, 
+    			boolean syncToNetwork)
+    	{
+    		changes.add(uri);
+    	}
+    }
+    
+    // A resolver for a second provider over the same test database. The
+    // resolver of the test case drops every notification.
+    RecordingResolver newRecordingResolver(){
+    	RecordingResolver resolver = new RecordingResolver();
+    	ModelContentProviderImpl provider = new ModelContentProviderImpl();
+    	provider.attachInfo(new IsolatedContext(resolver, getMockContext()), 
+    			null);
+    	resolver.addProvider(ModelContentProviderImpl.AUTHORITY, provider);
+    	return resolver;
+    }
+    
+    ContentValues subjectValues(String given, String family){
+    	ContentValues values = new ContentValues();
+    	values.put(Patients.Contract.UUID, UUID.randomUUID().toString());
+    	values.put(Patients.Contract.GIVEN_NAME, given);
+    	values.put(Patients.Contract.FAMILY_NAME, family);
+    	values.put(Patients.Contract.GENDER, "M");
+    	return values;
+    }
+    
+    int count(MockContentResolver resolver, Uri uri){
+    	Cursor c = null;
+    	try{
+    		c = resolver.query(uri, new String[]{ BaseColumns._ID }, null, 
+    				null, null);
+    		return c.getCount();
+    	} finally {
+    		if(c != null) c.close();
+    	}
+    }
+    
+    Uri insertSubject(String given, String family, String id){
+    	ContentValues values = new ContentValues();
+    	values.put(Patients.Contract.UUID, UUID.randomUUID().toString());
+    	values.put(Patients.Contract.GIVEN_NAME, given);
+    	values.put(Patients.Contract.FAMILY_NAME, family);
+    	values.put(Patients.Contract.PATIENT_ID, id);
+    	values.put(Patients.Contract.GENDER, "M");
+    	return mMockResolver.insert(Subjects.CONTENT_URI, values);
+    }
+    
+    Uri insertProcedure(String title){
+    	ContentValues values = new ContentValues();
+    	values.put(Procedures.Contract.UUID, "");
+    	values.put(Procedures.Contract.TITLE, title);
+    	values.put(Procedures.Contract.AUTHOR, "");
+    	values.put(Procedures.Contract.VERSION, "1.0");
+    	values.put(Procedures.Contract.PROCEDURE, "<Procedure />");
+    	return mMockResolver.insert(Procedures.CONTENT_URI, values);
+    }
+    
+    int countSearch(String search){
+    	Uri uri = Uri.withAppendedPath(Subjects.SEARCH_URI, search);
+    	Cursor c = null;
+    	try{
+    		c = mMockResolver.query(uri, new String[]{ Patients.Contract._ID },
+    				null, null, null);
+    		return c.getCount();
+    	} finally {
+    		if(c != null) c.close();
+    	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY 
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF 
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.android.procedure.test;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.sana.R;
+import org.sana.android.procedure.Procedure;
+import org.sana.android.procedure.ProcedureDefinition;
+import org.sana.android.procedure.ProcedureParseException;
+import org.sana.android.procedure.ProcedureParser;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Verifies that the single pass {@link org.sana.android.procedure.ProcedureParser
+ * ProcedureParser} builds the same definition tree as compiling the Procedure 
+ * node of a DOM parse.
+ */
+public class ProcedureParserTest extends AndroidTestCase {
+
+	static final String NESTED = "<?xml version=\"1.0\"?>\n"
+			+ "<!-- leading comment -->\n"
+			+ "<Procedure title=\"T &amp; C\" author=\"a\" uuid=\"u\" version=\"1\">\n"
+			+ "  <Page>\n"
+			+ "    <Element type=\"TEXT\" id=\"1\" concept=\"A\" question=\"a &lt; b\" answer=\"\"/>\n"
+			+ "    <!-- inline comment -->\n"
+			+ "  </Page>\n"
+			+ "  <Page>\n"
+			+ "    <ShowIf>\n"
+			+ "      <and>\n"
+			+ "        <Criteria type=\"EQUALS\" id=\"1\" value=\"x\"/>\n"
+			+ "        <not>\n"
+			+ "          <or>\n"
+			+ "            <Criteria type=\"EQUALS\" id=\"1\" value=\"y\"/>\n"
+			+ "            <Criteria type=\"EQUALS\" id=\"1\" value=\"z\"/>\n"
+			+ "          </or>\n"
+			+ "        </not>\n"
+			+ "      </and>\n"
+			+ "    </ShowIf>\n"
+			+ "    <Element type=\"TEXT\" id=\"2\" concept=\"B\" question=\"b\" answer=\"\"/>\n"
+			+ "  </Page>\n"
+			+ "</Procedure>\n";
+
+	static ProcedureDefinition compileDOM(InputSource xml) throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setIgnoringComments(true);
+		DocumentBuilder db = dbf.newDocumentBuilder();
+		Document d = db.parse(xml);
+		Node procedureNode = d.getElementsByTagName("Procedure").item(0);
+		return ProcedureDefinition.compile(procedureNode);
+	}
+
+	void assertEquivalent(String name, ProcedureDefinition expected,
+			ProcedureDefinition actual) throws Exception
+	{
+		assertEquals(name, expected.getRoot(), actual.getRoot());
+		assertEquals(name, expected.getUuid(), actual.getUuid());
+		assertEquals(name, expected.getVersion(), actual.getVersion());
+		assertEquals(name, Procedure.fromDefinition(expected).toXML(),
+				Procedure.fromDefinition(actual).toXML());
+	}
+
+	public void testNestedCriteria() throws Exception {
+		ProcedureDefinition expected = compileDOM(
+				new InputSource(new StringReader(NESTED)));
+		ProcedureDefinition actual = ProcedureParser.parse(
+				new StringReader(NESTED));
+		assertEquivalent("nested", expected, actual);
+	}
+
+	public void testRawResources() throws Exception {
+		for(Field field:R.raw.class.getFields()){
+			int id = field.getInt(null);
+			InputStream in = getContext().getResources().openRawResource(id);
+			ProcedureDefinition expected;
+			try{
+				expected = compileDOM(new InputSource(in));
+			} finally {
+				in.close();
+			}
+			in = getContext().getResources().openRawResource(id);
+			ProcedureDefinition actual;
+			try{
+				actual = ProcedureParser.parse(in, null);
+			} finally {
+				in.close();
+			}
+			assertEquivalent(field.getName(), expected, actual);
+		}
+	}
+
+	public void testShowIfWithoutWhitespace() throws Exception {
+		String xml = "<Procedure title=\"t\"><Page>"
+				+ "<Element type=\"TEXT\" id=\"1\" concept=\"A\"/></Page>"
+				+ "<Page><ShowIf><Criteria type=\"EQUALS\" id=\"1\" value=\"x\"/>"
+				+ "</ShowIf><Element type=\"TEXT\" id=\"2\" concept=\"B\"/>"
+				+ "</Page></Procedure>";
+		Procedure procedure = ProcedureParser.parse(new StringReader(xml))
+				.newInstance();
+		assertEquals(2, procedure.getTotalPageCount());
+	}
+
+	public void testNotAProcedure() throws Exception {
+		try{
+			ProcedureParser.parse(new StringReader("<Page></Page>"));
+			fail("Expected ProcedureParseException");
+		} catch (ProcedureParseException e){
+		}
+	}
+}
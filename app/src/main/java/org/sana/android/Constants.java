@@ -192,6 +192,9 @@ public class Constants {
 
     public static final String PREFERENCE_NOTIFY_TASK_STATUS = "s_notify_task_status";
 
+    /** Key for looking up whether the MDS accepts gzip compressed events */
+    public static final String PREFERENCE_COMPRESS_EVENTS = "s_compress_events";
+
     /**
      * Calculates the timeout for a given bandwidth. The formula used for
      * calculating the value is given by:
@@ -1,18 +1,15 @@
 package org.sana.android;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 
 import org.sana.android.db.ImageProvider;
 import org.sana.android.db.SanaDB;
 import org.sana.android.db.SanaDB.ImageSQLFormat;
+import org.sana.android.media.ImageLoader;
 
 import android.content.ContentUris;
 import android.content.Context;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.util.Log;
 import android.view.View;
@@ -86,17 +83,6 @@ public class ScalingImageAdapter extends CursorAdapter {
     	setSelected(selection, !isSelected(selection));
     }
     
-    private Bitmap bitmapForImageUri(Context context, Uri imageUri) throws 
-    	IOException 
-    {
-    	BitmapFactory.Options bmo = new BitmapFactory.Options();
-    	bmo.inSampleSize = scaleFactor;
-    	InputStream is = context.getContentResolver().openInputStream(imageUri);
-    	Bitmap bitmap = BitmapFactory.decodeStream(is, null, bmo); 
-    	is.close();
-    	return bitmap;
-    }
-    
     /**
      * Takes the cursor and returns the URI for the cursor's current row.
      */
@@ -140,28 +126,12 @@ public class ScalingImageAdapter extends CursorAdapter {
         	selectedImages.put(imageId, true);
         }
         
+        // Decode off of the UI thread. The modified date versions the
+        // cached thumbnail since image ids may be reused after a delete
         Uri thumbUri = getImageThumbnailUriFromCursorRow(cursor);
-        view.setImageURI(thumbUri);
-        
-        //Log.i(TAG, "bindView: " + thumbUri);
-        /*new Thread() { 
-        	private Context mContext;
-        	private Uri imageUri;
-        	private SelectableImageView view;
-        	
-        	void initAndStart(Uri imageUri, SelectableImageView view, Context context) {
-        		this.imageUri = imageUri;
-        		this.view = view;
-        		this.mContext = context;
-        		start();
-        	}
-        	
-        	public void run() {
-        		try {
-        			view.setImageBitmap(bitmapForImageUri(mContext, imageUri));
-        		} catch(IOException e) {
-        		}
-        	}
-        }.initAndStart(imageUri, view, context);*/
+        int modified = cursor.getColumnIndex(ImageSQLFormat.MODIFIED_DATE);
+        ImageLoader.getInstance(context).load(view, thumbUri,
+        		(modified != -1)? cursor.getString(modified): null, 
+        		IMAGE_WIDTH, IMAGE_HEIGHT, 0);
     }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import org.json.JSONTokener;
 
 import org.sana.R;
 import org.sana.android.app.Locales;
+import org.sana.android.app.UploadQueue;
 import org.sana.android.content.Intents;
 import org.sana.android.content.Uris;
 import org.sana.android.db.EventDAO;
@@ -409,9 +410,12 @@ public class EncounterList extends BaseActivity implements
 				case 5:
 					Locales.updateLocale(this, getString(R.string.force_locale));
 					int queueStatus = cur.getInt(cur.getColumnIndex(Encounters.Contract.UPLOAD_STATUS));
-					int queuePosition = cur.getInt(cur.getColumnIndex(Encounters.Contract.UPLOAD_QUEUE));
+					long queuePosition = cur.getLong(cur.getColumnIndex(Encounters.Contract.UPLOAD_QUEUE));
+					// stored positions are only ordered so get the rank
+					int queueIndex = UploadQueue.getInstance(this)
+							.indexOfPosition(queuePosition);
 					String message = getUploadStatus2(queueStatus,
-							queuePosition + 1);
+							queueIndex + 1);
 					//Log.d(TAG, "Setting upload status to : " + message);
 					((TextView)v).setText(message);
 					break;
@@ -31,9 +31,12 @@ import android.os.Message;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.content.LocalBroadcastManager;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.EditText;
 import android.widget.Toast;
 
 /** Activity for creating new and display existing patients. The resulting
@@ -75,6 +78,22 @@ public class PatientsList extends FragmentActivity implements
         super.onCreate(savedInstanceState);
     	Locales.updateLocale(this, getString(R.string.force_locale));
         setContentView(R.layout.patient_list_activity);
+        EditText search = (EditText) findViewById(R.id.search);
+        search.addTextChangedListener(new TextWatcher(){
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count,
+                    int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before,
+                    int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if(mFragmentPatientList != null)
+                    mFragmentPatientList.setSearch(s.toString());
+            }
+        });
     }
 
     /** {@inheritDoc} */
@@ -0,0 +1,151 @@
+package org.sana.android.db;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Append only log of the answers changed while an encounter is in progress.
+ * Each save appends a single line holding a JSON object of the answers which
+ * changed so that page transitions do not need to rewrite the full encounter
+ * state. The log is replayed over the state column when an encounter is
+ * restored and deleted once the full state has been written back to the
+ * encounter.
+ *
+ * @author Sana Development
+ *
+ */
+public class AnswerLog {
+	public static final String TAG = AnswerLog.class.getSimpleName();
+
+	static final String DIRECTORY = "answers";
+
+	/**
+	 * Appends a set of changed answers to the log of an encounter.
+	 *
+	 * @param context The application context.
+	 * @param encounter The encounter UUID.
+	 * @param answers The changed answers mapped to their element ids.
+	 * @return true if the answers were written.
+	 */
+	public static boolean append(Context context, String encounter,
+			Map<String,String> answers)
+	{
+		if(TextUtils.isEmpty(encounter))
+			return false;
+		if(answers.isEmpty())
+			return true;
+		Writer out = null;
+		try {
+			out = new OutputStreamWriter(new FileOutputStream(
+					getFile(context, encounter), true), "UTF-8");
+			out.write(new JSONObject(answers).toString());
+			out.write('\n');
+			out.close();
+			out = null;
+			return true;
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to append answers for " + encounter + ": "
+					+ e.getMessage());
+			return false;
+		} finally {
+			if(out != null) try{ out.close(); } catch (IOException e){}
+		}
+	}
+
+	/**
+	 * Applies the logged answers of an encounter, in the order they were
+	 * written, to a map of previously saved answers. An answer logged as
+	 * null is removed from the map so that the element keeps its default. A
+	 * truncated last line from an interrupted write is ignored.
+	 *
+	 * @param context The application context.
+	 * @param encounter The encounter UUID.
+	 * @param answers The saved answers which will be updated.
+	 * @return The number of log entries applied.
+	 */
+	public static int replay(Context context, String encounter,
+			Map<String,String> answers)
+	{
+		if(TextUtils.isEmpty(encounter))
+			return 0;
+		File file = getFile(context, encounter);
+		if(!file.exists())
+			return 0;
+		int count = 0;
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			String line = null;
+			while((line = in.readLine()) != null){
+				if(TextUtils.isEmpty(line))
+					continue;
+				JSONObject entry = new JSONObject(line);
+				Iterator<?> keys = entry.keys();
+				while(keys.hasNext()){
+					String key = (String) keys.next();
+					// a null answer is logged as JSON null, not "null"
+					if(entry.isNull(key))
+						answers.remove(key);
+					else
+						answers.put(key, entry.getString(key));
+				}
+				count++;
+			}
+		} catch (JSONException e) {
+			Log.w(TAG, "Ignoring incomplete entry in " + file);
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to read answers for " + encounter + ": "
+					+ e.getMessage());
+		} finally {
+			if(in != null) try{ in.close(); } catch (IOException e){}
+		}
+		return count;
+	}
+
+	/**
+	 * Whether there are logged answers for an encounter.
+	 *
+	 * @param context The application context.
+	 * @param encounter The encounter UUID.
+	 * @return true if the log exists.
+	 */
+	public static boolean exists(Context context, String encounter){
+		return !TextUtils.isEmpty(encounter)
+				&& getFile(context, encounter).exists();
+	}
+
+	/**
+	 * Removes the log of an encounter. Should be called after the full
+	 * encounter state has been written.
+	 *
+	 * @param context The application context.
+	 * @param encounter The encounter UUID.
+	 */
+	public static void delete(Context context, String encounter){
+		if(TextUtils.isEmpty(encounter))
+			return;
+		getFile(context, encounter).delete();
+	}
+
+	static File getFile(Context context, String encounter){
+		File dir = new File(context.getFilesDir(), DIRECTORY);
+		dir.mkdirs();
+		return new File(dir, encounter.replaceAll("[^A-Za-z0-9._-]", "_"));
+	}
+}
@@ -4,14 +4,10 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 
-import org.sana.android.provider.Events;
-import org.sana.android.provider.Events.Contract;
 import org.sana.android.provider.Events.EventType;
 
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.util.Log;
 
 /**
  * Utility class for interacting with the EventProvider.
@@ -23,7 +19,9 @@ public class EventDAO {
 	private static final String TAG = EventDAO.class.getName();
 
 	/**
-	 * Inserts a new event.
+	 * Inserts a new event. The event is queued with the
+	 * {@link EventRecorder} and written in the background so this may be
+	 * called from the main thread.
 	 * 
 	 * @param c the current context.
 	 * @param type the event type.
@@ -35,21 +33,8 @@ public class EventDAO {
 	public static void registerEvent(Context c, EventType type, String value, 
 			String encounterRef, String patientRef, String userRef) 
 	{
-		Log.i(TAG, "Event " + type + " Value: '" + value + "' Encounter: '" 
-				+ encounterRef + "' Patient: '" + patientRef + "' User: '" 
-				+ userRef + "'");
-		ContentValues cv = new ContentValues();
-		cv.put(Contract.EVENT_TYPE, type.toString());
-		cv.put(Contract.EVENT_VALUE, value);
-		
-		if (encounterRef != null)
-			cv.put(Contract.ENCOUNTER, encounterRef);
-		if (patientRef != null)
-			cv.put(Contract.SUBJECT, patientRef);
-		if (userRef != null)
-			cv.put(Contract.OBSERVER, userRef);
-		
-		c.getContentResolver().insert(Events.CONTENT_URI, cv);
+		EventRecorder.getInstance(c).record(type, value, encounterRef,
+				patientRef, userRef);
 	}
 	
 	/**
@@ -90,7 +75,8 @@ public class EventDAO {
 	}
 	
 	/**
-	 * Logs and registers an exception.
+	 * Logs and registers an exception. Events waiting to be written are
+	 * flushed since the process may not survive long.
 	 * 
 	 * @param c the current context.
 	 * @param e  the exception.
@@ -108,5 +94,6 @@ public class EventDAO {
 			et = EventType.OUT_OF_MEMORY;
 		}
 		registerEvent(c, et, stackTrace, encounterRef, patientRef, userRef);
+		EventRecorder.getInstance(c).flush();
 	}
 }
@@ -0,0 +1,227 @@
+package org.sana.android.db;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.sana.android.provider.Events;
+import org.sana.android.provider.Events.Contract;
+import org.sana.android.provider.Events.EventType;
+import org.sana.api.IModel;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Records events without writing to the database on the caller's thread.
+ * Events are appended to a fixed size ring and written by a single
+ * background thread which inserts everything waiting, up to
+ * {@link #BATCH_SIZE} rows at a time, with one bulk insert so that each batch
+ * is committed in a single transaction.
+ * <br/>
+ * Appending does not lock. A caller claims a slot by advancing the tail of
+ * the ring and then publishes the event into it; the writer is the only
+ * thread which advances the head. When the ring is full the new event is
+ * dropped and counted rather than blocking the caller, and the number dropped
+ * is logged with the next batch. The creation time of an event is taken when
+ * it is recorded, not when it is written.
+ *
+ * @author Sana Development
+ *
+ */
+public class EventRecorder {
+	public static final String TAG = EventRecorder.class.getSimpleName();
+
+	/** The number of events held before new events are dropped. */
+	public static final int CAPACITY = 1024;
+
+	/** The largest number of events written in one transaction. */
+	public static final int BATCH_SIZE = 128;
+
+	/** How long, in milliseconds, an event may wait before it is written. */
+	public static final long FLUSH_DELAY = 2000;
+
+	static final int MASK = CAPACITY - 1;
+
+	/** An event waiting to be written. */
+	static final class Event {
+		final EventType type;
+		final String value;
+		final String encounter;
+		final String subject;
+		final String observer;
+		final long time;
+
+		Event(EventType type, String value, String encounter, String subject,
+				String observer, long time)
+		{
+			this.type = type;
+			this.value = value;
+			this.encounter = encounter;
+			this.subject = subject;
+			this.observer = observer;
+			this.time = time;
+		}
+	}
+
+	private static EventRecorder sInstance = null;
+
+	/**
+	 * Returns the shared recorder.
+	 *
+	 * @param context the current context
+	 */
+	public static synchronized EventRecorder getInstance(Context context){
+		if(sInstance == null)
+			sInstance = new EventRecorder(context.getApplicationContext()
+					.getContentResolver());
+		return sInstance;
+	}
+
+	private final ContentResolver mResolver;
+	private final Handler mHandler;
+	private final AtomicReferenceArray<Event> mRing =
+			new AtomicReferenceArray<Event>(CAPACITY);
+	private final AtomicLong mTail = new AtomicLong();
+	// only written by the writer thread
+	private volatile long mHead = 0;
+	private final AtomicBoolean mScheduled = new AtomicBoolean();
+	private final AtomicInteger mDropped = new AtomicInteger();
+
+	private final Runnable mFlush = new Runnable(){
+		@Override
+		public void run() {
+			mScheduled.set(false);
+			write();
+		}
+	};
+
+	EventRecorder(ContentResolver resolver){
+		mResolver = resolver;
+		HandlerThread thread = new HandlerThread(TAG,
+				Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		mHandler = new Handler(thread.getLooper());
+	}
+
+	/**
+	 * Queues an event to be written.
+	 *
+	 * @param type the event type.
+	 * @param value the event value
+	 * @param encounterRef an encounter id or null.
+	 * @param patientRef a subject id or null.
+	 * @param userRef the user or null.
+	 * @return false if the event was dropped because the ring was full
+	 */
+	public boolean record(EventType type, String value, String encounterRef,
+			String patientRef, String userRef)
+	{
+		Event event = new Event(type, value, encounterRef, patientRef,
+				userRef, System.currentTimeMillis());
+		long tail;
+		do {
+			tail = mTail.get();
+			if(tail - mHead >= CAPACITY){
+				mDropped.incrementAndGet();
+				return false;
+			}
+		} while(!mTail.compareAndSet(tail, tail + 1));
+		mRing.set((int) (tail & MASK), event);
+
+		if(tail + 1 - mHead >= BATCH_SIZE)
+			mHandler.post(mFlush);
+		else if(mScheduled.compareAndSet(false, true))
+			mHandler.postDelayed(mFlush, FLUSH_DELAY);
+		return true;
+	}
+
+	/**
+	 * Requests that the events waiting be written now rather than after
+	 * {@link #FLUSH_DELAY}. Does not wait for the write.
+	 */
+	public void flush(){
+		mHandler.postAtFrontOfQueue(mFlush);
+	}
+
+	/**
+	 * Returns the number of events waiting to be written.
+	 */
+	public int getPendingCount(){
+		return (int) (mTail.get() - mHead);
+	}
+
+	// Runs on the writer thread
+	private void write(){
+		SimpleDateFormat format = new SimpleDateFormat(IModel.DATE_FORMAT,
+				Locale.US);
+		List<ContentValues> batch = new ArrayList<ContentValues>(BATCH_SIZE);
+		boolean incomplete = false;
+		while(!incomplete){
+			batch.clear();
+			long head = mHead;
+			while(batch.size() < BATCH_SIZE && head < mTail.get()){
+				int index = (int) (head & MASK);
+				Event event = mRing.get(index);
+				// claimed but not yet published
+				if(event == null){
+					incomplete = true;
+					break;
+				}
+				mRing.set(index, null);
+				mHead = ++head;
+				batch.add(toValues(event, format));
+			}
+			if(batch.isEmpty())
+				break;
+			insert(batch);
+		}
+		int dropped = mDropped.getAndSet(0);
+		if(dropped > 0)
+			Log.w(TAG, "Dropped " + dropped + " events while the buffer was full");
+		if(incomplete && mScheduled.compareAndSet(false, true))
+			mHandler.postDelayed(mFlush, FLUSH_DELAY);
+	}
+
+	private void insert(List<ContentValues> batch){
+		try {
+			int count = mResolver.bulkInsert(Events.CONTENT_URI,
+					batch.toArray(new ContentValues[batch.size()]));
+			Log.d(TAG, "Wrote " + count + " of " + batch.size() + " events");
+		} catch (Exception e) {
+			Log.e(TAG, "Unable to write " + batch.size() + " events: "
+					+ e.toString());
+		}
+	}
+
+	static ContentValues toValues(Event event, SimpleDateFormat format){
+		if(Log.isLoggable(TAG, Log.VERBOSE))
+			Log.v(TAG, "Event " + event.type + " Value: '" + event.value
+					+ "' Encounter: '" + event.encounter + "' Patient: '"
+					+ event.subject + "' User: '" + event.observer + "'");
+		ContentValues cv = new ContentValues();
+		String time = format.format(new Date(event.time));
+		cv.put(Contract.CREATED, time);
+		cv.put(Contract.MODIFIED, time);
+		cv.put(Contract.EVENT_TYPE, event.type.toString());
+		cv.put(Contract.EVENT_VALUE, event.value);
+		if (event.encounter != null)
+			cv.put(Contract.ENCOUNTER, event.encounter);
+		if (event.subject != null)
+			cv.put(Contract.SUBJECT, event.subject);
+		if (event.observer != null)
+			cv.put(Contract.OBSERVER, event.observer);
+		return cv;
+	}
+}
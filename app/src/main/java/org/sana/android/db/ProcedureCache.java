@@ -0,0 +1,224 @@
+package org.sana.android.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.sana.android.procedure.Procedure;
+import org.sana.android.procedure.ProcedureDefinition;
+import org.sana.android.procedure.ProcedureParseException;
+import org.sana.android.provider.Procedures;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Cache of compiled procedure definitions keyed by the procedure uuid and
+ * version. Recently used definitions are held in memory and every compiled
+ * definition is also written to the application cache directory so that the
+ * procedure xml only needs to be parsed once per version. Entries are
+ * invalidated when the modified time of the procedure row changes.
+ *
+ * @author Sana Development
+ *
+ */
+public class ProcedureCache {
+	public static final String TAG = ProcedureCache.class.getSimpleName();
+
+	/** Number of compiled definitions held in memory. */
+	public static final int MEMORY_CAPACITY = 8;
+
+	static final String DIRECTORY = "procedures";
+
+	static final String[] PROJECTION = new String[]{
+		Procedures.Contract.UUID,
+		Procedures.Contract.VERSION,
+		Procedures.Contract.MODIFIED };
+
+	private static final Map<String, Entry> sEntries =
+			new LinkedHashMap<String, Entry>(MEMORY_CAPACITY, 0.75f, true){
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+			return size() > MEMORY_CAPACITY;
+		}
+	};
+
+	static final class Entry{
+		final String modified;
+		final ProcedureDefinition definition;
+
+		Entry(String modified, ProcedureDefinition definition){
+			this.modified = modified;
+			this.definition = definition;
+		}
+	}
+
+	/**
+	 * Returns a new Procedure instance for a row in the procedures table. The
+	 * xml is only parsed if there is no compiled definition for the current
+	 * version of the procedure.
+	 *
+	 * @param context the current Context
+	 * @param procedure the Uri of the Procedure
+	 * @return A new, runnable Procedure
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws ProcedureParseException
+	 */
+	public static Procedure getProcedure(Context context, Uri procedure) throws
+		IOException, ParserConfigurationException, SAXException,
+		ProcedureParseException
+	{
+		return getDefinition(context, procedure).newInstance();
+	}
+
+	/**
+	 * Returns the compiled definition for a row in the procedures table,
+	 * compiling and caching it if necessary.
+	 *
+	 * @param context the current Context
+	 * @param procedure the Uri of the Procedure
+	 * @return The compiled definition
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws ProcedureParseException
+	 */
+	public static ProcedureDefinition getDefinition(Context context,
+			Uri procedure) throws IOException, ParserConfigurationException,
+			SAXException, ProcedureParseException
+	{
+		String uuid = null;
+		String version = null;
+		String modified = null;
+		Cursor c = null;
+		try{
+			c = context.getContentResolver().query(procedure, PROJECTION,
+					null, null, null);
+			if(c != null && c.moveToFirst()){
+				uuid = c.getString(0);
+				version = c.getString(1);
+				modified = c.getString(2);
+			}
+		} finally {
+			if(c != null) c.close();
+		}
+		// Nothing to key on so always compile
+		if(TextUtils.isEmpty(uuid))
+			return compile(context, procedure);
+
+		String key = toKey(uuid, version);
+		synchronized(sEntries){
+			Entry entry = sEntries.get(key);
+			if(entry != null && TextUtils.equals(entry.modified, modified))
+				return entry.definition;
+		}
+		File file = new File(getCacheDir(context), key);
+		Entry entry = read(file);
+		if(entry == null || !TextUtils.equals(entry.modified, modified)){
+			entry = new Entry(modified, compile(context, procedure));
+			write(file, entry);
+		}
+		synchronized(sEntries){
+			sEntries.put(key, entry);
+		}
+		return entry.definition;
+	}
+
+	/**
+	 * Removes all compiled definitions from memory and disk.
+	 *
+	 * @param context the current Context
+	 */
+	public static void clear(Context context){
+		synchronized(sEntries){
+			sEntries.clear();
+		}
+		File[] files = getCacheDir(context).listFiles();
+		if(files != null){
+			for(File file:files)
+				file.delete();
+		}
+	}
+
+	static ProcedureDefinition compile(Context context, Uri procedure) throws
+		IOException, ParserConfigurationException, SAXException,
+		ProcedureParseException
+	{
+		long processingTime = System.currentTimeMillis();
+		String xml = ProcedureDAO.getXMLForProcedure(context, procedure);
+		ProcedureDefinition definition = Procedure.compile(
+				new InputSource(new StringReader(xml)));
+		processingTime = System.currentTimeMillis() - processingTime;
+		Log.i(TAG, "Compiling " + procedure + " took " + processingTime
+				+ " milliseconds.");
+		return definition;
+	}
+
+	static String toKey(String uuid, String version){
+		String key = uuid + "_" + ((version != null)? version: "");
+		return key.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+
+	static File getCacheDir(Context context){
+		File dir = new File(context.getCacheDir(), DIRECTORY);
+		dir.mkdirs();
+		return dir;
+	}
+
+	static Entry read(File file){
+		if(!file.exists())
+			return null;
+		DataInputStream in = null;
+		try{
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			String modified = (in.readBoolean())? in.readUTF(): null;
+			return new Entry(modified, ProcedureDefinition.readFrom(in));
+		} catch (IOException e){
+			Log.w(TAG, "Discarding unreadable definition: " + file);
+			file.delete();
+			return null;
+		} finally {
+			if(in != null) try{ in.close(); } catch (IOException e){}
+		}
+	}
+
+	static void write(File file, Entry entry){
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			out.writeBoolean(entry.modified != null);
+			if(entry.modified != null)
+				out.writeUTF(entry.modified);
+			entry.definition.writeTo(out);
+			out.close();
+			out = null;
+			if(!tmp.renameTo(file))
+				tmp.delete();
+		} catch (IOException e){
+			Log.w(TAG, "Unable to write definition: " + e.getMessage());
+			tmp.delete();
+		} finally {
+			if(out != null) try{ out.close(); } catch (IOException e){}
+		}
+	}
+}
@@ -64,6 +64,23 @@ public class DatabaseOpenHelperImpl extends DatabaseOpenHelper{
 		super(context, name, version);
 		
 	}
+	/**
+	 * Returns the helpers for each of the model tables.
+	 */
+	protected TableHelper<?>[] getTableHelpers(){
+		return new TableHelper<?>[]{
+				ConceptsHelper.getInstance(),
+				EncountersHelper.getInstance(),
+				EncounterTasksHelper.getInstance(),
+				EventsHelper.getInstance(),
+				InstructionsHelper.getInstance(),
+				NotificationsHelper.getInstance(),
+				ObservationsHelper.getInstance(),
+				ObserversHelper.getInstance(),
+				ProceduresHelper.getInstance(),
+				SubjectsHelper.getInstance() };
+	}
+	
 	/* (non-Javadoc)
 	 * @see android.database.sqlite.SQLiteOpenHelper#onCreate(android.database.sqlite.SQLiteDatabase)
 	 */
@@ -86,6 +103,10 @@ public class DatabaseOpenHelperImpl extends DatabaseOpenHelper{
 		for(String sql:create){
 			db.execSQL(sql);
 		}
+		createIndexes(db, getTableHelpers());
+		for(String sql:SubjectsHelper.getInstance().onCreateSearch()){
+			db.execSQL(sql);
+		}
         // Deprecated 
         ImageProvider.onCreateDatabase(db);
         SoundProvider.onCreateDatabase(db);
@@ -100,30 +121,25 @@ public class DatabaseOpenHelperImpl extends DatabaseOpenHelper{
 		Log.i(TAG, String.format("onUpgrade(int,int) -> (%d, %d)",oldVersion, newVersion));
 		// No bump in version - return quietly
 		if(newVersion > oldVersion){
-			TableHelper<?>[] helpers = new TableHelper<?>[]{
-				ConceptsHelper.getInstance(),
-				EncountersHelper.getInstance(),
-				EncounterTasksHelper.getInstance(),
-				EventsHelper.getInstance(),
-				InstructionsHelper.getInstance(),
-				NotificationsHelper.getInstance(),
-				ObservationsHelper.getInstance(),
-				ObserversHelper.getInstance(),
-				ProceduresHelper.getInstance(),
-				SubjectsHelper.getInstance() };
-
+			TableHelper<?>[] helpers = getTableHelpers();
 			
 			for(TableHelper<?> helper:helpers){
-				if(oldVersion <= 2){
-					db.execSQL("DROP TABLE " + helper.getTable() + " IF EXISTS;");
+				if(oldVersion < 2){
+					db.execSQL("DROP TABLE IF EXISTS " + helper.getTable() + ";");
 					db.execSQL(helper.onCreate());
-				} else {
-					String sql = helper.onUpgrade(oldVersion, newVersion);
-					Log.i(TAG, String.format("onUpgrade(int,int)", ((sql == null)?"NULL":sql)));
-					if(sql != null)
-						db.execSQL(helper.onUpgrade(oldVersion, newVersion));
+				}
+				String[] statements = helper.onUpgrade(oldVersion, newVersion);
+				if(statements == null)
+					continue;
+				for(String sql:statements){
+					Log.i(TAG, "onUpgrade(int,int) executing: " + sql);
+					db.execSQL(sql);
 				}
 			}
+			// Indexes were added in version 3, the list sort indexes in
+			// version 5 and the procedure uuid index made non unique in
+			// version 6. Existing indexes are skipped.
+			createIndexes(db, helpers);
 		}
 	}
 }
@@ -24,10 +24,12 @@ import org.sana.android.app.Locales;
 import org.sana.android.app.State.Keys;
 import org.sana.android.content.Intents;
 import org.sana.android.content.Uris;
+import org.sana.android.db.AnswerLog;
+import org.sana.android.db.EncounterDAO;
 import org.sana.android.db.EventDAO;
 import org.sana.android.db.ModelWrapper;
 import org.sana.android.db.PatientInfo;
-import org.sana.android.db.ProcedureDAO;
+import org.sana.android.db.ProcedureCache;
 import org.sana.android.db.SanaDB.ImageSQLFormat;
 import org.sana.android.media.EducationResource.Audience;
 import org.sana.android.net.MDSInterface;
@@ -724,8 +726,7 @@ public abstract class BaseRunnerFragment extends BaseFragment implements View.On
                 	uuid = ModelWrapper.getUuid(procedure,getActivity().getContentResolver());
                 	procedure = Uris.withAppendedUuid(Procedures.CONTENT_URI, uuid);
                 }
-                Log.i(TAG, "preparing to load xml for uri = " + procedure); 
-                String procedureXml = ProcedureDAO.getXMLForProcedure(getActivity(), procedure);
+                Log.i(TAG, "preparing to load procedure for uri = " + procedure); 
 
                 // Record that we are starting a new encounter
                 logEvent(EventType.ENCOUNTER_LOAD_NEW_ENCOUNTER, procedure.toString());
@@ -752,7 +753,7 @@ public abstract class BaseRunnerFragment extends BaseFragment implements View.On
                 Log.w(TAG, "current Encounter: " + uEncounter);
                 Procedure p = null;
                 try {
-                    p = Procedure.fromXMLString(procedureXml);
+                    p = ProcedureCache.getProcedure(getActivity(), procedure);
                 } catch (IOException e) {
                     Log.e(TAG, "Error loading procedure from XML: " + e.toString());
                     e.printStackTrace();
@@ -851,16 +852,18 @@ public abstract class BaseRunnerFragment extends BaseFragment implements View.On
                     Log.e(TAG, "onCreate() -- JSONException " + e.toString());
                     e.printStackTrace();
                 }
+                // Apply any answers saved since the state was last written
+                AnswerLog.replay(getActivity(), EncounterDAO.getEncounterGuid(
+                		getActivity(), uEncounter), answersMap);
                 Uri procedureUri;
                 if(UUIDUtil.isValid(procedureId)){
                 	procedureUri = Uris.withAppendedUuid(Procedures.CONTENT_URI, procedureId);
                 } else
                 	procedureUri = ContentUris.withAppendedId(Procedures.CONTENT_URI, Long.parseLong(procedureId));
-                Log.i(TAG, "preparing to load xml for uri = " + procedureUri); 
-                String procedureXml = ProcedureDAO.getXMLForProcedure(getActivity(), procedureUri);
+                Log.i(TAG, "preparing to load procedure for uri = " + procedureUri); 
                 Procedure procedure = null;
                 try {
-                    procedure = Procedure.fromXMLString(procedureXml);
+                    procedure = ProcedureCache.getProcedure(getActivity(), procedureUri);
                     procedure.setInstanceUri(uEncounter);
                     procedure.restoreAnswers(answersMap);
                 } catch (IOException e) {
@@ -908,6 +911,7 @@ public abstract class BaseRunnerFragment extends BaseFragment implements View.On
                 logEvent(EventType.ENCOUNTER_LOAD_FINISHED, "");
                 if (mProcedure != null){
                 	mProcedure.setInstanceUri(uEncounter);
+                	mProcedure.markAnswersSaved();
                     createView();
                 }
                 else
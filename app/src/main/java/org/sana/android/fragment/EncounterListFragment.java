@@ -10,17 +10,18 @@ import java.util.Locale;
 
 import org.sana.R;
 import org.sana.android.app.Locales;
+import org.sana.android.app.UploadQueue;
 import org.sana.android.content.DispatchResponseReceiver;
 import org.sana.android.content.Intents;
+import org.sana.android.content.PagedCursorLoader;
 import org.sana.android.content.Uris;
 import org.sana.android.content.core.PatientWrapper;
+import org.sana.android.db.PagedCursor.Keyset;
 import org.sana.android.db.SanaDB.ImageSQLFormat;
 import org.sana.android.db.ModelWrapper;
+import org.sana.android.db.impl.EncountersHelper;
 import org.sana.android.provider.Encounters;
 import org.sana.android.provider.Observations;
-import org.sana.android.provider.Patients;
-import org.sana.android.provider.Procedures;
-import org.sana.android.provider.Subjects;
 import org.sana.android.service.impl.DispatchService;
 import org.sana.android.service.QueueManager;
 import org.sana.android.util.Logf;
@@ -41,7 +42,6 @@ import android.preference.PreferenceManager;
 import android.support.v4.app.ListFragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.util.LongSparseArray;
@@ -50,6 +50,7 @@ import android.support.v4.widget.CursorAdapter;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -80,7 +81,11 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
             Encounters.Contract.UPLOAD_STATUS,
             Encounters.Contract.UPLOAD_QUEUE,
             Encounters.Contract.CREATED,
-            Encounters.Contract.FINISHED };
+            Encounters.Contract.FINISHED,
+            Encounters.Summary.PROCEDURE_TITLE,
+            Encounters.Summary.SUBJECT_GIVEN_NAME,
+            Encounters.Summary.SUBJECT_FAMILY_NAME,
+            Encounters.Summary.SUBJECT_SYSTEM_ID };
 
     // Once a day 86400000
     long delta = 1000;
@@ -112,8 +117,9 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
                 getString(R.string.display_date_format));
         // signal the dispatcher to sync
         mUri = getActivity().getIntent().getData();
-        if (mUri == null) {
-            mUri = Encounters.CONTENT_URI;
+        if (mUri == null || mUri.equals(Encounters.CONTENT_URI)) {
+            // read the procedure and subject with each encounter
+            mUri = Encounters.SUMMARY_URI;
         }
         mAdapter = new EncounterCursorAdapter(getActivity(), null, 0);
         setListAdapter(mAdapter);
@@ -137,12 +143,17 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
         Log.d(TAG, "onCreateLoader() ");
-        CursorLoader loader = new CursorLoader(getActivity(),
+        String table = EncountersHelper.getInstance().getTable();
+        PagedCursorLoader loader = new PagedCursorLoader(getActivity(),
                 mUri,
                 mProjection,
                 null,
                 null,
-                Encounters.Contract.CREATED + " DESC");
+                new Keyset(Encounters.Contract.CREATED,
+                        table + "." + Encounters.Contract.CREATED,
+                        Encounters.Contract._ID,
+                        table + "." + Encounters.Contract._ID,
+                        true));
         return loader;
     }
 
@@ -222,14 +233,12 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
     public class EncounterCursorAdapter extends CursorAdapter{
 
         private final LayoutInflater mInflater;
-        private ArrayList<Boolean> itemChecked = new ArrayList<Boolean>();
+        // sparse so that rows which have never been shown cost nothing
+        private SparseBooleanArray itemChecked = new SparseBooleanArray();
 
         public EncounterCursorAdapter(Context context, Cursor c) {
             super(context.getApplicationContext(),c,false);
             mInflater = LayoutInflater.from(context);
-            for (int i = 0; i < this.getCount(); i++) {
-                itemChecked.add(i, false); // initializes all items value with false
-            }
         }
 
         public EncounterCursorAdapter(Context context) {
@@ -259,21 +268,14 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
         private void updateChecked(Cursor newCursor){
             Log.i(TAG, "updateChecked()");
             int sizeOf = (newCursor != null)? newCursor.getCount(): 0;
-            int sizeOld = itemChecked.size();
-            ArrayList<Boolean> checked = new ArrayList<Boolean>(sizeOf);
-            for(int i = 0; i< sizeOf; i++){
-                checked.add(false);
-            }
-            int index = 0;
-            Log.d(TAG, "....sizeOld: " + sizeOld);
+            Log.d(TAG, "....sizeOld: " + itemChecked.size());
             Log.d(TAG, "....sizeOf: " + sizeOf);
-            while(index < sizeOf){
-                if(sizeOld > 0 && index < sizeOld){
-                    checked.set(index, itemChecked.get(index));
-                } else {
-                    checked.set(index, false);
-                }
-                index++;
+            // drop the state of rows past the end of the new cursor
+            SparseBooleanArray checked = new SparseBooleanArray();
+            for(int i = 0; i < itemChecked.size(); i++){
+                int key = itemChecked.keyAt(i);
+                if(key < sizeOf && itemChecked.valueAt(i))
+                    checked.put(key, true);
             }
             itemChecked = checked;
         }
@@ -293,8 +295,15 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
             final String procedureUuid = cursor.getString(2);
             final String date = cursor.getString(7);
             final int status = cursor.getInt(5);
-            final int queuePosition = cursor.getInt(6);
+            // stored positions are only ordered so get the rank
+            final int queueIndex = UploadQueue.getInstance(context)
+                    .indexOfPosition(cursor.getLong(6));
+            final int queuePosition = (queueIndex < 0)? -1: queueIndex + 1;
             final String patientUUid = cursor.getString(3);
+            final String title = cursor.getString(9);
+            final String givenName = cursor.getString(10);
+            final String familyName = cursor.getString(11);
+            final String systemId = cursor.getString(12);
             // MAke sure we bind the text views to something before
             // anything else happens
             ((TextView) view.findViewById(R.id.procedure)).setText(procedureUuid);
@@ -306,15 +315,14 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
             //view.setTag(0, uuid);
             //view.setTag(1,state);
 
-            // TODO move this to a background thread?
             // Sets the procedure title string
-            setProcedure(context,view,procedureUuid);
+            setProcedure(view,title);
             // Sets the date string
             setDate(view, date);
             // Sets the status string
             setUploadStatus(view,status,queuePosition,finished);
             // Sets the patient name and id string
-            setPatient(context,view,patientUUid);
+            setPatient(view,givenName,familyName,systemId);
             Log.d(TAG, "Putting data into position: " + position);
             mData.put(position,data);
         }
@@ -334,16 +342,13 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
                     // Need the size check
                     CheckBox cb = (CheckBox) v.findViewById(R.id.checkbox);
                     if (cb.isChecked()) {
-                        if(itemChecked.size() > 0)
-                            itemChecked.set(pos, true);
-                    } else if (!cb.isChecked()) {
-                        if(itemChecked.size() > 0)
-                            itemChecked.set(pos, false);
+                        itemChecked.put(pos, true);
+                    } else {
+                        itemChecked.delete(pos);
                     }
                 }
             });
-            if(itemChecked.size() > 0)
-                cBox.setChecked(itemChecked.get(pos));
+            cBox.setChecked(itemChecked.get(pos, false));
             return super.getView(pos, inView, parent);
         }
 
@@ -357,47 +362,18 @@ public class EncounterListFragment extends ListFragment implements LoaderCallbac
 
     }
 
-    public void setProcedure(Context context, View view, String uuid){
-        Log.i(TAG, "setProcedure() " + uuid);
+    public void setProcedure(View view, String title){
         TextView name = (TextView) view.findViewById(R.id.procedure);
-
-        String title = "null";
-        Cursor cur2 = null;
-        Uri procedure = Uri.parse(Procedures.CONTENT_URI.toString() + "/" + uuid);
-        try{
-            cur2 = getActivity().getContentResolver().query(procedure,
-                new String[] {
-                    Procedures.Contract._ID,
-                    Procedures.Contract.TITLE },
-                null, null, null);
-            cur2.moveToFirst();
-            title = cur2.getString(1);
-        } finally {
-            if(cur2 != null) cur2.close();
-        }
         name.setText((TextUtils.isEmpty(title)? "null": title));
     }
 
-    public void setPatient(Context context, View view, String uuid){
-        Log.i(TAG, "setPatient() " + uuid);
+    public void setPatient(View view, String givenName, String familyName,
+            String id)
+    {
         TextView name = (TextView) view.findViewById(R.id.subject);
-        Cursor c = null;
-        String familyName = null;
-        String givenName = null;
-        String displayName = null;
-        String id = null;
-        try{
-            c = ModelWrapper.getOneByUuid(Subjects.CONTENT_URI, context.getContentResolver(), uuid);
-            if(c != null && c.moveToFirst()){
-                familyName = c.getString(c.getColumnIndex(Patients.Contract.FAMILY_NAME));
-                givenName = c.getString(c.getColumnIndex(Patients.Contract.GIVEN_NAME));
-                id = c.getString(c.getColumnIndex(Patients.Contract.PATIENT_ID));
-                displayName = StringUtil.formatPatientDisplayName(givenName, familyName);
-            }
-        } finally {
-            if(c != null) c.close();
-            name.setText((TextUtils.isEmpty(displayName)? "null": displayName) + " "+ id);
-        }
+        String displayName = (givenName == null && familyName == null)? null:
+            StringUtil.formatPatientDisplayName(givenName, familyName);
+        name.setText((TextUtils.isEmpty(displayName)? "null": displayName) + " "+ id);
     }
 
     public void setDate(View view, String date){
@@ -10,9 +10,11 @@ import org.sana.R;
 import org.sana.android.app.Locales;
 import org.sana.android.content.DispatchResponseReceiver;
 import org.sana.android.content.Intents;
+import org.sana.android.content.PagedCursorLoader;
 import org.sana.android.content.Uris;
 import org.sana.android.content.core.PatientWrapper;
 import org.sana.android.db.ModelWrapper;
+import org.sana.android.db.PagedCursor.Keyset;
 import org.sana.android.provider.EncounterTasks;
 import org.sana.android.provider.Encounters;
 import org.sana.android.provider.Patients;
@@ -20,7 +22,7 @@ import org.sana.android.provider.Procedures;
 import org.sana.android.provider.EncounterTasks.Contract;
 import org.sana.android.provider.Subjects;
 import org.sana.android.service.impl.DispatchService;
-import org.sana.android.util.Bitmaps;
+import org.sana.android.media.ImageLoader;
 import org.sana.android.util.Logf;
 import org.sana.api.IModel;
 import org.sana.api.task.EncounterTask;
@@ -38,7 +40,6 @@ import android.preference.PreferenceManager;
 import android.support.v4.app.ListFragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.util.LongSparseArray;
@@ -176,12 +177,12 @@ public class EncounterTaskListFragment extends ListFragment implements LoaderCal
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
         Log.d(TAG, "onCreateLoader() ");
-        CursorLoader loader = new CursorLoader(getActivity(),
+        PagedCursorLoader loader = new PagedCursorLoader(getActivity(),
                 mUri,
                 mProjection,
                         getSelection(),
                 new String[]{ getObserver() , getSelectedStatus() },
-                Contract.DUE_DATE + " ASC");
+                new Keyset(Contract.DUE_DATE, false));
         return loader;
     }
 
@@ -488,13 +489,12 @@ public class EncounterTaskListFragment extends ListFragment implements LoaderCal
 
     public void setImage(ImageView view, String imagePath){
         // Set patient name and image
+        // Decoded off the UI thread and cached by file modified time
         if(imagePath != null){
-            try{
-                view.setImageBitmap(Bitmaps.decodeSampledBitmapFromFile(
-                    Uri.parse(imagePath).getPath(), 128,128));
-            } catch (Exception e){
-                Log.e(TAG+".mAdapter", "bindView(): " + e.getMessage());
-            }
+            ImageLoader.getInstance(view.getContext()).load(view,
+                    Uri.parse(imagePath), null, 128, 128, 0);
+        } else {
+            ImageLoader.getInstance(view.getContext()).cancel(view);
         }
     }
 
@@ -3,18 +3,19 @@ package org.sana.android.fragment;
 
 import java.io.FileNotFoundException;
 import java.text.ParseException;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 
 import org.sana.R;
 import org.sana.android.app.Locales;
 import org.sana.android.content.Intents;
+import org.sana.android.content.PagedCursorLoader;
 import org.sana.android.content.core.PatientWrapper;
+import org.sana.android.db.PagedCursor.Keyset;
+import org.sana.android.media.ImageLoader;
 import org.sana.android.provider.Patients;
 import org.sana.android.provider.Patients.Contract;
 import org.sana.android.provider.Subjects;
-import org.sana.android.util.Bitmaps;
 import org.sana.android.util.Dates;
 import org.sana.android.util.Logf;
 
@@ -33,12 +34,12 @@ import android.preference.PreferenceManager;
 import android.support.v4.app.ListFragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.widget.CursorAdapter;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -57,6 +58,9 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
     public static final String TAG = PatientListFragment.class.getSimpleName();
 
     private static final int PATIENTS_LOADER = 0;
+    
+    /** The delay after the search text changes before the list reloads. */
+    static final long SEARCH_DELAY = 300;
     static final String[] mProjection = new String[] {
 		Contract._ID, 
 		Contract.GIVEN_NAME, 
@@ -73,6 +77,18 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
     Handler mHandler; 
     private boolean doSync = false;
     private int delta =1000*60;
+    
+    // Current search text and the pending reload
+    private String mSearch = "";
+    private final Handler mSearchHandler = new Handler();
+    private final Runnable mSearchRunnable = new Runnable(){
+        @Override
+        public void run() {
+            if(isAdded())
+                getActivity().getSupportLoaderManager().restartLoader(
+                        PATIENTS_LOADER, null, PatientListFragment.this);
+        }
+    };
     //
     // Activity Methods
     //
@@ -107,6 +123,30 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
         getActivity().getSupportLoaderManager().initLoader(PATIENTS_LOADER, null, this);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void onDestroy() {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        super.onDestroy();
+    }
+
+    /**
+     * Filters the list to the patients whose given name, family name or 
+     * system id start with each word of the search text. The list is 
+     * reloaded once the text has not changed for {@link #SEARCH_DELAY} ms so
+     * that a query is not run for every key press.
+     * 
+     * @param search The search text or null to show every patient.
+     */
+    public void setSearch(String search){
+        search = (search == null)? "": search.trim();
+        if(search.equals(mSearch))
+            return;
+        mSearch = search;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DELAY);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void onListItemClick(ListView l, View v, int position, long id) {
@@ -123,10 +163,13 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
     	Log.d(TAG, "onCreateLoader() "); 
-        CursorLoader loader = new CursorLoader(getActivity(), 
-        		mUri,
+        Uri uri = (TextUtils.isEmpty(mSearch))? mUri: 
+                Uri.withAppendedPath(Patients.SEARCH_URI, mSearch);
+        // read in pages ordered as Patients.GIVEN_NAME_SORT_ORDER
+        PagedCursorLoader loader = new PagedCursorLoader(getActivity(), 
+        		uri,
         		mProjection,
-                null, null, Patients.GIVEN_NAME_SORT_ORDER);
+                null, null, new Keyset(Contract.GIVEN_NAME, false));
         return loader;
     }
 
@@ -195,7 +238,8 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
     public static class PatientCursorAdapter extends CursorAdapter implements SectionIndexer{
     	
     	//private final Activity context;
-        private int[] mRowStates = new int[0];
+        // section label states of the rows which have been bound
+        private SparseIntArray mRowStates = new SparseIntArray();
         private AlphabetIndexer mAlphaIndexer = null;
         private final LayoutInflater mInflater;
         
@@ -240,10 +284,9 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
             }
             //mWrapper = new PatientWrapper(c);
             //c.setNotificationUri(context.getContentResolver(), Patients.CONTENT_URI);
-            mRowStates = new int[c.getCount()];
-            Arrays.fill(mRowStates, STATE_UNKNOWN);
-            if(mRowStates.length > 0)
-                mRowStates[0] = STATE_LABELED;
+            mRowStates = new SparseIntArray();
+            if(c.getCount() > 0)
+                mRowStates.put(0, STATE_LABELED);
             mAlphaIndexer = new AlphabetIndexer(c, 
                     1, 
                     mAlphabet);
@@ -252,18 +295,17 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
         
         public Cursor index(Cursor cursor){
         	if(cursor != null){
-        		mRowStates = new int[cursor.getCount()];
+        		mRowStates = new SparseIntArray();
         		mAlphaIndexer = new AlphabetIndexer(cursor, 
         		    		1, 
         		    		mAlphabet);
         		mAlphaIndexer.setCursor(cursor);
-                Arrays.fill(mRowStates, STATE_UNKNOWN);
+                if(cursor.getCount() > 0)
+                    mRowStates.put(0, STATE_LABELED);
         	} else {
-        		mRowStates = new int[0];
+        		mRowStates = new SparseIntArray();
         		mAlphaIndexer = null;
         	}
-            if(mRowStates.length > 0)
-                mRowStates[0] = STATE_LABELED;
             return cursor;
         }
         
@@ -290,18 +332,10 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
             String imagePath = ((Cursor) this.getItem(position)).getString(5);
             
         	//image.setImageResource(R.drawable.unknown);
-            if(imagePath != null){
-            	try {
-                    image.setImageBitmap(Bitmaps.decodeSampledBitmapFromFile(
-                            Uri.parse(imagePath).getPath(), 128, 128));
-                } catch(java.io.FileNotFoundException e){
-                    Log.e(TAG, e.getMessage());
-                    image.setImageResource(R.drawable.ic_contact_picture);
-            	} catch (Exception e){
-                    Log.e(TAG, e.getMessage());
-                    image.setImageResource(R.drawable.ic_contact_picture);
-            	}
-            } 
+            // Decoded off the UI thread and cached by file modified time
+            ImageLoader.getInstance(context).load(image,
+                    (imagePath != null)? Uri.parse(imagePath): null, null,
+                    128, 128, R.drawable.ic_contact_picture);
             
             String familyName = ((Cursor) getItem(position)).getString(2);
             String givenName = ((Cursor) getItem(position)).getString(1);
@@ -341,7 +375,7 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
 
             Log.d(TAG, "...Checking if needs row separator label. " +
                     "position="+pos);
-            switch (mRowStates[pos]) {
+            switch (mRowStates.get(pos, STATE_UNKNOWN)) {
                 case STATE_LABELED:
                     needsSeparator = true;
                     break;
@@ -353,7 +387,7 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
                     // First cell always needs to be sectioned
                     if (pos == 0) {
                         needsSeparator = true;
-                        mRowStates[pos] = STATE_LABELED;
+                        mRowStates.put(pos, STATE_LABELED);
                     } else {
                         char prevSectionLabel = getSectionLabel(
                                 formatName(((Cursor) getItem(position -1))));
@@ -361,10 +395,10 @@ public class PatientListFragment extends ListFragment implements LoaderCallbacks
                                 "current section=" + currentSectionLabel);
                         if (prevSectionLabel != currentSectionLabel) {
                             needsSeparator = true;
-                            mRowStates[pos] = STATE_LABELED;
+                            mRowStates.put(pos, STATE_LABELED);
                         } else {
                             needsSeparator = false;
-                            mRowStates[pos] = STATE_UNLABELED;
+                            mRowStates.put(pos, STATE_UNLABELED);
                         }
                         ((Cursor) this.getItem(position)).moveToPosition(pos);
                     }
@@ -1,13 +1,16 @@
 package org.sana.android.fragment;
 
 import java.net.URISyntaxException;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 import org.json.JSONObject;
 import org.sana.android.activity.ProcedureRunner;
 import org.sana.android.content.Uris;
 import org.sana.android.content.core.ObservationWrapper;
+import org.sana.android.db.AnswerLog;
 import org.sana.android.db.EncounterDAO;
 import org.sana.android.db.EventDAO;
 import org.sana.android.db.ModelWrapper;
@@ -37,6 +40,10 @@ import android.util.Log;
  */
 public class ProcedureRunnerFragment extends BaseRunnerFragment {
 	public static final String TAG = ProcedureRunnerFragment.class.getSimpleName();
+	
+	// The answer last written to the observation of each element id
+	private final Map<String,String> mObserved = new HashMap<String,String>();
+	
     /** {@inheritDoc} */
     @Override
     protected void loadProcedure(Bundle instance) {
@@ -99,6 +106,8 @@ public class ProcedureRunnerFragment extends BaseRunnerFragment {
     @Override
     public void deleteCurrentProcedure() {
         try {
+            AnswerLog.delete(getActivity(), ModelWrapper.getUuid(uEncounter, 
+            		getActivity().getContentResolver()));
             getActivity().getContentResolver().delete(uEncounter, null, null);
             // Flush out any observations
             getActivity().getContentResolver().delete(Observations.CONTENT_URI,
@@ -138,6 +147,15 @@ public class ProcedureRunnerFragment extends BaseRunnerFragment {
 			// skip TEXT types
 			if (type.equals(ProcedureElement.ElementType.TEXT))
 				continue;
+			// skip observations which were written with the same answer
+			// unless there is an action to run
+			boolean runAction = !skipHidden
+					&& type.equals(ProcedureElement.ElementType.HIDDEN)
+					&& !TextUtils.isEmpty(el.getAction());
+			String observed = mObserved.get(el.getId());
+			if (!runAction && mObserved.containsKey(el.getId())
+					&& TextUtils.equals(observed, el.getAnswer()))
+				continue;
 			else {
 				// for non TEXT types we want to be certain we have an entry in
 				// the
@@ -207,15 +225,41 @@ public class ProcedureRunnerFragment extends BaseRunnerFragment {
 					break;
 				}
 
+				mObserved.put(el.getId(), el.getAnswer());
 				Log.d(TAG, "updated: " + updated + "::" + mData);
 				Log.d(TAG, String.format(
 						"{ 'id': %s, 'concept': %s, 'value': %s", el.getId(),
 						el.getConcept(), el.getAnswer()));
 			}
 		}
-		saveEncounterStateJSON(finished);
+		saveEncounterState(encounter, finished);
 	}
     
+    /**
+     * Saves the answers which have changed since the last save. Unless the
+     * encounter is finished the changes are appended to the answer log of
+     * the encounter instead of rewriting the full state.
+     * 
+     * @param encounter the encounter UUID
+     * @param finished whether to set the encounter as ready for upload.
+     */
+    protected void saveEncounterState(String encounter, boolean finished){
+    	if (mProcedure == null || uEncounter == null)
+    		return;
+    	if (!finished) {
+    		Map<String,String> changed = mProcedure.getChangedAnswers();
+    		if (changed.isEmpty() || AnswerLog.append(getActivity(), 
+    				encounter, changed)) 
+    		{
+    			Log.d(TAG, "Logged " + changed.size() + " changed answers");
+    			mProcedure.markAnswersSaved();
+    			return;
+    		}
+    	}
+    	saveEncounterStateJSON(finished);
+    	AnswerLog.delete(getActivity(), encounter);
+    }
+    
     @Deprecated
     public void saveEncounterStateJSON(boolean finished){
 
@@ -235,8 +279,31 @@ public class ProcedureRunnerFragment extends BaseRunnerFragment {
 					uEncounter, cv, null, null);
 			Log.i(TAG, "storeCurrentProcedure updated " + updatedObjects
 					+ " objects. (SHOULD ONLY BE 1)");
+			mProcedure.markAnswersSaved();
 		}
     }
+    
+    /**
+     * Writes the full state of the encounter and removes its answer log.
+     */
+    protected void compactEncounterState(){
+    	if (mProcedure == null || Uris.isEmpty(uEncounter))
+    		return;
+    	String encounter = ModelWrapper.getUuid(uEncounter, getActivity()
+				.getContentResolver());
+    	if (!AnswerLog.exists(getActivity(), encounter) 
+    			&& mProcedure.getChangedAnswers().isEmpty())
+    		return;
+    	saveEncounterStateJSON(false);
+    	AnswerLog.delete(getActivity(), encounter);
+    }
+    
+    @Override
+    public void onPause() {
+    	// Page changes are only logged so write the full state when leaving
+    	compactEncounterState();
+    	super.onPause();
+    }
 
     //TODO Fix this so we flush any unselected answers when navigating back and forth
     public int deleteRemovedAnswers(String answer){
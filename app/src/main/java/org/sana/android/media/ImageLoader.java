@@ -0,0 +1,467 @@
+package org.sana.android.media;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sana.android.util.Bitmaps;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.widget.ImageView;
+
+/**
+ * Loads scaled images into ImageViews off of the UI thread. Decoded bitmaps
+ * are held in a bounded in memory LRU cache and the scaled images are also
+ * written to a thumbnail cache on disk so that later loads do not need to
+ * decode the original image. Loading into a view cancels any load which is
+ * still pending for that view so recycled list and grid cells never show an
+ * image requested for an earlier position.
+ * <br/>
+ * On Honeycomb and later, bitmaps evicted from the memory cache which are not
+ * displayed are reused when decoding new images.
+ * <br/>
+ * The load and cancel methods must be called from the UI thread.
+ *
+ * @author Sana Development
+ *
+ */
+public class ImageLoader {
+	public static final String TAG = ImageLoader.class.getSimpleName();
+
+	/** Maximum size of the thumbnail disk cache in bytes. */
+	public static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+	/** Number of threads used for decoding. */
+	public static final int THREADS = 2;
+
+	static final String DIRECTORY = "thumbnails";
+	static final int DISK_CACHE_QUALITY = 80;
+	// number of disk cache writes between checks of the cache size
+	static final int TRIM_INTERVAL = 32;
+
+	private static ImageLoader sInstance = null;
+
+	/**
+	 * Returns the loader for the application.
+	 *
+	 * @param context the current Context
+	 */
+	public static synchronized ImageLoader getInstance(Context context){
+		if(sInstance == null)
+			sInstance = new ImageLoader(context.getApplicationContext());
+		return sInstance;
+	}
+
+	private final ContentResolver mResolver;
+	private final File mDiskCacheDir;
+	private final LruCache<String, Bitmap> mMemoryCache;
+	private final ExecutorService mExecutor;
+	private final Handler mHandler;
+	private final AtomicInteger mWrites = new AtomicInteger();
+
+	// bitmaps evicted from memory which may be decoded into
+	private final Set<SoftReference<Bitmap>> mReusable =
+			new HashSet<SoftReference<Bitmap>>();
+	// pending requests and displayed cache keys for each view
+	private final WeakHashMap<ImageView, Request> mRequests =
+			new WeakHashMap<ImageView, Request>();
+	private final WeakHashMap<ImageView, String> mDisplayed =
+			new WeakHashMap<ImageView, String>();
+
+	ImageLoader(Context context){
+		mResolver = context.getContentResolver();
+		mDiskCacheDir = new File(context.getCacheDir(), DIRECTORY);
+		mDiskCacheDir.mkdirs();
+		mHandler = new Handler(Looper.getMainLooper());
+		mExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				return new Thread(new Runnable(){
+					@Override
+					public void run() {
+						Process.setThreadPriority(
+								Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, TAG + " #" + count.incrementAndGet());
+			}
+		});
+		// Use 1/8th of the available memory, in kilobytes
+		int maxSize = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+		mMemoryCache = new LruCache<String, Bitmap>(maxSize){
+			@Override
+			protected int sizeOf(String key, Bitmap value) {
+				return value.getRowBytes() * value.getHeight() / 1024;
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, String key,
+					Bitmap oldValue, Bitmap newValue)
+			{
+				if(evicted && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+						&& oldValue.isMutable()
+						&& !mDisplayed.containsValue(key))
+				{
+					synchronized(mReusable){
+						mReusable.add(new SoftReference<Bitmap>(oldValue));
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Loads an image into a view scaled so that it fills the requested size.
+	 *
+	 * @param view the view to display the image in
+	 * @param source the content or file Uri of the original image
+	 * @param version a value which changes whenever the source changes or
+	 * 		null to use the modified time of file Uris
+	 * @param width the requested width in pixels
+	 * @param height the requested height in pixels
+	 * @param placeholder resource displayed while loading or if the image
+	 * 		can not be loaded, or 0 for none
+	 */
+	public void load(ImageView view, Uri source, String version, int width,
+			int height, int placeholder)
+	{
+		cancel(view);
+		if(source == null){
+			setPlaceholder(view, placeholder);
+			return;
+		}
+		String key = toKey(source, version, width, height);
+		Bitmap bitmap = mMemoryCache.get(key);
+		if(bitmap != null){
+			display(view, key, bitmap);
+			return;
+		}
+		setPlaceholder(view, placeholder);
+		Request request = new Request(view, source, key, width, height);
+		mRequests.put(view, request);
+		request.future = mExecutor.submit(request);
+	}
+
+	/**
+	 * Cancels any pending load for a view.
+	 *
+	 * @param view the view
+	 */
+	public void cancel(ImageView view){
+		Request request = mRequests.remove(view);
+		if(request != null){
+			request.cancelled = true;
+			if(request.future != null)
+				request.future.cancel(false);
+		}
+	}
+
+	/**
+	 * Removes all images from the memory cache.
+	 */
+	public void clearMemory(){
+		mMemoryCache.evictAll();
+		synchronized(mReusable){
+			mReusable.clear();
+		}
+	}
+
+	void setPlaceholder(ImageView view, int placeholder){
+		mDisplayed.remove(view);
+		if(placeholder != 0)
+			view.setImageResource(placeholder);
+		else
+			view.setImageDrawable(null);
+	}
+
+	void display(ImageView view, String key, Bitmap bitmap){
+		mDisplayed.put(view, key);
+		view.setImageBitmap(bitmap);
+	}
+
+	// Called on the UI thread when a decode completes
+	void deliver(Request request, Bitmap bitmap){
+		if(bitmap != null)
+			mMemoryCache.put(request.key, bitmap);
+		ImageView view = request.view.get();
+		if(view == null || request.cancelled || mRequests.get(view) != request)
+			return;
+		mRequests.remove(view);
+		if(bitmap != null)
+			display(view, request.key, bitmap);
+	}
+
+	static String toKey(Uri source, String version, int width, int height){
+		if(version == null && ContentResolver.SCHEME_FILE.equals(
+				source.getScheme()))
+		{
+			File file = new File(source.getPath());
+			version = file.lastModified() + "_" + file.length();
+		}
+		return source + "@" + version + "#" + width + "x" + height;
+	}
+
+	static String toFilename(String key){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for(byte b: hash)
+				sb.append(String.format("%02x", b & 0xff));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return String.valueOf(key.hashCode());
+		} catch (IOException e) {
+			return String.valueOf(key.hashCode());
+		}
+	}
+
+	/**
+	 * Reads the image from the disk cache or decodes and scales the original,
+	 * adding it to the disk cache.
+	 */
+	Bitmap decode(Request request){
+		File cached = new File(mDiskCacheDir, toFilename(request.key));
+		if(cached.exists()){
+			Bitmap bitmap = decode(Uri.fromFile(cached), request.width,
+					request.height);
+			if(bitmap != null){
+				cached.setLastModified(System.currentTimeMillis());
+				return bitmap;
+			}
+			cached.delete();
+		}
+		Bitmap bitmap = decode(request.source, request.width, request.height);
+		if(bitmap == null)
+			return null;
+		bitmap = scale(bitmap, request.width, request.height);
+		write(cached, bitmap);
+		return bitmap;
+	}
+
+	Bitmap decode(Uri uri, int width, int height){
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		try {
+			// First decode only the bounds to determine the sample size
+			options.inJustDecodeBounds = true;
+			decodeStream(uri, options);
+			if(options.outWidth <= 0 || options.outHeight <= 0)
+				return null;
+			options.inSampleSize = Bitmaps.calculateInSampleSize(options,
+					width, height);
+			options.inJustDecodeBounds = false;
+			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+				addInBitmap(options);
+			try {
+				return decodeStream(uri, options);
+			} catch (IllegalArgumentException e){
+				if(Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
+					throw e;
+				// The reused bitmap could not be decoded into
+				removeInBitmap(options);
+				return decodeStream(uri, options);
+			}
+		} catch (IOException e){
+			Log.w(TAG, "Unable to read " + uri + ": " + e.getMessage());
+			return null;
+		} catch (OutOfMemoryError e){
+			Log.e(TAG, "Out of memory decoding " + uri);
+			mHandler.post(new Runnable(){
+				@Override
+				public void run() {
+					clearMemory();
+				}
+			});
+			return null;
+		}
+	}
+
+	Bitmap decodeStream(Uri uri, BitmapFactory.Options options)
+			throws IOException
+	{
+		InputStream in = mResolver.openInputStream(uri);
+		try {
+			return BitmapFactory.decodeStream(in, null, options);
+		} finally {
+			in.close();
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	static void removeInBitmap(BitmapFactory.Options options){
+		options.inBitmap = null;
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	void addInBitmap(BitmapFactory.Options options){
+		options.inMutable = true;
+		synchronized(mReusable){
+			Iterator<SoftReference<Bitmap>> it = mReusable.iterator();
+			while(it.hasNext()){
+				Bitmap candidate = it.next().get();
+				if(candidate == null || candidate.isRecycled()){
+					it.remove();
+				} else if(canReuse(candidate, options)){
+					it.remove();
+					options.inBitmap = candidate;
+					return;
+				}
+			}
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	static boolean canReuse(Bitmap candidate, BitmapFactory.Options options){
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+			int width = options.outWidth / options.inSampleSize;
+			int height = options.outHeight / options.inSampleSize;
+			int bytes = width * height * getBytesPerPixel(candidate.getConfig());
+			return bytes <= candidate.getAllocationByteCount();
+		}
+		// Earlier versions require the same size and no sampling
+		return candidate.getWidth() == options.outWidth
+				&& candidate.getHeight() == options.outHeight
+				&& options.inSampleSize == 1;
+	}
+
+	static int getBytesPerPixel(Bitmap.Config config){
+		if(config == Bitmap.Config.ARGB_8888)
+			return 4;
+		else if(config == Bitmap.Config.RGB_565
+				|| config == Bitmap.Config.ARGB_4444)
+			return 2;
+		else if(config == Bitmap.Config.ALPHA_8)
+			return 1;
+		return 4;
+	}
+
+	/**
+	 * Scales a bitmap down so that its smaller dimension matches the
+	 * requested size.
+	 */
+	static Bitmap scale(Bitmap bitmap, int width, int height){
+		float scale = Math.max((float) width / bitmap.getWidth(),
+				(float) height / bitmap.getHeight());
+		if(scale >= 1.0f)
+			return bitmap;
+		int w = Math.max(1, Math.round(bitmap.getWidth() * scale));
+		int h = Math.max(1, Math.round(bitmap.getHeight() * scale));
+		Bitmap scaled = Bitmap.createScaledBitmap(bitmap, w, h, true);
+		if(scaled != bitmap)
+			bitmap.recycle();
+		return scaled;
+	}
+
+	void write(File file, Bitmap bitmap){
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_CACHE_QUALITY, out);
+			out.close();
+			out = null;
+			if(!tmp.renameTo(file))
+				tmp.delete();
+		} catch (IOException e){
+			Log.w(TAG, "Unable to cache " + file + ": " + e.getMessage());
+			tmp.delete();
+		} finally {
+			if(out != null) try{ out.close(); } catch (IOException e){}
+		}
+		if(mWrites.incrementAndGet() % TRIM_INTERVAL == 0)
+			trimDiskCache();
+	}
+
+	/**
+	 * Removes the least recently used thumbnails until the disk cache is
+	 * smaller than {@link #DISK_CACHE_SIZE}.
+	 */
+	void trimDiskCache(){
+		File[] files = mDiskCacheDir.listFiles();
+		if(files == null)
+			return;
+		long size = 0;
+		for(File f: files)
+			size += f.length();
+		if(size <= DISK_CACHE_SIZE)
+			return;
+		Arrays.sort(files, new Comparator<File>(){
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified();
+				long r = rhs.lastModified();
+				return (l < r)? -1: ((l == r)? 0: 1);
+			}
+		});
+		for(File f: files){
+			if(size <= DISK_CACHE_SIZE)
+				break;
+			size -= f.length();
+			f.delete();
+		}
+	}
+
+	/*
+	 * A pending load
+	 */
+	class Request implements Runnable{
+		final WeakReference<ImageView> view;
+		final Uri source;
+		final String key;
+		final int width;
+		final int height;
+		volatile boolean cancelled = false;
+		Future<?> future = null;
+
+		Request(ImageView view, Uri source, String key, int width, int height){
+			this.view = new WeakReference<ImageView>(view);
+			this.source = source;
+			this.key = key;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public void run() {
+			if(cancelled || view.get() == null)
+				return;
+			final Bitmap bitmap = decode(this);
+			mHandler.post(new Runnable(){
+				@Override
+				public void run() {
+					deliver(Request.this, bitmap);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package org.sana.android.net;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.message.BasicNameValuePair;
+import org.sana.android.Constants;
+import org.sana.android.db.SanaDB.BinarySQLFormat;
+import org.sana.android.db.SanaDB.ImageSQLFormat;
+import org.sana.android.db.SanaDB.SoundSQLFormat;
+import org.sana.android.procedure.ProcedureElement.ElementType;
+import org.sana.net.MDSResult;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Uploads binary observation files to the MDS in chunks. The chunk size ramps
+ * up while the transfer rate improves and halves when a chunk fails. Files are
+ * read from a {@link java.nio.channels.FileChannel FileChannel} into a single
+ * buffer which is reused for every chunk and file sent by an instance.
+ * <br/>
+ * The offset acknowledged for each chunk is written to the upload progress
+ * column of the binary so that an interrupted upload resumes from the last
+ * acknowledged byte. If the MDS returns a byte offset in the data field of
+ * the chunk response that offset is used as the resume point, otherwise the
+ * end of the chunk is assumed.
+ *
+ * @author Sana Development
+ *
+ */
+public class BinaryUploader {
+	public static final String TAG = BinaryUploader.class.getSimpleName();
+
+	/** The largest chunk which will be sent in bytes. */
+	public static final int MAX_PACKET_SIZE = 512 * 1000;
+
+	private final Context mContext;
+	private final boolean mEncodeAsText;
+	private ByteBuffer mBuffer = null;
+
+	/**
+	 * Creates a new uploader. Chunks are sent as base64 encoded text if the
+	 * upload hack preference is set.
+	 *
+	 * @param context the current Context
+	 */
+	public BinaryUploader(Context context){
+		mContext = context;
+		mEncodeAsText = PreferenceManager.getDefaultSharedPreferences(context)
+				.getBoolean(Constants.PREFERENCE_UPLOAD_HACK, false);
+	}
+
+	/**
+	 * Sends an entire binary file in a packetized fashion starting from any
+	 * previously recorded progress.
+	 *
+	 * @param savedProcedureId the unique identifier of the procedure within
+	 * 			the phone domain
+	 * @param elementId the id attribute of the Element within a Procedure
+	 * @param binaryGuid the unique id of the file
+	 * @param type binary type (ie picture, sound, etc.)
+	 * @param binaryUri uri of the file to be transmitted
+	 * @param startPacketSize the starting packet size for each chunk in bytes
+	 * @return the last successful chunk transmission size on success so that
+	 * 		it can be used for future transmissions as the startPacketSize
+	 * @throws IOException on upload failure
+	 */
+	public int upload(String savedProcedureId, String elementId,
+			String binaryGuid, ElementType type, Uri binaryUri,
+			int startPacketSize) throws IOException
+	{
+		Log.i(TAG,String.format("upload(): "
+				+ "encounter: %s, "
+				+ "elementId: %s, "
+				+ "binaryGuid: %s, "
+				+ "type:%s", savedProcedureId,elementId,binaryGuid,type.toString()));
+		int packetSize = Math.min(startPacketSize, MAX_PACKET_SIZE);
+		long position = 0;
+		// Look up any previous progress
+		String[] progressColumns = getProgressColumns(type);
+		if(progressColumns != null){
+			Cursor cur = null;
+			try{
+				cur = mContext.getContentResolver().query(binaryUri,
+						progressColumns, null, null, null);
+				if(cur != null && cur.moveToFirst()){
+					if(cur.getInt(0) != 0){
+						Log.i(TAG, binaryUri + " was already uploaded. Skipping.");
+						return startPacketSize;
+					}
+					position = cur.getLong(1);
+				}
+			} finally {
+				if(cur != null) cur.close();
+			}
+		}
+
+		ParcelFileDescriptor pfd = mContext.getContentResolver()
+				.openFileDescriptor(binaryUri, "r");
+		FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+		try{
+			FileChannel channel = in.getChannel();
+			long fileSize = channel.size();
+			if(position > fileSize)
+				position = 0;
+			Log.i(TAG, "upload(): " + binaryUri + " " + (fileSize - position)
+					+ " total bytes remaining. Starting at " + packetSize
+					+ " packet size");
+
+			// reference packet rate byte/msec
+			double basePacketRate = 0.0;
+			while(position < fileSize){
+				int length = (int) Math.min(packetSize, fileSize - position);
+				ByteBuffer chunk = read(channel, position, length);
+				length = chunk.limit();
+				if(length == 0)
+					throw new IOException("Unexpected end of " + binaryUri
+							+ " at " + position);
+
+				long transmitStartTime = System.currentTimeMillis();
+				Log.i(TAG, "Trying to upload " + length + " bytes for "
+						+ savedProcedureId + ":" + elementId);
+				long acknowledged = post(savedProcedureId, elementId,
+						binaryGuid, type, fileSize, position, length);
+
+				// new rate is compared to 80% of previous rate
+				basePacketRate *= 0.8;
+				boolean efficient = false;
+				if(acknowledged > position) {
+					long elapsed = Math.max(1,
+							System.currentTimeMillis() - transmitStartTime);
+					double currPacketRate = (double)length/(double)elapsed;
+					Log.i(TAG, "packet rate = (current) " + currPacketRate
+								+ ", (base) " + basePacketRate);
+					if(currPacketRate > basePacketRate) {
+						basePacketRate = currPacketRate;
+						efficient = true;
+					}
+					position = acknowledged;
+					setProgress(binaryUri, type, position);
+				}
+				// update packet size
+				if(efficient) {
+					packetSize = Math.min(packetSize * 2, MAX_PACKET_SIZE);
+					Log.i(TAG, "Shifting packet size *2 =" + packetSize);
+				} else {
+					packetSize /= 2;
+					Log.i(TAG, "Shifting packet size /2 =" + packetSize);
+				}
+				// give up if packet size becomes too small
+				if(packetSize < Constants.MIN_PACKET_SIZE * 1000) {
+					throw new IOException("Could not upload " + binaryUri
+							+". failed after " + position + " bytes.");
+				}
+			}
+		} finally {
+			in.close();
+			pfd.close();
+		}
+		setUploaded(binaryUri, type);
+		return packetSize;
+	}
+
+	/**
+	 * Reads a range of the channel into the reusable buffer.
+	 */
+	ByteBuffer read(FileChannel channel, long position, int length)
+			throws IOException
+	{
+		if(mBuffer == null || mBuffer.capacity() < length){
+			mBuffer = ByteBuffer.allocate(length);
+		}
+		mBuffer.clear();
+		mBuffer.limit(length);
+		while(mBuffer.hasRemaining()){
+			int read = channel.read(mBuffer, position + mBuffer.position());
+			if(read < 0)
+				break;
+		}
+		mBuffer.flip();
+		return mBuffer;
+	}
+
+	/**
+	 * Posts the contents of the buffer as a single chunk.
+	 *
+	 * @return the offset acknowledged by the server or -1 on failure.
+	 */
+	long post(String savedProcedureId, String elementId, String fileGuid,
+			ElementType type, long fileSize, long start, int length)
+			throws UnsupportedEncodingException
+	{
+		long end = start + length;
+		MDSResult result = null;
+		if(mEncodeAsText){
+			String url = MDSInterface.constructBinaryChunkHackSubmitURL(
+					MDSInterface.checkMDSUrl(MDSInterface.getMDSUrl(mContext)));
+			List<NameValuePair> post = new ArrayList<NameValuePair>();
+			post.add(new BasicNameValuePair("procedure_guid", savedProcedureId));
+			post.add(new BasicNameValuePair("element_id", elementId));
+			post.add(new BasicNameValuePair("binary_guid", fileGuid));
+			post.add(new BasicNameValuePair("element_type", type.toString()));
+			post.add(new BasicNameValuePair("file_size", Long.toString(fileSize)));
+			post.add(new BasicNameValuePair("byte_start", Long.toString(start)));
+			post.add(new BasicNameValuePair("byte_end", Long.toString(end)));
+			byte[] data = new byte[length];
+			System.arraycopy(mBuffer.array(), 0, data, 0, length);
+			post.add(new BasicNameValuePair("byte_data",
+					new String(Base64.encodeBase64(data))));
+			result = MDSInterface.doPost(mContext, url, post);
+		} else {
+			String url = MDSInterface.constructBinaryChunkSubmitURL(
+					MDSInterface.checkMDSUrl(MDSInterface.getMDSUrl(mContext)));
+			Log.d(TAG,"Posting to: " + url);
+			MultipartEntity entity = new MultipartEntity();
+			entity.addPart("procedure_guid", new StringBody(savedProcedureId));
+			entity.addPart("element_id", new StringBody(elementId));
+			entity.addPart("binary_guid", new StringBody(fileGuid));
+			entity.addPart("element_type", new StringBody(type.toString()));
+			entity.addPart("file_size", new StringBody(Long.toString(fileSize)));
+			entity.addPart("byte_start", new StringBody(Long.toString(start)));
+			entity.addPart("byte_end", new StringBody(Long.toString(end)));
+			entity.addPart("byte_data", new ChunkBody(mBuffer.array(), length,
+					type.getFilename()));
+			result = MDSInterface.doPost(mContext, url, entity);
+		}
+		if(result == null || !result.succeeded())
+			return -1;
+		return getAcknowledgedOffset(result, start, end);
+	}
+
+	/**
+	 * Returns the offset reported by the server in the result data if it
+	 * falls within the chunk or the end of the chunk otherwise.
+	 */
+	static long getAcknowledgedOffset(MDSResult result, long start, long end){
+		String data = result.getData();
+		if(!TextUtils.isEmpty(data) && TextUtils.isDigitsOnly(data.trim())){
+			try{
+				long offset = Long.parseLong(data.trim());
+				if(offset > start && offset <= end)
+					return offset;
+			} catch (NumberFormatException e){
+				Log.w(TAG, "Invalid offset: " + data);
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Returns the uploaded and upload progress columns for the type or null
+	 * if the type is not stored in a table.
+	 */
+	static String[] getProgressColumns(ElementType type){
+		switch(type) {
+		case PICTURE:
+			return new String[]{ ImageSQLFormat.UPLOADED,
+					ImageSQLFormat.UPLOAD_PROGRESS };
+		case SOUND:
+			return new String[]{ SoundSQLFormat.UPLOADED,
+					SoundSQLFormat.UPLOAD_PROGRESS };
+		case PLUGIN:
+			return new String[]{ BinarySQLFormat.UPLOADED,
+					BinarySQLFormat.UPLOAD_PROGRESS };
+		case BINARYFILE:
+		default:
+			// Can't do anything since its not in the DB.
+			return null;
+		}
+	}
+
+	void setProgress(Uri binaryUri, ElementType type, long position){
+		String[] columns = getProgressColumns(type);
+		if(columns == null)
+			return;
+		ContentValues cv = new ContentValues();
+		cv.put(columns[1], position);
+		mContext.getContentResolver().update(binaryUri, cv, null, null);
+	}
+
+	void setUploaded(Uri binaryUri, ElementType type){
+		String[] columns = getProgressColumns(type);
+		if(columns == null)
+			return;
+		ContentValues cv = new ContentValues();
+		cv.put(columns[0], true);
+		mContext.getContentResolver().update(binaryUri, cv, null, null);
+	}
+
+	/**
+	 * Multipart body which writes a range of a shared buffer without copying
+	 * it.
+	 */
+	static class ChunkBody extends AbstractContentBody{
+		private final byte[] data;
+		private final int length;
+		private final String filename;
+
+		ChunkBody(byte[] data, int length, String filename){
+			super("application/octet-stream");
+			this.data = data;
+			this.length = length;
+			this.filename = filename;
+		}
+
+		@Override
+		public String getFilename() {
+			return filename;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			out.write(data, 0, length);
+		}
+
+		@Override
+		public String getCharset() {
+			return null;
+		}
+
+		@Override
+		public String getTransferEncoding() {
+			return MIME.ENC_BINARY;
+		}
+
+		@Override
+		public long getContentLength() {
+			return length;
+		}
+	}
+}
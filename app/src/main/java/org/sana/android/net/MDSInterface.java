@@ -1,6 +1,7 @@
 package org.sana.android.net;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -18,14 +19,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.http.NameValuePair;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -39,9 +41,7 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.entity.mime.MultipartEntity;
-import org.apache.http.entity.mime.content.ByteArrayBody;
-import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
@@ -76,6 +76,7 @@ import org.sana.android.provider.Patients;
 import org.sana.android.provider.Procedures;
 import org.sana.android.util.SanaUtil;
 import org.sana.android.util.UserDatabase;
+import org.sana.text.json.JsonCodecs;
 
 import org.xml.sax.SAXException;
 
@@ -176,7 +177,7 @@ public class MDSInterface {
 	 * @param mdsURL host url
 	 * @return the url as a string
 	 */
-	private static String constructBinaryChunkSubmitURL(String mdsURL) {
+	static String constructBinaryChunkSubmitURL(String mdsURL) {
 		return mdsURL + Constants.BINARYCHUNK_SUBMIT_PATTERN;
 	}
 
@@ -185,7 +186,7 @@ public class MDSInterface {
 	 * @param mdsURL host url
 	 * @return the url as a string
 	 */
-	private static String constructBinaryChunkHackSubmitURL(String mdsURL) {
+	static String constructBinaryChunkHackSubmitURL(String mdsURL) {
 		return mdsURL + Constants.BINARYCHUNK_HACK_SUBMIT_PATTERN;
 	}
 
@@ -222,7 +223,7 @@ public class MDSInterface {
 	 * @param mdsUrl
 	 * @return
 	 */
-	private static String checkMDSUrl(String mdsUrl) {
+	static String checkMDSUrl(String mdsUrl) {
 		if ("http://moca.media.mit.edu/mds".equals(mdsUrl)) {
 			return "http://demo.sana.csail.mit.edu/mds";
 		}
@@ -236,7 +237,7 @@ public class MDSInterface {
 	 * @param ctx The application context.
 	 * @return The mds url with correct scheme.
 	 */
-	private static String getMDSUrl(Context context){
+	static String getMDSUrl(Context context){
 
 
 		String host = context.getString(R.string.host_mds);
@@ -299,6 +300,28 @@ public class MDSInterface {
 		return MDSInterface.doExecute(ctx, post);
 	}
 
+	/**
+	 * Compresses an entity so that it can be sent with a Content-Encoding
+	 * of gzip. The content type of the entity is kept.
+	 *
+	 * @param entity the entity to compress
+	 * @return a new entity holding the compressed content
+	 * @throws IOException
+	 */
+	static HttpEntity gzip(HttpEntity entity) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		try {
+			entity.writeTo(out);
+		} finally {
+			out.close();
+		}
+		ByteArrayEntity compressed = new ByteArrayEntity(bytes.toByteArray());
+		compressed.setContentType(entity.getContentType());
+		compressed.setContentEncoding("gzip");
+		return compressed;
+	}
+
 	/**
 	 * Executes a client HttpMethod.
 	 *
@@ -353,7 +376,7 @@ public class MDSInterface {
 			char buf[] = new char[20560];
 			responseString = EntityUtils.toString(httpResponse.getEntity());
 			Log.d(TAG, "Received from MDS:" + responseString.length()+" chars");
-			Gson gson = new Gson();
+			Gson gson = JsonCodecs.get();
 			response = gson.fromJson(responseString, MDSResult.class);
 
 		} catch (IOException e1) {
@@ -407,158 +430,6 @@ public class MDSInterface {
 
 	}
 
-	/**
-	 * Executes an Http POST call with a binary chunk as base64 encoded text
-	 *
-	 * @param c the current context
-	 * @param savedProcedureId The encounter id
-	 * @param elementId the observation id
-	 * @param fileGuid the unique id of the file
-	 * @param type the observation type
-	 * @param fileSize total byte count
-	 * @param start offset from 0 of this chunk
-	 * @param end offset + size
-	 * @param byte_data the binary chunk that is being sent
-	 * @return true if successful
-	 * @throws UnsupportedEncodingException
-	 */
-	private static boolean postBinaryAsEncodedText(Context c,
-			String savedProcedureId, String elementId, String fileGuid,
-			ElementType type, int fileSize, int start, int end,
-			byte byte_data[]) throws UnsupportedEncodingException
-	{
-
-		SharedPreferences preferences = PreferenceManager
-											.getDefaultSharedPreferences(c);
-		String mdsURL = getMDSUrl(c);
-		mdsURL = checkMDSUrl(mdsURL);
-		String mUrl = constructBinaryChunkHackSubmitURL(mdsURL);
-
-		List<NameValuePair> post = new ArrayList<NameValuePair>();
-		post.add(new BasicNameValuePair("procedure_guid", savedProcedureId));
-		post.add(new BasicNameValuePair("element_id", elementId));
-		post.add(new BasicNameValuePair("binary_guid", fileGuid));
-		post.add(new BasicNameValuePair("element_type", type.toString()));
-		post.add(new BasicNameValuePair("file_size", Integer.toString(fileSize)));
-		post.add(new BasicNameValuePair("byte_start", Integer.toString(start)));
-		post.add(new BasicNameValuePair("byte_end", Integer.toString(end)));
-
-		// Encode byte_data in Base64
-		byte[] encoded_data = new Base64().encode(byte_data);
-		post.add(new BasicNameValuePair("byte_data", new String(encoded_data)));
-
-		//execute
-		MDSResult postResponse = MDSInterface.doPost(c, mUrl, post);
-		return (postResponse != null)? postResponse.succeeded(): false;
-	}
-
-	/**
-	 * A chunk of byte data and filename
-	 *
-	 * @author Sana Development Team
-	 */
-	/*
-	private static class BytePartSource implements PartSource {
-		private String filename;
-		private byte[] data;
-
-		public BytePartSource(byte[] data, String filename) {
-			this.data = data;
-			this.filename = filename;
-		}
-
-		@Override
-		public InputStream createInputStream() throws IOException {
-			return new ByteArrayInputStream(data);
-		}
-
-		@Override
-		public String getFileName() {
-			return filename;
-		}
-
-		public long getLength() {
-			return data.length;
-		}
-
-	}
-	*/
-
-	/**
-	 * Executes an Http POST call with a binary chunk as a file
-	 *
-	 * @param c the current context
-	 * @param savedProcedureId The encounter id
-	 * @param elementId the observation id
-	 * @param fileGuid the unique id of the file
-	 * @param type the observation type
-	 * @param fileSize total byte count
-	 * @param start offset from 0 of this chunk
-	 * @param end offset + size
-	 * @param byte_data the binary chunk that is being sent
-	 * @return true if successful
-	 * @throws UnsupportedEncodingException
-	 */
-	private static boolean postBinaryAsFile(Context c, String savedProcedureId,
-			String elementId, String fileGuid, ElementType type, int fileSize,
-			int start, int end, byte byte_data[]) throws UnsupportedEncodingException
-	{
-		SharedPreferences preferences =
-			PreferenceManager.getDefaultSharedPreferences(c);
-		String mdsUrl = getMDSUrl(c);
-		mdsUrl = checkMDSUrl(mdsUrl);
-		String mUrl = constructBinaryChunkSubmitURL(mdsUrl);
-		// this is the compat layer
-		String gid = String.format("%s_%s", elementId, fileGuid);
-		Log.d(TAG,"Posting to: " + mUrl);
-		Log.d(TAG,"....file chunk: " + elementId +", guid:" + fileGuid);
-		MultipartEntity entity = new MultipartEntity();
-		entity.addPart("procedure_guid", new StringBody(savedProcedureId));
-        entity.addPart("element_id", new StringBody(elementId));
-        entity.addPart("binary_guid", new StringBody(fileGuid));
-        entity.addPart("element_type", new StringBody(type.toString()));
-        entity.addPart("file_size", new StringBody(Integer.toString(fileSize)));
-        entity.addPart("byte_start", new StringBody(Integer.toString(start)));
-        entity.addPart("byte_end", new StringBody(Integer.toString(end)));
-        entity.addPart("byte_data", new ByteArrayBody(byte_data, type.getFilename()));
-
-		//execute
-		MDSResult postResponse = MDSInterface.doPost(c, mUrl, entity);
-		return (postResponse != null)? postResponse.succeeded(): false;
-	}
-
-	/**
-	 * Posts a single chunk of a binary file.
-	 *
-	 * @param c current context
-	 * @param savedProcedureId The encounter id
-	 * @param elementId The observation within the encounter
-	 * @param type binary type (ie picture, sound, etc.)
-	 * @param start first byte index in binary file (since this presumably is a
-	 * 			chunk of a larger file)
-	 * @param end last byte index in binary file of the chunk being uploaded
-	 * @param byte_data a byte array containing the file chunk data
-	 * @return true on successful upload, otherwise false
-	 * @throws UnsupportedEncodingException
-	 */
-	private static boolean postBinary(Context c, String savedProcedureId,
-			String elementId, String fileGuid, ElementType type, int fileSize,
-			int start, int end, byte byte_data[]) throws UnsupportedEncodingException
-	{
-		SharedPreferences preferences = PreferenceManager
-											.getDefaultSharedPreferences(c);
-		boolean hacksMode = preferences.getBoolean(
-				Constants.PREFERENCE_UPLOAD_HACK, false);
-		// check if we want to post as base64 encoded text
-		if(hacksMode) {
-			return postBinaryAsEncodedText(c, savedProcedureId, elementId,
-					fileGuid, type, fileSize, start, end, byte_data);
-		} else {
-			return postBinaryAsFile(c, savedProcedureId, elementId, fileGuid,
-					type, fileSize, start, end, byte_data);
-		}
-	}
-
 	/**
 	 * Checks whether an encounter is already uploaded
 	 *
@@ -936,6 +807,7 @@ public class MDSInterface {
 
 		int totalProgress = 1+totalBinaries;
 		int thisProgress = 2;
+		BinaryUploader uploader = new BinaryUploader(context);
 		// upload each binary file where each binary should be represented by
 		// one value in a comma separated list of ints starting
 		for(ElementAnswer e : binaries) {
@@ -976,7 +848,7 @@ public class MDSInterface {
 					Log.i(TAG, "Uploading " + binUri);
 					// reset the new packet size each time to the last
 					// successful transmission size
-					newPacketSize = transmitBinary(context, savedProcedureGUID,
+					newPacketSize = uploader.upload(savedProcedureGUID,
 												   e.id, binaryId, type, binUri,
 												   newPacketSize);
 					// Delete the file!
@@ -1003,177 +875,6 @@ public class MDSInterface {
 		return true;
 	}
 
-	/**
-	 * Sends an entire binary file in a packetized fashion. This method is where
-	 * the automatic ramping packetization takes place. Uploading occurs in the
-	 * background
-	 *
-	 * @param c current Context
-	 * @param savedProcedureId the unique identifier of the procedure within
-	 * 			the phone domain
-	 * @param elementId the id attribute of the Element within a Procedure
-	 * @param type binary type (ie picture, sound, etc.)
-	 * @param binaryUri uri of the file to be transmitted
-	 * @param startPacketSize the starting packet size for each chunk; this will
-	 * 		  be throttled up or down depending on connection strength
-	 * @return the last successful chunk transmission size on success so that it
-	 * 		  can be used for future transmissions as the startPacketSize
-	 * @throws Exception on upload failure
-	 */
-	protected static int transmitBinary(Context c, String savedProcedureId,
-			String elementId, String binaryGuid, ElementType type,
-			Uri binaryUri, int startPacketSize) throws Exception
-	{
-        Log.i(TAG,String.format("transmitBinary(): "
-            + "encounter: %s, "
-            + "elementId: %s, "
-            + "binaryGuid: %s, "
-            + "type:%s", savedProcedureId,elementId,binaryGuid,type.toString()));
-		int packetSize, fileSize;
-		ContentValues cv = new ContentValues();
-		packetSize = startPacketSize;
-		boolean alreadyUploaded = false;
-		int currPosition = 0;
-		Cursor cur = null;
-		switch(type) {
-		case PICTURE:
-			cur = c.getContentResolver().query(binaryUri, new String[] {
-					ImageSQLFormat.UPLOADED, ImageSQLFormat.UPLOAD_PROGRESS },
-					null, null, null);
-			cur.moveToFirst();
-			alreadyUploaded = cur.getInt(0) != 0;
-			currPosition = cur.getInt(1);
-			break;
-		case SOUND:
-			cur = c.getContentResolver().query(binaryUri, new String[] {
-					SoundSQLFormat.UPLOADED, SoundSQLFormat.UPLOAD_PROGRESS },
-					null, null, null);
-			cur.moveToFirst();
-			alreadyUploaded = cur.getInt(0) != 0;
-			currPosition = cur.getInt(1);
-			break;
-		case PLUGIN:
-			//TODO Add the BinaryProvider
-			cur = c.getContentResolver().query(binaryUri, new String[] {
-					BinarySQLFormat.UPLOADED, BinarySQLFormat.UPLOAD_PROGRESS },
-					null, null, null);
-			cur.moveToFirst();
-			alreadyUploaded = cur.getInt(0) != 0;
-			currPosition = cur.getInt(1);
-			break;
-		case BINARYFILE:
-		default:
-			// Can't do anything since its not in the DB. Sigh.
-			break;
-
-		}
-		if (cur != null){
-			cur.close();
-		}
-		if(alreadyUploaded) {
-			Log.i(TAG, binaryUri + " was already uploaded. Skipping.");
-			return startPacketSize;
-		}
-		// Ope the input stream
-		InputStream is = c.getContentResolver().openInputStream(binaryUri);
-		fileSize = is.available();
-
-		// Skip forward by the progress we've made previously.
-		is.skip(currPosition);
-		int progress = (int)(100.0 * currPosition / fileSize);
-
-		int bytesRemaining = fileSize - currPosition;
-		Log.i(TAG, "transmitBinary uploading " + binaryUri + " "
-				+ bytesRemaining + " total bytes remaining. Starting at "
-				+ packetSize + " packet size");
-
-		// reference packet rate byte/msec
-		double basePacketRate = 0.0;
-		while(bytesRemaining > 0) {
-			// get starting time of packet transmission
-			long transmitStartTime = new Date().getTime();
-			// if transmission rate is acceptable
-			// (comparison between currPacketRate and basePacketRate)
-			boolean efficient = false;
-
-			int bytesToRead = Math.min(packetSize, bytesRemaining);
-			byte[] chunk = new byte[bytesToRead];
-			int bytesRead = is.read(chunk, 0, bytesToRead);
-
-			boolean success = false;
-			while(!success) {
-				Log.i(TAG, "Trying to upload " + bytesRead + " bytes for "
-						+ savedProcedureId + ":" + elementId + "build/intermediates/exploded-aar/com.android.support/support-v4/21.0.3/res");
-				success = postBinary(c, savedProcedureId, elementId, binaryGuid,
-										type, fileSize, currPosition,
-										currPosition+bytesRead, chunk);
-				efficient = false;
-				// new rate is compared to 80% of previous rate
-				basePacketRate *= 0.8;
-				if(success) {
-					long transmitEndTime = new Date().getTime();
-					// get new packet rate
-					double currPacketRate = (double)packetSize/
-								(double)(transmitEndTime-transmitStartTime);
-					Log.i(TAG, "packet rate = (current) " + currPacketRate
-								+ ", (base) " + basePacketRate);
-					if(currPacketRate > basePacketRate) {
-						basePacketRate = currPacketRate;
-						efficient = true;
-					}
-				}
-				// update packet size
-				if(efficient) {
-					packetSize *= 2;
-					Log.i(TAG, "Shifting packet size *2 =" + packetSize);
-				} else {
-					packetSize /= 2;
-					Log.i(TAG, "Shifting packet size /2 =" + packetSize);
-				}
-				// close if packet size becomes too small
-				if(packetSize < Constants.MIN_PACKET_SIZE * 1000) {
-					// TODO(rryan) : fail at some point
-					is.close();
-					throw new IOException("Could not upload " + binaryUri
-							+". failed after " + (fileSize-bytesRemaining)
-							+ " bytes.");
-				}
-			}
-			// update progress
-			bytesRemaining -= bytesRead;
-			currPosition += bytesRead;
-			progress = (int)(100.0 * currPosition / fileSize);
-
-			// write current progress to database
-			cv.clear();
-			switch(type) {
-			case PICTURE:
-				cv.put(ImageSQLFormat.UPLOAD_PROGRESS, currPosition);
-				c.getContentResolver().update(binaryUri, cv, null, null);
-				break;
-			case SOUND:
-				cv.put(SoundSQLFormat.UPLOAD_PROGRESS, currPosition);
-				c.getContentResolver().update(binaryUri, cv, null, null);
-				break;
-			}
-		}
-
-		// Mark file as uploaded in the database
-		cv.clear();
-		switch(type) {
-		case PICTURE:
-			cv.put(ImageSQLFormat.UPLOADED, true);
-			c.getContentResolver().update(binaryUri, cv, null, null);
-			break;
-		case SOUND:
-			cv.put(SoundSQLFormat.UPLOADED, true);
-			c.getContentResolver().update(binaryUri, cv, null, null);
-			break;
-		}
-		is.close();
-		return packetSize;
-	}
-
 	/**
 	 * Validates authorization credentials with permanent record store.
 	 *
@@ -1316,14 +1017,20 @@ public class MDSInterface {
 
 
 	/**
-	 * Sends a list of events to the dispatch server
+	 * Sends a list of events to the dispatch server. Event values are mostly
+	 * repetitive text such as stack traces so the form is sent gzip
+	 * compressed unless the server has been found not to accept it. If the
+	 * server refuses the compressed form with a 400 or 415 status it is sent
+	 * again uncompressed, and if that succeeds later events are sent
+	 * uncompressed. Any other failure fails the submission so that the
+	 * events are retried later.
 	 *
 	 * @param c the application Context
 	 * @param eventsList a list of events
 	 * @return true if successfully sent
-	 * @throws UnsupportedEncodingException
+	 * @throws IOException
 	 */
-	public static boolean submitEvents(Context c, List<Event> eventsList) throws UnsupportedEncodingException {
+	public static boolean submitEvents(Context c, List<Event> eventsList) throws IOException {
 		Log.i(TAG, "submitEvents(): " + eventsList.size());
 
 		SharedPreferences preferences = PreferenceManager
@@ -1342,10 +1049,76 @@ public class MDSInterface {
 		post.add(new BasicNameValuePair("username", username));
 		post.add(new BasicNameValuePair("password", password));
 		post.add(new BasicNameValuePair("client_id", phoneId));
-		Gson g = new Gson();
+		Gson g = JsonCodecs.get();
 		post.add(new BasicNameValuePair("events", g.toJson(eventsList)));
-		MDSResult postResponse = MDSInterface.doPost(c, mUrl, post);
-		return (postResponse != null)? postResponse.succeeded(): false;
+		UrlEncodedFormEntity form = new UrlEncodedFormEntity(post, "UTF-8");
+		boolean refused = false;
+		if(preferences.getBoolean(Constants.PREFERENCE_COMPRESS_EVENTS, true)){
+			switch(postCompressed(mUrl, form)){
+			case ACCEPTED:
+				return true;
+			case FAILED:
+				return false;
+			case REFUSED:
+				Log.w(TAG, "submitEvents(): compressed events refused. "
+						+ "Retrying uncompressed.");
+				refused = true;
+				break;
+			}
+		}
+		MDSResult postResponse = MDSInterface.doPost(c, mUrl, form);
+		boolean result = (postResponse != null)? postResponse.succeeded(): false;
+		if(result && refused){
+			preferences.edit().putBoolean(Constants.PREFERENCE_COMPRESS_EVENTS,
+					false).commit();
+		}
+		return result;
+	}
+
+	/** The outcome of posting a compressed form. */
+	enum Compressed {
+		/** The form was read and the request succeeded. */
+		ACCEPTED,
+		/** The server does not read compressed request bodies. */
+		REFUSED,
+		/** The request failed for any other reason. */
+		FAILED
+	}
+
+	/**
+	 * Posts a gzip compressed form. A server which does not decompress
+	 * request bodies is expected to reject it with a 400 or 415 status.
+	 *
+	 * @return The outcome of the request.
+	 * @throws IOException if the request could not be sent
+	 */
+	static Compressed postCompressed(String mUrl, HttpEntity form)
+			throws IOException
+	{
+		HttpPost post = new HttpPost(mUrl);
+		post.setEntity(gzip(form));
+		HttpResponse response = HttpTaskFactory.CLIENT_FACTORY.produce()
+				.execute(post);
+		int status = response.getStatusLine().getStatusCode();
+		// always read the body so the connection returns to the pool
+		String body = (response.getEntity() != null)?
+				EntityUtils.toString(response.getEntity()): null;
+		if(status == HttpStatus.SC_BAD_REQUEST
+				|| status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE)
+		{
+			Log.d(TAG, "postCompressed(): status " + status);
+			return Compressed.REFUSED;
+		}
+		if(body == null)
+			return Compressed.FAILED;
+		try {
+			MDSResult result = JsonCodecs.get().fromJson(body, MDSResult.class);
+			return (result != null && result.succeeded())? Compressed.ACCEPTED:
+				Compressed.FAILED;
+		} catch (JsonParseException e) {
+			Log.d(TAG, "postCompressed(): unreadable reply, status " + status);
+			return Compressed.FAILED;
+		}
 	}
 
 	// returns the scheme basef on the "Use secure transmission" setting.
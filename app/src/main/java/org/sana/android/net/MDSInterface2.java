@@ -26,10 +26,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -42,8 +39,6 @@ import org.apache.http.client.utils.URIUtils;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.ByteArrayBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
@@ -73,6 +68,9 @@ import org.sana.core.Patient;
 import org.sana.net.MDSResult;
 import org.sana.net.Response;
 import org.sana.net.http.HttpTaskFactory;
+import org.sana.net.http.PooledClientFactory;
+import org.sana.net.http.RequestExecutor;
+import org.sana.text.json.JsonCodecs;
 import org.sana.util.UUIDUtil;
 import org.xml.sax.SAXException;
 
@@ -228,7 +226,7 @@ public class MDSInterface2 {
 			char buf[] = new char[20560];
 			responseString = EntityUtils.toString(httpResponse.getEntity());
 			Log.d(TAG, "doExecute() Received from MDS:" + responseString);//.length()+" chars");
-			Gson gson = new Gson();
+			Gson gson = JsonCodecs.get();
 			response = gson.fromJson(responseString, MDSResult.class);
 
 		} catch (IOException e1) {
@@ -628,6 +626,7 @@ public class MDSInterface2 {
 
 		int totalProgress = 1+totalBinaries;
 		int thisProgress = 2;
+		BinaryUploader uploader = new BinaryUploader(context);
 		// upload each binary file where each binary should be represented by
 		// one value in a comma separated list of ints starting
 		
@@ -677,7 +676,7 @@ public class MDSInterface2 {
 						Log.i(TAG, "Uploading " + binUri);
 						// reset the new packet size each time to the last
 						// successful transmission size
-						newPacketSize = MDSInterface.transmitBinary(context, savedProcedureGUID,
+						newPacketSize = uploader.upload(savedProcedureGUID,
 												   e.id, binaryId, type, binUri,
 												   newPacketSize);
 						// Delete the file!
@@ -690,14 +689,18 @@ public class MDSInterface2 {
 							break;
 						default:
 						}
+						thisProgress++;
+						break;
 					} catch (Exception x) {
 						Log.e(TAG, "Uploading " + binUri + " failed : "
 							+ x.toString());
 						x.printStackTrace();
+						// retry resumes from the last acknowledged chunk
+						if(binaryPostCount < MAXBINARY_POST_ATTEMPT)
+							continue;
 						QueueManager.setProcedureUploadStatus(context, uri, QueueManager.UPLOAD_STATUS_FAILURE);
 						return false;
 					}
-					thisProgress++;
 				}
 				
 			}
@@ -942,27 +945,6 @@ public class MDSInterface2 {
 		return result;
 	}
 
-	/**
-	 * Builds and returns an HttpClient with Basic Authorization headers initialized
-	 * with a BasicCredentialsProvider
-	 *
-	 * @param username The username credential.
-	 * @param password The password credential.
-	 * @return a new HttpClient
-	 */
-
-	public static HttpClient buildBasicAuthClient(String username, String password){
-		HttpClient client = HttpTaskFactory.CLIENT_FACTORY.produce();
-		if(!(TextUtils.isEmpty(username) || TextUtils.isEmpty(password))){
-			CredentialsProvider credsProvider = new BasicCredentialsProvider();
-	        credsProvider.setCredentials(
-	                new AuthScope(AuthScope.ANY_HOST,AuthScope.ANY_PORT),
-	                new UsernamePasswordCredentials(username,password));
-	        ((DefaultHttpClient)client).setCredentialsProvider(credsProvider);
-		}
-		return client;
-	}
-
 	public static  Response<String> apiGet(URI uri) throws UnsupportedEncodingException
 	{
 		return apiGet(uri,null,null);
@@ -970,8 +952,9 @@ public class MDSInterface2 {
 
 	public static  Response<String> apiGet(URI uri, String username, String password) throws UnsupportedEncodingException
 			{
-		HttpClient client = buildBasicAuthClient(username,password);
+		HttpClient client = HttpTaskFactory.CLIENT_FACTORY.produce();
 		HttpGet request = new HttpGet(uri);
+		PooledClientFactory.setCredentials(request, username, password);
 		request.setHeader("Accept", "application/json");
 		HttpResponse httpResponse = null;
 		Response<String> response = Response.empty();
@@ -992,27 +975,13 @@ public class MDSInterface2 {
 		return response;
 	}
 
-	public static synchronized <T> Response<T> apiGet(URI uri, String username, String password,
+	public static <T> Response<T> apiGet(URI uri, String username, String password,
 			ResponseHandler<Response<T>> handler) throws UnsupportedEncodingException
 			{
-		HttpClient client = buildBasicAuthClient(username,password);
 		HttpGet request = new HttpGet(uri);
+		PooledClientFactory.setCredentials(request, username, password);
 		request.setHeader("Accept", "application/json");
-		HttpResponse httpResponse = null;
-		Response<T> response = Response.empty();
-		try {
-			httpResponse = client.execute(request);
-			response = handler.handleResponse(httpResponse);
-		} catch (ClientProtocolException e) {
-			response.setCode(500);
-			response.setStatus(Response.FAILURE);
-			e.printStackTrace();
-		} catch (IOException e) {
-			response.setCode(501);
-			response.setStatus(Response.FAILURE);
-			e.printStackTrace();
-		}
-		return response;
+		return RequestExecutor.getInstance().execute(request, handler);
 	}
 
 	public static <T> Response<T> apiGet(URI uri, ResponseHandler<Response<T>> handler) throws UnsupportedEncodingException
@@ -1020,25 +989,19 @@ public class MDSInterface2 {
 		return apiGet(uri,"","",handler);
 	}
 
-	public static synchronized <T> Response<T> apiPost(URI uri, String username, String password,
+	public static <T> Response<T> apiPost(URI uri, String username, String password,
 			Map<String, String> values,
 			ResponseHandler<Response<T>> handler)
 	{
                 Log.i(TAG, "apiPost()" + uri);
-		HttpClient client = buildBasicAuthClient(username,password);
 		HttpPost request = new HttpPost(uri);
-		HttpResponse httpResponse = null;
+		PooledClientFactory.setCredentials(request, username, password);
 		Response<T> response = Response.empty();
 		try {
                         HttpEntity entity = new UrlEncodedFormEntity(mapToPost(values), "UTF-8");
                         request.setEntity(entity);
                         Log.i(TAG, "apiPost(): executing" + request.getMethod());
-			httpResponse = client.execute(request);
-			response = handler.handleResponse(httpResponse);
-		} catch (ClientProtocolException e) {
-			response.setCode(500);
-			response.setStatus(Response.FAILURE);
-			e.printStackTrace();
+			response = RequestExecutor.getInstance().execute(request, handler);
 		} catch (IOException e) {
 			response.setCode(501);
 			response.setStatus(Response.FAILURE);
@@ -1056,13 +1019,12 @@ public class MDSInterface2 {
 	 * @param handler
 	 * @return
 	 */
-	public static synchronized <T> Response<T> apiPut(URI uri, String username, String password,
+	public static <T> Response<T> apiPut(URI uri, String username, String password,
 			Map<String, String> form,
 			Map<String, String> files,
 			ResponseHandler<Response<T>> handler){
-		HttpClient client = buildBasicAuthClient(username,password);
 		HttpPut request = new HttpPut(uri);
-		HttpResponse httpResponse = null;
+		PooledClientFactory.setCredentials(request, username, password);
 		Response<T> response = Response.empty();
 		try{
                     Log.d(TAG,"apiPut() BUILDING ENTITY");
@@ -1077,14 +1039,8 @@ public class MDSInterface2 {
                     }
                     request.setEntity(entity);
 		    Log.d(TAG,"apiPut() executing" + request.getMethod());
-		    httpResponse = client.execute(request);
-		    Log.d(TAG,"apiPut() reading response");
-		    response = handler.handleResponse(httpResponse);
+		    response = RequestExecutor.getInstance().execute(request, handler);
 		    Log.d(TAG,"apiPut() --> " + response.status + ": " + response.code);
-		} catch (ClientProtocolException e) {
-			response.setCode(500);
-			response.setStatus(Response.FAILURE);
-			e.printStackTrace();
 		} catch (IOException e) {
 			response.setCode(501);
 			response.setStatus(Response.FAILURE);
@@ -1093,26 +1049,12 @@ public class MDSInterface2 {
 		return response;
 	}
 
-	public static synchronized <T> Response<T> apiDelete(URI uri, String username, String password,
+	public static <T> Response<T> apiDelete(URI uri, String username, String password,
 			Map<String, Object> values,
 			ResponseHandler<Response<T>> handler){
-		HttpClient client = buildBasicAuthClient(username,password);
 		HttpDelete request = new HttpDelete(uri);
-		HttpResponse httpResponse = null;
-		Response<T> response = Response.empty();
-		try {
-			httpResponse = client.execute(request);
-			response = handler.handleResponse(httpResponse);
-		} catch (ClientProtocolException e) {
-			response.setCode(500);
-			response.setStatus(Response.FAILURE);
-			e.printStackTrace();
-		} catch (IOException e) {
-			response.setCode(501);
-			response.setStatus(Response.FAILURE);
-			e.printStackTrace();
-		}
-		return response;
+		PooledClientFactory.setCredentials(request, username, password);
+		return RequestExecutor.getInstance().execute(request, handler);
 	}
 
 	/**
@@ -1220,7 +1162,7 @@ public class MDSInterface2 {
 		Log.i(TAG, obs.toString());
 	}
 
-    public synchronized static final <T> Response<T> syncUpdate(Context ctx, Uri uri,
+    public static final <T> Response<T> syncUpdate(Context ctx, Uri uri,
         String username, String password,
         Bundle form,
         Bundle files,
@@ -0,0 +1,304 @@
+package org.sana.android.net;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.cookie.DateUtils;
+import org.sana.net.http.HttpTaskFactory;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Downloads media files referenced by synced records in the background so
+ * that the records can be written without waiting on the transfers. Files are
+ * fetched by a small, fixed pool of threads sharing the pooled HTTP client
+ * and a file which is already queued or downloading is not requested twice.
+ * <br/>
+ * Existing files are revalidated with a conditional GET. The ETag returned
+ * with a file is kept in a sidecar file next to it and the modified time of
+ * the file is set from the Last-Modified header so that either may be sent
+ * back. Downloads are written to a temporary file which replaces the target
+ * only once complete so that a partially downloaded file is never read.
+ *
+ * @author Sana Development
+ *
+ */
+public class MediaFetcher {
+	public static final String TAG = MediaFetcher.class.getSimpleName();
+
+	/** The number of concurrent downloads. */
+	public static final int POOL_SIZE = 3;
+
+	static final String ETAG_SUFFIX = ".etag";
+	static final String PART_SUFFIX = ".part";
+	static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Receives progress as the queued files complete. Methods are called on
+	 * the download threads.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when a file has been checked or downloaded.
+		 *
+		 * @param file the local file
+		 * @param updated true if new content was written
+		 * @param completed the number of files finished since the queue was
+		 * 		last empty
+		 * @param total the number of files queued since the queue was last
+		 * 		empty
+		 */
+		public void onProgress(File file, boolean updated, int completed,
+				int total);
+
+		/**
+		 * Called when the last queued file has finished.
+		 *
+		 * @param updated the number of files which were written
+		 */
+		public void onFinished(int updated);
+	}
+
+	private static MediaFetcher sInstance = null;
+
+	/**
+	 * Returns the shared fetcher.
+	 *
+	 * @param context the current context
+	 */
+	public static synchronized MediaFetcher getInstance(Context context){
+		if(sInstance == null)
+			sInstance = new MediaFetcher(context.getApplicationContext());
+		return sInstance;
+	}
+
+	private final Context mContext;
+	private final ThreadPoolExecutor mExecutor;
+	private final Set<String> mPending =
+			Collections.synchronizedSet(new HashSet<String>());
+	private volatile Listener mListener = null;
+
+	// progress since the queue was last empty
+	private final Object mLock = new Object();
+	private int mTotal = 0;
+	private int mCompleted = 0;
+	private int mUpdated = 0;
+
+	MediaFetcher(Context context){
+		mContext = context;
+		mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory(){
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						return new Thread(new Runnable(){
+							@Override
+							public void run() {
+								Process.setThreadPriority(
+										Process.THREAD_PRIORITY_BACKGROUND);
+								r.run();
+							}
+						}, TAG + "-" + count.incrementAndGet());
+					}
+				});
+	}
+
+	/**
+	 * Sets the listener which receives progress.
+	 *
+	 * @param listener the listener or null
+	 */
+	public void setListener(Listener listener){
+		mListener = listener;
+	}
+
+	/**
+	 * Queues a file to be downloaded, or revalidated if it already exists.
+	 *
+	 * @param path the path of the file relative to the MDS root
+	 * @param file the local file
+	 * @return false if the file was already queued
+	 */
+	public boolean fetch(final String path, final File file){
+		final String key = file.getAbsolutePath();
+		if(!mPending.add(key))
+			return false;
+		synchronized(mLock){
+			mTotal++;
+		}
+		mExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				boolean updated = false;
+				try {
+					updated = download(MDSInterface2.getMDSUrl(mContext, path),
+							file);
+				} catch (Exception e) {
+					Log.w(TAG, "Unable to fetch " + path + ": " + e.toString());
+				} finally {
+					mPending.remove(key);
+					onComplete(file, updated);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Returns the number of files queued or downloading.
+	 */
+	public int getPendingCount(){
+		return mPending.size();
+	}
+
+	private void onComplete(File file, boolean updated){
+		int completed, total, written = 0;
+		boolean finished = false;
+		synchronized(mLock){
+			completed = ++mCompleted;
+			total = mTotal;
+			if(updated)
+				mUpdated++;
+			if(mCompleted == mTotal){
+				finished = true;
+				written = mUpdated;
+				mTotal = mCompleted = mUpdated = 0;
+			}
+		}
+		Listener listener = mListener;
+		if(listener != null){
+			listener.onProgress(file, updated, completed, total);
+			if(finished)
+				listener.onFinished(written);
+		}
+	}
+
+	/**
+	 * Fetches a url into a file unless the server reports that the copy held
+	 * is current.
+	 *
+	 * @return true if the file was written
+	 */
+	static boolean download(String url, File file) throws IOException{
+		File etagFile = new File(file.getPath() + ETAG_SUFFIX);
+		HttpGet get = new HttpGet(url);
+		if(file.isDirectory()){
+			Log.w(TAG, "Deleting erroneous directory " + file);
+			file.delete();
+		}
+		if(file.exists()){
+			String etag = readEtag(etagFile);
+			if(etag != null)
+				get.setHeader("If-None-Match", etag);
+			else if(file.lastModified() > 0)
+				get.setHeader("If-Modified-Since", DateUtils.formatDate(
+						new Date(file.lastModified())));
+		}
+		HttpResponse response = HttpTaskFactory.CLIENT_FACTORY.produce()
+				.execute(get);
+		HttpEntity entity = response.getEntity();
+		int status = response.getStatusLine().getStatusCode();
+		try {
+			if(status == HttpStatus.SC_NOT_MODIFIED){
+				Log.d(TAG, "Not modified: " + file);
+				return false;
+			}
+			if(status != HttpStatus.SC_OK || entity == null){
+				Log.w(TAG, "GET " + url + " returned " + status);
+				return false;
+			}
+			file.getParentFile().mkdirs();
+			File part = new File(file.getPath() + PART_SUFFIX);
+			InputStream in = entity.getContent();
+			OutputStream out = new FileOutputStream(part);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read = 0;
+				while((read = in.read(buffer)) != -1)
+					out.write(buffer, 0, read);
+			} finally {
+				out.close();
+			}
+			if(!part.renameTo(file)){
+				part.delete();
+				throw new IOException("Unable to replace " + file);
+			}
+			Header lastModified = response.getFirstHeader("Last-Modified");
+			if(lastModified != null){
+				try {
+					file.setLastModified(DateUtils.parseDate(
+							lastModified.getValue()).getTime());
+				} catch (Exception e) {
+					Log.w(TAG, "Bad Last-Modified: " + lastModified.getValue());
+				}
+			}
+			Header etag = response.getFirstHeader("ETag");
+			writeEtag(etagFile, (etag != null)? etag.getValue(): null);
+			Log.d(TAG, "Downloaded " + file);
+			return true;
+		} finally {
+			// release the connection back to the pool
+			if(entity != null)
+				entity.consumeContent();
+		}
+	}
+
+	static String readEtag(File etagFile){
+		if(!etagFile.exists())
+			return null;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(etagFile);
+			byte[] data = new byte[(int) etagFile.length()];
+			int offset = 0, read = 0;
+			while(offset < data.length
+					&& (read = in.read(data, offset, data.length - offset)) != -1)
+				offset += read;
+			String etag = new String(data, 0, offset, "UTF-8").trim();
+			return (etag.length() > 0)? etag: null;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if(in != null) try{ in.close(); } catch (IOException e){}
+		}
+	}
+
+	static void writeEtag(File etagFile, String etag){
+		if(etag == null){
+			etagFile.delete();
+			return;
+		}
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(etagFile);
+			out.write(etag.getBytes("UTF-8"));
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to save etag for " + etagFile);
+		} finally {
+			if(out != null) try{ out.close(); } catch (IOException e){}
+		}
+	}
+}
@@ -11,6 +11,7 @@ import java.util.regex.Pattern;
 import org.sana.R;
 import org.sana.android.db.NotificationMessage;
 import org.sana.android.provider.Notifications;
+import org.sana.text.json.JsonCodecs;
 
 import android.app.Notification;
 import android.app.NotificationManager;
@@ -79,7 +80,7 @@ public class SMSReceive extends BroadcastReceiver {
 	private void processNotificationMessage(Context context, 
 			MDSNotification notificationHeader, String message) 
 	{
-		Gson g = new Gson();
+		Gson g = JsonCodecs.get();
 		
 		if (notificationHeader.n == null) {
 			Log.e(TAG, "Received mal-formed notification UUID -- none provided.");
@@ -245,7 +246,7 @@ public class SMSReceive extends BroadcastReceiver {
 			return;
 		}
 		
-		Gson gson = new Gson();
+		Gson gson = JsonCodecs.get();
 		
 		try {
 			String header = msg.substring(0, lastRightBrace+1);
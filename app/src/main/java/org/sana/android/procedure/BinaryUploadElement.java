@@ -7,7 +7,6 @@ import java.util.List;
 
 import org.sana.R;
 import org.sana.android.Constants;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.preference.PreferenceManager;
@@ -184,10 +183,10 @@ public class BinaryUploadElement extends ProcedureElement implements
         super(id, question, answer, concept, figure, audio);
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static BinaryUploadElement fromXML(String id, String question, 
     		String answer, String concept, String figure, String audio, 
-    		Node node) throws ProcedureParseException 
+    		DefinitionNode node) throws ProcedureParseException 
     {
         return new BinaryUploadElement(id, question, answer, concept, figure, 
         		audio);
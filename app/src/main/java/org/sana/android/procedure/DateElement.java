@@ -7,7 +7,6 @@ import java.util.Date;
 import java.util.TimeZone;
 
 import org.sana.util.DateUtil;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.text.TextUtils;
@@ -115,10 +114,10 @@ public class DateElement extends ProcedureElement {
      * @param node The source xml node. 
      * @return A new element.
      * @throws ProcedureParseException if an error occurred while parsing 
-     * 		additional information from the Node
+     * 		additional information from the node
      */
 	public static DateElement fromXML(String id, String question, String answer,
-			String concept, String figure, String audio, Node node) throws
+			String concept, String figure, String audio, DefinitionNode node) throws
 			ProcedureParseException 
 	{
 		return new DateElement(id, question, answer, concept, figure, audio);
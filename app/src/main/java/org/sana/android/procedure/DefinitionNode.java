@@ -0,0 +1,242 @@
+package org.sana.android.procedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * An immutable node of a compiled {@link ProcedureDefinition}. A node is
+ * either an element, with a name, attributes, and children, or a run of text.
+ * The <code>fromXML</code> factory methods of the procedure classes read
+ * their attributes and child elements directly from these nodes.
+ *
+ * @author Sana Development
+ *
+ */
+public final class DefinitionNode {
+
+	/** The name of every text node. */
+	public static final String TEXT = "#text";
+
+	private static final String[] NO_STRINGS = new String[0];
+	private static final DefinitionNode[] NO_NODES = new DefinitionNode[0];
+
+	private final String name;
+	private final String text;
+	private final String[] attributeNames;
+	private final String[] attributeValues;
+	private final DefinitionNode[] children;
+	private final List<DefinitionNode> elements;
+
+	private DefinitionNode(String name, String text, String[] attributeNames,
+			String[] attributeValues, DefinitionNode[] children)
+	{
+		this.name = name;
+		this.text = text;
+		this.attributeNames = attributeNames;
+		this.attributeValues = attributeValues;
+		this.children = children;
+		List<DefinitionNode> elements = new ArrayList<DefinitionNode>(
+				children.length);
+		for(DefinitionNode child:children){
+			if(!child.isText())
+				elements.add(child);
+		}
+		this.elements = Collections.unmodifiableList(elements);
+	}
+
+	/**
+	 * Creates a new element node.
+	 *
+	 * @param name The element name.
+	 * @param attributeNames The attribute names.
+	 * @param attributeValues The attribute values in the same order as the
+	 * 		names.
+	 * @param children The child nodes in document order.
+	 * @return A new element node.
+	 */
+	public static DefinitionNode newElement(String name,
+			String[] attributeNames, String[] attributeValues,
+			DefinitionNode[] children)
+	{
+		if(name == null)
+			throw new IllegalArgumentException("Element name is null");
+		if(attributeNames.length != attributeValues.length)
+			throw new IllegalArgumentException("Attribute names and values "
+					+ "differ in length");
+		return new DefinitionNode(name, null, attributeNames.clone(),
+				attributeValues.clone(), children.clone());
+	}
+
+	/**
+	 * Creates a new text node.
+	 */
+	public static DefinitionNode newText(String text){
+		return new DefinitionNode(TEXT, text, NO_STRINGS, NO_STRINGS, NO_NODES);
+	}
+
+	/**
+	 * Copies the elements, attributes, and text of a DOM tree. Comments
+	 * and processing instructions are dropped, CDATA is copied as text, and
+	 * adjacent text is merged.
+	 *
+	 * @param node The node to copy.
+	 * @return An immutable copy or null if the node type is not supported.
+	 */
+	public static DefinitionNode copyOf(Node node){
+		switch(node.getNodeType()){
+		case Node.ELEMENT_NODE:
+			NamedNodeMap attrs = node.getAttributes();
+			int attrCount = (attrs != null)? attrs.getLength(): 0;
+			String[] names = new String[attrCount];
+			String[] values = new String[attrCount];
+			for(int i = 0; i < attrCount; i++){
+				Node attr = attrs.item(i);
+				names[i] = attr.getNodeName();
+				values[i] = attr.getNodeValue();
+			}
+			NodeList nl = node.getChildNodes();
+			List<DefinitionNode> children = new ArrayList<DefinitionNode>(
+					nl.getLength());
+			// adjacent text is merged into a single node
+			StringBuilder text = null;
+			for(int i = 0; i < nl.getLength(); i++){
+				DefinitionNode child = copyOf(nl.item(i));
+				if(child == null)
+					continue;
+				if(child.isText()){
+					if(text == null)
+						text = new StringBuilder();
+					text.append(child.text);
+					continue;
+				}
+				if(text != null){
+					children.add(newText(text.toString()));
+					text = null;
+				}
+				children.add(child);
+			}
+			if(text != null)
+				children.add(newText(text.toString()));
+			return new DefinitionNode(node.getNodeName(), null, names, values,
+					children.toArray(new DefinitionNode[children.size()]));
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			return newText(node.getNodeValue());
+		default:
+			return null;
+		}
+	}
+
+	/** @return true if this node is a run of text. */
+	public boolean isText(){
+		return text != null;
+	}
+
+	/** @return The element name or {@link #TEXT} for a text node. */
+	public String getName(){
+		return name;
+	}
+
+	/** @return The text of a text node or null for an element. */
+	public String getText(){
+		return text;
+	}
+
+	/** @return The number of attributes. */
+	public int getAttributeCount(){
+		return attributeNames.length;
+	}
+
+	/** @return The name of the attribute at an index. */
+	public String getAttributeName(int index){
+		return attributeNames[index];
+	}
+
+	/** @return The value of the attribute at an index. */
+	public String getAttributeValue(int index){
+		return attributeValues[index];
+	}
+
+	/**
+	 * Returns the value of an attribute.
+	 *
+	 * @param name The attribute name.
+	 * @return The value or null if the attribute is not present.
+	 */
+	public String getAttribute(String name){
+		return getAttribute(name, null);
+	}
+
+	/**
+	 * Returns the value of an attribute.
+	 *
+	 * @param name The attribute name.
+	 * @param defaultValue The value returned if the attribute is not present.
+	 * @return The value or the default.
+	 */
+	public String getAttribute(String name, String defaultValue){
+		for(int i = 0; i < attributeNames.length; i++){
+			if(attributeNames[i].equals(name))
+				return attributeValues[i];
+		}
+		return defaultValue;
+	}
+
+	/** @return The number of child nodes, including text. */
+	public int getChildCount(){
+		return children.length;
+	}
+
+	/** @return The child node at an index. */
+	public DefinitionNode getChild(int index){
+		return children[index];
+	}
+
+	/** @return The child elements in document order, without any text. */
+	public List<DefinitionNode> getElements(){
+		return elements;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(this == o)
+			return true;
+		if(!(o instanceof DefinitionNode))
+			return false;
+		DefinitionNode other = (DefinitionNode) o;
+		if(!name.equals(other.name) || !equals(text, other.text))
+			return false;
+		if(attributeNames.length != other.attributeNames.length)
+			return false;
+		// attribute order is not significant
+		for(int i = 0; i < attributeNames.length; i++){
+			if(!attributeValues[i].equals(other.getAttribute(attributeNames[i])))
+				return false;
+		}
+		return Arrays.equals(children, other.children);
+	}
+
+	@Override
+	public int hashCode(){
+		int hash = name.hashCode();
+		if(text != null)
+			hash = 31 * hash + text.hashCode();
+		return 31 * hash + Arrays.hashCode(children);
+	}
+
+	@Override
+	public String toString(){
+		return (isText())? "[" + name + ": " + text + "]"
+				: "[" + name + ": null]";
+	}
+
+	static boolean equals(String a, String b){
+		return (a == null)? b == null: a.equals(b);
+	}
+}
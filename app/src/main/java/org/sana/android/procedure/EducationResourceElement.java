@@ -13,7 +13,6 @@ import org.sana.android.media.EducationResourceParser;
 import org.sana.android.media.EducationResource.Audience;
 import org.sana.android.util.SanaUtil;
 
-import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -137,10 +136,10 @@ public class EducationResourceElement extends ProcedureElement implements
      * @param node The source xml node. 
      * @return A new element.
      * @throws ProcedureParseException if there was an error parsing additional 
-     * 			information from the Node.
+     * 			information from the node.
      */
     public static EducationResourceElement fromXML(String id, String question, 
-    	String answer, String concept, String figure, String audio, Node node)
+    	String answer, String concept, String figure, String audio, DefinitionNode node)
 		throws ProcedureParseException  
     {
         return new EducationResourceElement(id, question, answer, concept, 
@@ -1,7 +1,6 @@
 package org.sana.android.procedure;
 
 import org.sana.R;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.location.Location;
@@ -136,9 +135,9 @@ public class GpsElement extends ProcedureElement implements OnClickListener {
         setAnswer("Coordinates not acquired.");
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static GpsElement fromXML(String id, String question, String answer, 
-    		String concept, String figure, String audio, Node node) 
+    		String concept, String figure, String audio, DefinitionNode node) 
     {
         return new GpsElement(id, question, answer, concept, figure, audio);
     }
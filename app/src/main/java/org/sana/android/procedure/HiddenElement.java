@@ -4,7 +4,6 @@ import java.net.URISyntaxException;
 
 import org.sana.android.content.core.ObservationWrapper;
 import org.sana.android.provider.Observations;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.content.Intent;
@@ -70,9 +69,9 @@ public class HiddenElement extends ProcedureElement {
         super(id, question, answer, concept, figure, audio);
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static HiddenElement fromXML(String id, String question, String answer,
-    	String concept, String figure, String audio, Node node)    
+    	String concept, String figure, String audio, DefinitionNode node)    
 		throws ProcedureParseException 
     {
     	HiddenElement el = new HiddenElement(id, question, answer, concept, figure, audio);
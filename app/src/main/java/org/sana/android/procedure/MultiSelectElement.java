@@ -5,8 +5,6 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 
-import org.sana.android.util.SanaUtil;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.text.TextUtils;
@@ -128,14 +126,14 @@ public class MultiSelectElement extends SelectionElement {
 
     /** @see SelectionElement#fromXML(String, String, String, String, String,
      * String,
-     *  Node) */
+     *  DefinitionNode) */
     public static MultiSelectElement fromXML(String id, String question, 
-    	String answer, String concept, String figure, String audio, Node node) 
+    	String answer, String concept, String figure, String audio, DefinitionNode node) 
 		throws ProcedureParseException  
     {
-        String choicesStr = SanaUtil.getNodeAttributeOrDefault(node, "choices",
+        String choicesStr = node.getAttribute("choices",
         		"");
-        String valuesStr = SanaUtil.getNodeAttributeOrDefault(node, "values",
+        String valuesStr = node.getAttribute("values",
                 choicesStr);
         return new MultiSelectElement(id, question, answer, concept, figure, 
         		audio, choicesStr.split(SelectionElement.TOKEN_DELIMITER),
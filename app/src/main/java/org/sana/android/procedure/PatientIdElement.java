@@ -1,7 +1,6 @@
 package org.sana.android.procedure;
 
 import org.sana.R;
-import org.w3c.dom.Node;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -120,9 +119,9 @@ public class PatientIdElement extends ProcedureElement implements
         super(id, question, answer, concept, figure, audio);
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static PatientIdElement fromXML(String id, String question, 
-    		String answer, String concept, String figure, String audio, Node n) 
+    		String answer, String concept, String figure, String audio, DefinitionNode n) 
 			throws ProcedureParseException 
     {
         return new PatientIdElement(id, question, answer, concept, figure, audio);
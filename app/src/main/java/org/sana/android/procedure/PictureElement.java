@@ -9,7 +9,6 @@ import org.sana.android.ScalingImageAdapter;
 import org.sana.android.db.SanaDB;
 import org.sana.android.db.SanaDB.ImageSQLFormat;
 import org.sana.util.UUIDUtil;
-import org.w3c.dom.Node;
 
 import android.app.Activity;
 import android.content.ContentUris;
@@ -82,7 +81,8 @@ public class PictureElement extends ProcedureElement implements OnClickListener,
 
 		Cursor cursor = c.getContentResolver().query(
 				SanaDB.ImageSQLFormat.CONTENT_URI,
-				new String[] { ImageSQLFormat._ID }, whereStr,
+				new String[] { ImageSQLFormat._ID, 
+						ImageSQLFormat.MODIFIED_DATE }, whereStr,
 				new String[] { procedureId, id, "1" }, null);
 
 		// HAXMODE -- if we don't do this we leak the Cursor
@@ -258,10 +258,10 @@ public class PictureElement extends ProcedureElement implements OnClickListener,
         super(id, question, answer, concept, figure, audio);
     }
 
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static PictureElement fromXML(String id, String question,
     		String answer, String concept, String figure, String audio,
-    		Node node) throws ProcedureParseException
+    		DefinitionNode node) throws ProcedureParseException
     {
     	return new PictureElement(id, question, answer, concept, figure, audio);
     }
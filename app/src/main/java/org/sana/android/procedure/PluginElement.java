@@ -10,7 +10,6 @@ import org.sana.android.db.ModelWrapper;
 import org.sana.android.db.SanaDB.BinarySQLFormat;
 import org.sana.android.provider.Observations;
 import org.sana.android.service.PluginService;
-import org.w3c.dom.Node;
 
 import android.app.Activity;
 import android.content.ContentUris;
@@ -264,13 +263,12 @@ public class PluginElement extends ProcedureElement implements
         sb.append("\" mimeType=\"" + getMimeType());
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
      public static PluginElement fromXML(String id, String question, 
     		String answer, String concept, String figure, String audio, 
-    		Node node) throws ProcedureParseException  
+    		DefinitionNode node) throws ProcedureParseException  
     {
-        String controlStr = node.getAttributes().getNamedItem("action")
-        				.getNodeValue();
+        String controlStr = node.getAttribute("action");
         if(TextUtils.isEmpty(controlStr))
         	throw new ProcedureParseException("Invalid contol string: NULL");
         String[] control = controlStr.split(DELIMITER);
@@ -280,8 +278,7 @@ public class PluginElement extends ProcedureElement implements
         	String[] param = control[i].split("=");
         	params.putString(param[0], param[1]);
         }
-        String mimeType = node.getAttributes().getNamedItem("mimeType")
-        				.getNodeValue();
+        String mimeType = node.getAttribute("mimeType");
     	return new PluginElement(id, question, answer, concept, figure, audio,
     			action,params,mimeType);
     }
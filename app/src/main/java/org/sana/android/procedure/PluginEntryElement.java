@@ -1,7 +1,5 @@
 package org.sana.android.procedure;
 
-import org.w3c.dom.Node;
-
 import android.content.Context;
 import android.util.Log;
 import android.view.View;
@@ -48,15 +46,13 @@ public class PluginEntryElement extends PluginElement {
 	
 	
 	
-	/** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+	/** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static PluginEntryElement fromXML(String id, String question, 
-    	String answer, String concept, String figure, String audio, Node node)  
+    	String answer, String concept, String figure, String audio, DefinitionNode node)  
 		throws ProcedureParseException  
     {
-        String action = node.getAttributes().getNamedItem("action")
-        				.getNodeValue();
-        String pkg = node.getAttributes().getNamedItem("mimeType")
-						.getNodeValue();
+        String action = node.getAttribute("action");
+        String pkg = node.getAttribute("mimeType");
     	return new PluginEntryElement(id, question, answer, concept, figure, 
     			audio, action,pkg);
     }
@@ -6,27 +6,23 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.sana.R;
 import org.sana.android.Constants;
 import org.sana.android.db.PatientInfo;
 import org.sana.android.db.PatientValidator;
+import org.sana.android.procedure.branching.VisibilityIndex;
 
 import org.sana.android.util.EnvironmentUtil;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.Context;
 import android.net.Uri;
@@ -59,6 +55,7 @@ public class Procedure {
     private ProcedurePage currentPage;
     private ViewAnimator viewAnimator;
     private PatientInfo patientInfo = null;
+    private VisibilityIndex visibility;
 
     private String version = "1.0";
     /**
@@ -84,6 +81,7 @@ public class Procedure {
         this.title = title;
         this.author = author;
         this.guid = guid;
+        visibility = new VisibilityIndex(this.pages);
         pagesIterator = pages.listIterator();
         
         next();
@@ -215,15 +213,12 @@ public class Procedure {
      * 				visible
      */
     public boolean hasNextShowable() {
+        onAnswersChanged();
         if(pagesIterator == null)
             return false;
         if (!pagesIterator.hasNext())
             return false;
-        for (int i = pagesIterator.nextIndex(); i < pages.size(); i++) {
-            if (pages.get(i).shouldDisplay())
-                return true;
-        }
-        return false;
+        return visibility.nextVisible(pagesIterator.nextIndex()) >= 0;
     }
     
     /**
@@ -234,17 +229,14 @@ public class Procedure {
      * 				visible
      */
     public boolean hasPrevShowable() {
+        onAnswersChanged();
         if (pagesIterator == null)
             return false;
         if (!pagesIterator.hasPrevious())
             return false;
         if (pagesIterator.previousIndex() == 0)
         	return false;
-        for (int i = pagesIterator.previousIndex(); i >= 0; i--) {
-            if (pages.get(i).shouldDisplay())
-                return true;
-        }
-        return false;
+        return visibility.previousVisible(pagesIterator.previousIndex()) >= 0;
     }
             
     /**
@@ -257,7 +249,8 @@ public class Procedure {
             return;
         ProcedurePage pp = pagesIterator.next();
         viewAnimator.showNext();
-        while (hasNext() && !pp.shouldDisplay()) {
+        while (hasNext() && 
+        		!visibility.isVisible(pagesIterator.previousIndex())) {
             pp = pagesIterator.next();
             viewAnimator.showNext();
         }
@@ -265,6 +258,7 @@ public class Procedure {
         
         // Fill in default values for data from patient in the database
 		PatientValidator.populateSpecialElements(this, patientInfo);
+		onAnswersChanged();
     }
    
     public ProcedurePage advanceNext() {
@@ -274,6 +268,7 @@ public class Procedure {
         viewAnimator.showNext();
         // Fill in default values for data from patient in the database
 		PatientValidator.populateSpecialElements(this, patientInfo);
+		onAnswersChanged();
 		return currentPage;
     }
     
@@ -284,6 +279,7 @@ public class Procedure {
         viewAnimator.showPrevious();
         // Fill in default values for data from patient in the database
 		PatientValidator.populateSpecialElements(this, patientInfo);
+		onAnswersChanged();
 		return currentPage;
     }
     /**
@@ -342,25 +338,15 @@ public class Procedure {
     	if (pageIndex < 0 || pageIndex >= pages.size())
     		return;
     	
-    	pagesIterator = pages.listIterator();
-    	int visibleIndex = 0;
-    	int actualIndex = 0;
-    	while (pagesIterator.hasNext()) {
-    		ProcedurePage page = pagesIterator.next();
-    		
-    		if (visibleIndex == pageIndex) {
-    			currentPage = page;
-    	        viewAnimator.setInAnimation(null);
-    	        viewAnimator.setOutAnimation(null);
-    	        viewAnimator.setDisplayedChild(actualIndex);
-    	        break;
-    		}
-    		
-    		if (page.shouldDisplay()) {
-    			visibleIndex++;
-    		}
-    		actualIndex++;
-    	}
+    	onAnswersChanged();
+    	int actualIndex = visibility.indexOfVisible(pageIndex);
+    	if (actualIndex < 0)
+    		return;
+    	pagesIterator = pages.listIterator(actualIndex);
+    	currentPage = pagesIterator.next();
+    	viewAnimator.setInAnimation(null);
+    	viewAnimator.setOutAnimation(null);
+    	viewAnimator.setDisplayedChild(actualIndex);
     }
     
     /**
@@ -379,18 +365,8 @@ public class Procedure {
      * @return The index value of the current page if visible else 0.
      */
     public int getCurrentVisibleIndex() {
-    	Iterator<ProcedurePage> pageIterator = pages.iterator();
-    	int visibleIndex = 0;
-    	while (pageIterator.hasNext()) {
-    		ProcedurePage page = pageIterator.next();
-    		if (page == currentPage) {
-    			return visibleIndex;
-    		}
-    		if (page.shouldDisplay()) {
-    			visibleIndex++;
-    		}
-    	}
-    	return 0;
+    	int index = pages.indexOf(currentPage);
+    	return (index < 0)? 0: visibility.countVisibleBefore(index);
     }
 
     /**
@@ -407,15 +383,7 @@ public class Procedure {
      * @return The total number of pages 
      */
     public int getVisiblePageCount() {
-    	Iterator<ProcedurePage> pageIterator = pages.iterator();
-    	int visibleCount = 0;
-    	while (pageIterator.hasNext()) {
-    		ProcedurePage page = pageIterator.next();
-    		if (page.shouldDisplay()) {
-    			visibleCount++;
-    		}
-    	}
-    	return visibleCount;
+    	return visibility.getVisibleCount();
     }
     
     /**
@@ -510,6 +478,33 @@ public class Procedure {
         return answers;
     }
     
+    /**
+     * A map of the 'id' to 'answer' attributes for the data collection points
+     * whose answer has changed since {@link #markAnswersSaved()} was last 
+     * called.
+     * 
+     * @return The changed answers mapped to their element ids
+     */
+    public Map<String, String> getChangedAnswers() {
+        HashMap<String,String> answers = new HashMap<String,String>(); 
+        for(ProcedurePage pp : pages) {
+        	pp.populateChangedAnswers(answers);
+        }
+        if(!answers.isEmpty())
+        	onAnswersChanged();
+        return answers;
+    }
+    
+    /**
+     * Records the current answers of all elements as saved so that only 
+     * later changes are returned by {@link #getChangedAnswers()}.
+     */
+    public void markAnswersSaved() {
+        for(ProcedurePage pp : pages) {
+        	pp.markAnswersSaved();
+        }
+    }
+    
     /**
      * Takes a map of answers and fills them into the elements of this 
      * procedure. Functionally, this is used to return a prior patient encounter
@@ -521,6 +516,18 @@ public class Procedure {
     	for (ProcedurePage pp : pages) {
     		pp.restoreAnswers(answersMap);
     	}
+    	onAnswersChanged();
+    }
+    
+    /**
+     * Marks the visibility of the pages as needing to be evaluated again. 
+     * Answers may change without a call to setAnswer, through the widgets of
+     * the current page, so this is called whenever the user acts on the 
+     * current page as well as when answers are restored or filled in. The
+     * pages are evaluated once, when next queried, rather than on every call.
+     */
+    public void onAnswersChanged() {
+    	visibility.invalidate();
     }
     
     /**
@@ -538,56 +545,53 @@ public class Procedure {
         return answers;
     }
     
-    // Constructs a Procedure object from xml text
-    private static Procedure fromXML(Node node) throws ProcedureParseException {
+    // Constructs a Procedure object from a compiled definition
+    private static Procedure fromXML(DefinitionNode node) throws ProcedureParseException {
         
-        if(!node.getNodeName().equals("Procedure")) {
+        if(!node.getName().equals("Procedure")) {
             throw new ProcedureParseException("Procedure got NodeName" 
-            		+ node.getNodeName());
+            		+ node.getName());
         }        
         
         List<ProcedurePage> pages = new ArrayList<ProcedurePage>();
-        NodeList nl = node.getChildNodes();
         ProcedurePage page;
         HashMap<String, ProcedureElement> elts = 
         							new HashMap<String, ProcedureElement>();
-        for(int i=0; i<nl.getLength(); i++) {
-            Node child = nl.item(i);
-            if(child.getNodeName().equals("Page")) {
+        for(DefinitionNode child:node.getElements()) {
+            if(child.getName().equals("Page")) {
                 page = ProcedurePage.fromXML(child, elts);
                 elts.putAll(page.getElementMap());
                 pages.add(page);
             }
         }
         String title = "Untitled Procedure";
-        Node titleNode = node.getAttributes().getNamedItem("title");
-        
-        if(titleNode != null) {
-        	title = titleNode.getNodeValue();
+        String titleAttr = node.getAttribute("title");
+        if(titleAttr != null) {
+        	title = titleAttr;
             Log.i(TAG, "Loading Procedure from XML: " + title);
             
         }
         
         String author = "";
-        Node authorNode = node.getAttributes().getNamedItem("author");
-        if(authorNode != null) {
-        	author = authorNode.getNodeValue();
+        String authorAttr = node.getAttribute("author");
+        if(authorAttr != null) {
+        	author = authorAttr;
             Log.i(TAG, "Author of this procedure: " + author);
             
         }
         
         String uuid = "";
-        Node guidNode = node.getAttributes().getNamedItem("uuid");
-        if(guidNode != null) {
-        	uuid = guidNode.getNodeValue();
+        String guidAttr = node.getAttribute("uuid");
+        if(guidAttr != null) {
+        	uuid = guidAttr;
             Log.i(TAG, "Unique Id of procedure: " + uuid);
             
         }
         
         String version = "";
-        Node n = node.getAttributes().getNamedItem("version");
-        if(n != null) {
-        	version = n.getNodeValue();
+        String versionAttr = node.getAttribute("version");
+        if(versionAttr != null) {
+        	version = versionAttr;
             Log.i(TAG, "Version: " + version);
             
         }
@@ -646,27 +650,7 @@ public class Procedure {
     	
     	long processingTime = System.currentTimeMillis();
     	
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setValidating(false);
-        dbf.setIgnoringComments(true);
-        dbf.setIgnoringElementContentWhitespace(true);
-        dbf.setNamespaceAware(false);
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document d = db.parse(xml);
-        
-        NodeList children = d.getChildNodes();
-        Node procedureNode = null;
-        for(int i=0; i<children.getLength(); i++) {
-            Node child = d.getChildNodes().item(i);
-            if(child.getNodeName().equals("Procedure")) {
-                procedureNode = child;
-                break;
-            }
-        }
-        if(procedureNode == null) {
-            throw new ProcedureParseException("Can't get procedure");
-        }
-        Procedure result = fromXML(procedureNode);
+        Procedure result = fromDefinition(compile(xml));
         
         processingTime = System.currentTimeMillis() - processingTime;
         Log.i(TAG, "Parsing procedure XML took " + processingTime + " milliseconds.");
@@ -674,6 +658,44 @@ public class Procedure {
         return result;
     }
     
+    /**
+     * Constructs a new Procedure from a compiled definition without parsing
+     * the xml text.
+     * @param definition The compiled definition.
+     * @return A new Procedure instance.
+     * @throws ProcedureParseException
+     */
+    public static Procedure fromDefinition(ProcedureDefinition definition) 
+    	throws ProcedureParseException 
+    {
+    	return fromXML(definition.getRoot());
+    }
+    
+    /**
+     * Parses and compiles a procedure definition from an InputSource in a 
+     * single pass without building a DOM Document.
+     * @param xml The InputSource to read.
+     * @return A new compiled definition.
+     * @throws IOException
+     * @throws ParserConfigurationException
+     * @throws SAXException if the xml is not well formed
+     * @throws ProcedureParseException
+     */
+    public static ProcedureDefinition compile(InputSource xml) throws 
+    	IOException, ParserConfigurationException, SAXException, 
+    	ProcedureParseException
+    {
+    	try {
+    		if(xml.getCharacterStream() != null)
+    			return ProcedureParser.parse(xml.getCharacterStream());
+    		else
+    			return ProcedureParser.parse(xml.getByteStream(), 
+    					xml.getEncoding());
+    	} catch (XmlPullParserException e) {
+    		throw new SAXException(e);
+    	}
+    }
+    
 	// creates the views for this object and indirectly all of its child pages 
     private View createView(Context c) {
         viewAnimator = new ViewAnimator(c);
@@ -720,8 +742,10 @@ public class Procedure {
      */
     public ArrayList<String> toStringArray() {
         ArrayList<String> stringList= new ArrayList<String>();
+        onAnswersChanged();
+        int index = 0;
         for (ProcedurePage cp : pages) {
-        	if(cp.shouldDisplay()) {
+        	if(visibility.isVisible(index++)) {
         		stringList.add(cp.getSummary());
         	}
         }
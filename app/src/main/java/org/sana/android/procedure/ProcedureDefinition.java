@@ -0,0 +1,199 @@
+package org.sana.android.procedure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Node;
+
+/**
+ * A compiled, immutable procedure definition. The definition holds an
+ * immutable copy of the procedure xml tree from which new {@link Procedure}
+ * instances may be created without parsing the xml text again. Definitions
+ * can be written to and read from a compact binary form where each distinct
+ * string is stored once.
+ *
+ * @author Sana Development
+ *
+ */
+public final class ProcedureDefinition {
+
+	/** Version of the binary format. Bump when the format changes. */
+	static final int FORMAT_VERSION = 1;
+
+	private static final byte ELEMENT = 1;
+	private static final byte TEXT = 2;
+
+	private final DefinitionNode root;
+	private final String uuid;
+	private final String version;
+
+	ProcedureDefinition(DefinitionNode root){
+		if(root == null || !"Procedure".equals(root.getName()))
+			throw new IllegalArgumentException("Not a Procedure node");
+		this.root = root;
+		this.uuid = root.getAttribute("uuid");
+		this.version = root.getAttribute("version");
+	}
+
+	/**
+	 * Compiles a definition from the Procedure node of a parsed xml document.
+	 *
+	 * @param procedureNode the Procedure element.
+	 * @return A new definition.
+	 */
+	public static ProcedureDefinition compile(Node procedureNode){
+		return new ProcedureDefinition(DefinitionNode.copyOf(procedureNode));
+	}
+
+	/** @return The value of the uuid attribute or null. */
+	public String getUuid(){
+		return uuid;
+	}
+
+	/** @return The value of the version attribute or null. */
+	public String getVersion(){
+		return version;
+	}
+
+	/** @return The Procedure element. */
+	public DefinitionNode getRoot(){
+		return root;
+	}
+
+	/**
+	 * Creates a new, runnable Procedure from this definition.
+	 *
+	 * @return A new Procedure instance.
+	 * @throws ProcedureParseException if the definition is not a valid
+	 * 		procedure.
+	 */
+	public Procedure newInstance() throws ProcedureParseException {
+		return Procedure.fromDefinition(this);
+	}
+
+	/**
+	 * Writes this definition in its binary form.
+	 *
+	 * @param out The output to write to.
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		Map<String,Integer> strings = new HashMap<String,Integer>();
+		List<String> table = new ArrayList<String>();
+		collect(root, strings, table);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(table.size());
+		for(String s:table)
+			writeString(out, s);
+		write(out, root, strings);
+	}
+
+	/**
+	 * Reads a definition previously written with {@link #writeTo(DataOutput)}.
+	 *
+	 * @param in The input to read from.
+	 * @return A new definition.
+	 * @throws IOException if the data is unreadable or from a different
+	 * 		format version.
+	 */
+	public static ProcedureDefinition readFrom(DataInput in) throws IOException {
+		int format = in.readInt();
+		if(format != FORMAT_VERSION)
+			throw new IOException("Unsupported definition format: " + format);
+		int size = in.readInt();
+		String[] table = new String[size];
+		for(int i = 0; i < size; i++)
+			table[i] = readString(in);
+		DefinitionNode root = read(in, table);
+		try{
+			return new ProcedureDefinition(root);
+		} catch (IllegalArgumentException e){
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	private static void collect(DefinitionNode node, Map<String,Integer> strings,
+			List<String> table)
+	{
+		intern(node.getName(), strings, table);
+		intern(node.getText(), strings, table);
+		for(int i = 0; i < node.getAttributeCount(); i++){
+			intern(node.getAttributeName(i), strings, table);
+			intern(node.getAttributeValue(i), strings, table);
+		}
+		for(int i = 0; i < node.getChildCount(); i++)
+			collect(node.getChild(i), strings, table);
+	}
+
+	private static void intern(String s, Map<String,Integer> strings,
+			List<String> table)
+	{
+		if(s != null && !strings.containsKey(s)){
+			strings.put(s, table.size());
+			table.add(s);
+		}
+	}
+
+	private static void write(DataOutput out, DefinitionNode node,
+			Map<String,Integer> strings) throws IOException
+	{
+		if(node.isText()){
+			out.writeByte(TEXT);
+			out.writeInt(strings.get(node.getText()));
+			return;
+		}
+		out.writeByte(ELEMENT);
+		out.writeInt(strings.get(node.getName()));
+		out.writeInt(node.getAttributeCount());
+		for(int i = 0; i < node.getAttributeCount(); i++){
+			out.writeInt(strings.get(node.getAttributeName(i)));
+			out.writeInt(strings.get(node.getAttributeValue(i)));
+		}
+		out.writeInt(node.getChildCount());
+		for(int i = 0; i < node.getChildCount(); i++)
+			write(out, node.getChild(i), strings);
+	}
+
+	private static DefinitionNode read(DataInput in, String[] table)
+			throws IOException
+	{
+		byte type = in.readByte();
+		switch(type){
+		case TEXT:
+			return DefinitionNode.newText(table[in.readInt()]);
+		case ELEMENT:
+			String name = table[in.readInt()];
+			String[] names = new String[in.readInt()];
+			String[] values = new String[names.length];
+			for(int i = 0; i < names.length; i++){
+				names[i] = table[in.readInt()];
+				values[i] = table[in.readInt()];
+			}
+			DefinitionNode[] children = new DefinitionNode[in.readInt()];
+			for(int i = 0; i < children.length; i++)
+				children[i] = read(in, table);
+			return DefinitionNode.newElement(name, names, values, children);
+		default:
+			throw new IOException("Invalid node type: " + type);
+		}
+	}
+
+	// Strings are written as a length and UTF-8 bytes since writeUTF is
+	// limited to 64K
+	private static void writeString(DataOutput out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
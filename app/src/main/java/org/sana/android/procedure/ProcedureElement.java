@@ -7,8 +7,6 @@ import org.sana.android.activity.BaseRunner;
 import org.sana.android.activity.ProcedureRunner;
 import org.sana.android.media.AudioPlayer;
 import org.sana.android.media.EducationResource;
-import org.sana.android.util.SanaUtil;
-import org.w3c.dom.Node;
 
 import com.google.gson.Gson;
 
@@ -125,6 +123,9 @@ public abstract class ProcedureElement {
     protected String id;
     protected String question;
     protected String answer;
+    // The answer when last saved
+    private String savedAnswer = null;
+    private boolean answerSaved = false;
     protected String concept;
     protected String action = null;
     
@@ -244,6 +245,30 @@ public abstract class ProcedureElement {
     	this.answer = answer;
     }
     
+    /**
+     * Whether the answer has changed since {@link #markAnswerSaved()} was last
+     * called. Elements which have never been saved are always changed. The
+     * current answer is compared to the saved value rather than flagged in
+     * setAnswer since most elements read their answer from the widgets.
+     * 
+     * @return true if the answer needs to be saved.
+     */
+    public boolean isAnswerChanged(){
+    	if(!answerSaved)
+    		return true;
+    	String current = getAnswer();
+    	return (savedAnswer == null)? current != null: 
+    		!savedAnswer.equals(current);
+    }
+    
+    /**
+     * Records the current answer as the saved value.
+     */
+    public void markAnswerSaved(){
+    	savedAnswer = getAnswer();
+    	answerSaved = true;
+    }
+    
     /**
      * Whether this element is considered required
      * @return
@@ -342,32 +367,27 @@ public abstract class ProcedureElement {
     
     /**
      * Create an element from an XML element node of a procedure definition.
-     * @param node a Node object containing a ProcedureElement representation
+     * @param node a definition node containing a ProcedureElement representation
      */
-    public static ProcedureElement createElementfromXML(Node node) throws 
+    public static ProcedureElement createElementfromXML(DefinitionNode node) throws 
     	ProcedureParseException 
     {
-        //Log.i(TAG, "fromXML(" + node.getNodeName() + ")");
+        //Log.i(TAG, "fromXML(" + node.getName() + ")");
         
-        if(!node.getNodeName().equals("Element")) {
+        if(!node.getName().equals("Element")) {
             throw new ProcedureParseException("Element got NodeName " 
-            		+ node.getNodeName());
+            		+ node.getName());
         }
 
-        String questionStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"question", "");
-        String answerStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"answer", null);
-        String typeStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"type", "INVALID");
-        String conceptStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"concept", "");
-        String idStr = SanaUtil.getNodeAttributeOrFail(node, "id", 
-        		new ProcedureParseException("Element doesn't have id number"));
-        String figureStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"figure", "");
-        String audioStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"audio", "");
+        String questionStr = node.getAttribute("question", "");
+        String answerStr = node.getAttribute("answer", null);
+        String typeStr = node.getAttribute("type", "INVALID");
+        String conceptStr = node.getAttribute("concept", "");
+        String idStr = node.getAttribute("id");
+        if(idStr == null)
+        	throw new ProcedureParseException("Element doesn't have id number");
+        String figureStr = node.getAttribute("figure", "");
+        String audioStr = node.getAttribute("audio", "");
         
         ElementType etype = ElementType.valueOf(typeStr);
         
@@ -445,12 +465,10 @@ public abstract class ProcedureElement {
         			+ idStr);
         }
         
-        String helpStr = SanaUtil.getNodeAttributeOrDefault(node, "helpText",
-        		"");
+        String helpStr = node.getAttribute("helpText", "");
         el.setHelpText(helpStr);
         
-        String requiredStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"required", "false");
+        String requiredStr = node.getAttribute("required", "false");
         if ("true".equals(requiredStr)) {
         	el.setRequired(true);
         } else if ("false".equals(requiredStr)) {
@@ -464,9 +482,10 @@ public abstract class ProcedureElement {
         return el;
     }
     
-    public static void parseOptionalAttributes(Node node, ProcedureElement el){
-    	String actionStr = SanaUtil.getNodeAttributeOrDefault(node, 
-        		"action", "");
+    public static void parseOptionalAttributes(DefinitionNode node,
+    		ProcedureElement el)
+    {
+    	String actionStr = node.getAttribute("action", "");
         if(!TextUtils.isEmpty(actionStr))
         	el.action = actionStr;
     }
@@ -721,14 +740,14 @@ public abstract class ProcedureElement {
      * @param concept A required categorization of the type of data captured.
      * @param figure An optional figure to display to the user.
      * @param audio An optional audio prompt to play for the user. 
-     * @param node The source xml node. 
+     * @param node The source definition node. 
      * @return A new element.
      * @throws ProcedureParseException if an error occurred while parsing 
      * 		additional information from the Node
      */
     public static ProcedureElement fromXML(String id, String question, 
-    	String answer, String concept, String figure, String audio, Node node) 
-    	throws ProcedureParseException 
+    	String answer, String concept, String figure, String audio,
+    	DefinitionNode node) throws ProcedureParseException 
     {
     	throw new UnsupportedOperationException();
     }
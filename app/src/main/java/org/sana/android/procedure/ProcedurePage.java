@@ -14,8 +14,6 @@ import org.sana.android.media.EducationResource;
 import org.sana.android.media.EducationResource.Audience;
 import org.sana.android.procedure.ProcedureElement.ElementType;
 import org.sana.android.procedure.branching.Criteria;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import android.content.Context;
 import android.content.Intent;
@@ -275,6 +273,13 @@ public class ProcedurePage {
 		return criteria.criteriaMet();
 	}
 
+	/**
+	 * Returns the criteria which determine whether this page is displayed.
+	 */
+	public Criteria getCriteria() {
+		return criteria;
+	}
+
 	public boolean displayForeground(){
 		boolean show = false;
 		for(ProcedureElement el: elements){
@@ -443,6 +448,27 @@ public class ProcedurePage {
 		}
 	}
 
+	/**
+	 * Adds the answers of the child elements which have changed since they
+	 * were last saved.
+	 * @param answers The map to add changed answers to.
+	 */
+	public void populateChangedAnswers(Map<String,String> answers) {
+		for(ProcedureElement s : elements) {
+			if(s.isAnswerChanged())
+				answers.put(s.getId(), s.getAnswer());
+		}
+	}
+
+	/**
+	 * Records the current answer of each child element as saved.
+	 */
+	public void markAnswersSaved() {
+		for(ProcedureElement s : elements) {
+			s.markAnswerSaved();
+		}
+	}
+
 	/**
      * Produces a new map of element properties to their ids. 
      * 
@@ -496,23 +522,21 @@ public class ProcedurePage {
 	/**
 	 * Create a ProcedurePage from a node in an XML procedure description.
 	 */
-	public static ProcedurePage fromXML(Node node,
+	public static ProcedurePage fromXML(DefinitionNode node,
 		HashMap<String, ProcedureElement> elts) throws ProcedureParseException 
 	{
 		//Log.i(TAG, "ProcedurePage.fromXML(" + node.toString() + ")");
-		if (!node.getNodeName().equals("Page")) {
+		if (!node.getName().equals("Page")) {
 			throw new ProcedureParseException("ProcedurePage got NodeName "
-					+ node.getNodeName());
+					+ node.getName());
 		}
 		List<ProcedureElement> elements = new ArrayList<ProcedureElement>();
 		Criteria criteria = new Criteria();
-		NodeList children = node.getChildNodes();
 		boolean showIfAlreadyExists = false;
-		for (int i = 0; i < children.getLength(); i++) {
-			Node child = children.item(i);
-			if (child.getNodeName().equals("Element")) {
+		for (DefinitionNode child : node.getElements()) {
+			if (child.getName().equals("Element")) {
 				elements.add(ProcedureElement.createElementfromXML(child));
-			} else if (child.getNodeName().equals("ShowIf")) {
+			} else if (child.getName().equals("ShowIf")) {
 				//Log.i(TAG, "Page has ShowIf - creating Criteria");
 				if (showIfAlreadyExists)
 					throw new ProcedureParseException(
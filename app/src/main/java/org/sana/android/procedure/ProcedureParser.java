@@ -0,0 +1,155 @@
+package org.sana.android.procedure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Single pass parser which builds a compiled {@link ProcedureDefinition}
+ * directly from procedure xml using an {@link org.xmlpull.v1.XmlPullParser
+ * XmlPullParser} rather than first building a DOM Document. The resulting
+ * tree is equivalent to compiling the Procedure node of a DOM parse with
+ * comments ignored.
+ *
+ * @author Sana Development
+ *
+ */
+public class ProcedureParser {
+
+	private static final DefinitionNode[] EMPTY = new DefinitionNode[0];
+
+	// An element which has been opened but not yet closed
+	static final class Pending{
+		final String name;
+		final String[] attributeNames;
+		final String[] attributeValues;
+		final List<DefinitionNode> children = new ArrayList<DefinitionNode>();
+		StringBuilder text = null;
+
+		Pending(XmlPullParser parser){
+			name = parser.getName();
+			int count = parser.getAttributeCount();
+			attributeNames = new String[count];
+			attributeValues = new String[count];
+			for(int i = 0; i < count; i++){
+				attributeNames[i] = parser.getAttributeName(i);
+				attributeValues[i] = parser.getAttributeValue(i);
+			}
+		}
+
+		void appendText(String value){
+			if(text == null)
+				text = new StringBuilder();
+			text.append(value);
+		}
+
+		void flushText(){
+			if(text != null){
+				children.add(DefinitionNode.newText(text.toString()));
+				text = null;
+			}
+		}
+
+		DefinitionNode build(){
+			flushText();
+			return DefinitionNode.newElement(name, attributeNames,
+					attributeValues, children.toArray(EMPTY));
+		}
+	}
+
+	/**
+	 * Parses a procedure definition from a character stream.
+	 *
+	 * @param in The xml to read.
+	 * @return A new compiled definition.
+	 * @throws XmlPullParserException if the xml is not well formed.
+	 * @throws IOException
+	 * @throws ProcedureParseException if the document is not a procedure.
+	 */
+	public static ProcedureDefinition parse(Reader in) throws
+		XmlPullParserException, IOException, ProcedureParseException
+	{
+		XmlPullParser parser = newParser();
+		parser.setInput(in);
+		return parse(parser);
+	}
+
+	/**
+	 * Parses a procedure definition from a byte stream.
+	 *
+	 * @param in The xml to read.
+	 * @param encoding The encoding or null to detect it from the document.
+	 * @return A new compiled definition.
+	 * @throws XmlPullParserException if the xml is not well formed.
+	 * @throws IOException
+	 * @throws ProcedureParseException if the document is not a procedure.
+	 */
+	public static ProcedureDefinition parse(InputStream in, String encoding)
+		throws XmlPullParserException, IOException, ProcedureParseException
+	{
+		XmlPullParser parser = newParser();
+		parser.setInput(in, encoding);
+		return parse(parser);
+	}
+
+	/**
+	 * Reads the document from a parser positioned at the start of the input.
+	 *
+	 * @param parser The parser to read from.
+	 * @return A new compiled definition.
+	 * @throws XmlPullParserException if the xml is not well formed.
+	 * @throws IOException
+	 * @throws ProcedureParseException if the root element is not a Procedure.
+	 */
+	public static ProcedureDefinition parse(XmlPullParser parser) throws
+		XmlPullParserException, IOException, ProcedureParseException
+	{
+		LinkedList<Pending> stack = new LinkedList<Pending>();
+		DefinitionNode root = null;
+		int event = parser.getEventType();
+		while(event != XmlPullParser.END_DOCUMENT){
+			switch(event){
+			case XmlPullParser.START_TAG:
+				if(stack.isEmpty()){
+					if(!"Procedure".equals(parser.getName()))
+						throw new ProcedureParseException("Can't get procedure");
+				} else {
+					stack.getLast().flushText();
+				}
+				stack.addLast(new Pending(parser));
+				break;
+			case XmlPullParser.TEXT:
+				// text outside of the root element is not part of the tree
+				if(!stack.isEmpty())
+					stack.getLast().appendText(parser.getText());
+				break;
+			case XmlPullParser.END_TAG:
+				DefinitionNode node = stack.removeLast().build();
+				if(stack.isEmpty())
+					root = node;
+				else
+					stack.getLast().children.add(node);
+				break;
+			default:
+			}
+			event = parser.next();
+		}
+		if(root == null)
+			throw new ProcedureParseException("Can't get procedure");
+		return new ProcedureDefinition(root);
+	}
+
+	static XmlPullParser newParser() throws XmlPullParserException {
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware(false);
+		factory.setValidating(false);
+		return factory.newPullParser();
+	}
+}
@@ -4,8 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.sana.R;
-import org.sana.android.util.SanaUtil;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -131,14 +129,14 @@ public class RadioElement extends SelectionElement {
         super(id,question,answer, concept, figure, audio, choices, values);
     }
 
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static RadioElement fromXML(String id, String question, 
     		String answer, String concept, String figure, String audio, 
-    		Node node) throws ProcedureParseException  
+    		DefinitionNode node) throws ProcedureParseException  
     {
-        String choicesStr = SanaUtil.getNodeAttributeOrDefault(node, 
+        String choicesStr = node.getAttribute(
         		"choices", "");
-        String valuesStr = SanaUtil.getNodeAttributeOrDefault(node, "values",
+        String valuesStr = node.getAttribute("values",
                 choicesStr);
         return new RadioElement(id, question, answer, concept, figure, audio, 
         		choicesStr.split(SelectionElement.TOKEN_DELIMITER),
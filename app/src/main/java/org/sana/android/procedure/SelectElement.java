@@ -3,8 +3,6 @@ package org.sana.android.procedure;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.sana.android.util.SanaUtil;
-import org.w3c.dom.Node;
 
 import android.content.Context;
 import android.text.TextUtils;
@@ -90,14 +88,14 @@ public class SelectElement extends SelectionElement {
 
     
     /** @see SelectionElement#fromXML(String, String, String, String, String,
-     * String, Node) */
+     * String, DefinitionNode) */
     public static SelectElement fromXML(String id, String question, 
     		String answer, String concept, String figure, String audio, 
-    		Node node) throws ProcedureParseException  
+    		DefinitionNode node) throws ProcedureParseException  
     {
-        String choicesStr = SanaUtil.getNodeAttributeOrDefault(node, "choices",
+        String choicesStr = node.getAttribute("choices",
                 "");
-        String valuesStr = SanaUtil.getNodeAttributeOrDefault(node, "values",
+        String valuesStr = node.getAttribute("values",
                 choicesStr);
         return new SelectElement(id, question, answer, concept, figure, audio, 
         		choicesStr.split(SelectionElement.TOKEN_DELIMITER),
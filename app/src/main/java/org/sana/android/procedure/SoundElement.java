@@ -9,7 +9,6 @@ import java.io.OutputStream;
 
 
 import org.sana.android.db.SanaDB.SoundSQLFormat;
-import org.w3c.dom.Node;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -317,10 +316,10 @@ public class SoundElement extends ProcedureElement implements OnClickListener {
     }
     
 
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
    public static SoundElement fromXML(String id, String question, 
     		String answer, String concept, String figure, String audio, 
-    		Node node)  throws ProcedureParseException 
+    		DefinitionNode node)  throws ProcedureParseException 
     {
         return new SoundElement(id, question, answer, concept, figure, audio);
     }
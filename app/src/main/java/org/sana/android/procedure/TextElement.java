@@ -1,7 +1,5 @@
 package org.sana.android.procedure;
 
-import org.w3c.dom.Node;
-
 import android.content.Context;
 import android.view.View;
 
@@ -45,9 +43,9 @@ public class TextElement extends ProcedureElement {
         super(id, question, answer, concept, figure, audio);
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static TextElement fromXML(String id, String question, String answer,
-    	String concept, String figure, String audio, Node node)    
+    	String concept, String figure, String audio, DefinitionNode node)    
 		throws ProcedureParseException 
     {
     	TextElement el = new TextElement(id, question, answer, concept, figure, audio);
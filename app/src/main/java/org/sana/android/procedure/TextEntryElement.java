@@ -1,8 +1,5 @@
 package org.sana.android.procedure;
 
-import org.sana.android.util.SanaUtil;
-import org.w3c.dom.Node;
-
 import android.content.Context;
 import android.text.InputType;
 import android.text.method.DialerKeyListener;
@@ -122,12 +119,12 @@ public class TextEntryElement extends ProcedureElement {
         this.numericType = numericType;
     }
     
-    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, Node) */
+    /** @see ProcedureElement#fromXML(String, String, String, String, String, String, DefinitionNode) */
     public static TextEntryElement fromXML(String id, String question, 
-    		String answer, String concept, String figure, String audio, Node n) 
+    		String answer, String concept, String figure, String audio, DefinitionNode n) 
     		throws ProcedureParseException 
     {
-    	String numericStr = SanaUtil.getNodeAttributeOrDefault(n, "numeric", 
+    	String numericStr = n.getAttribute("numeric", 
     			"NONE");
     	NumericType numericType = NumericType.NONE;
     	try {
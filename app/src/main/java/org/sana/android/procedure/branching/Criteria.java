@@ -1,12 +1,13 @@
 package org.sana.android.procedure.branching;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import org.sana.BuildConfig;
+import org.sana.android.procedure.DefinitionNode;
 import org.sana.android.procedure.ProcedureElement;
 import org.sana.android.procedure.ProcedureParseException;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import android.util.Log;
 
@@ -40,6 +41,14 @@ public class Criteria {
     public boolean criteriaMet() {
         return true;
     }
+    
+    /**
+     * Adds the elements whose answers this criteria depends on. Defaults to
+     * none. Child classes should override this method.
+     * @param elements the collection to add the elements to
+     */
+    public void collectElements(Collection<ProcedureElement> elements) {
+    }
 
     /**
      * A call to fromXML on a base Criteria type should only be used as a parse
@@ -47,22 +56,22 @@ public class Criteria {
      * method, and can be used on inner nodes. The fromXML method will 
      * recursively create a logic tree from the given XML description.
      */
-    public static Criteria fromXML(Node node,
+    public static Criteria fromXML(DefinitionNode node,
             HashMap<String, ProcedureElement> elts)
             throws ProcedureParseException {
         Log.i(TAG, "Criteria.fromXML(" + node.toString() + ")");
-        if (!node.getNodeName().equals("ShowIf")) {
+        if (!node.getName().equals("ShowIf")) {
             throw new ProcedureParseException("Criteria got NodeName "
-                    + node.getNodeName());
+                    + node.getName());
         }
 
-        NodeList children = node.getChildNodes();
-        if (children.getLength() != 3) {
+        List<DefinitionNode> children = node.getElements();
+        if (children.size() != 1) {
             throw new ProcedureParseException(
-                    "Too many child nodes for a ShowIf: "
-                            + children.getLength());
+                    "Wrong number of child elements for a ShowIf: "
+                            + children.size());
         }
-        Node child = children.item(1);
+        DefinitionNode child = children.get(0);
         return Criteria.switchOnCriteria(child, elts);
     }
     /**
@@ -72,20 +81,20 @@ public class Criteria {
      * @return
      * @throws ProcedureParseException
      */
-    public static Criteria switchOnCriteria(Node child,
+    public static Criteria switchOnCriteria(DefinitionNode child,
         HashMap<String, ProcedureElement> elts) throws ProcedureParseException 
     {
         Criteria c = new Criteria();
-        if (child.getNodeName().equals("Criteria")) {
+        if (child.getName().equals("Criteria")) {
         	//if(BuildConfig.DEBUG) Log.d(TAG, "switchOnCriteria(): Child Node Name: " + "Criteria");
             c = LogicBase.fromXML(child, elts);
-        } else if (child.getNodeName().equals("and")) {
+        } else if (child.getName().equals("and")) {
         	//if(BuildConfig.DEBUG) Log.d(TAG, "switchOnCriteria(): Child Node Name: " + "and");
             c = LogicAnd.fromXML(child, elts);
-        } else if (child.getNodeName().equals("or")) {
+        } else if (child.getName().equals("or")) {
         	//if(BuildConfig.DEBUG) Log.d(TAG, "switchOnCriteria(): Child Node Name: " + "or");
             c = LogicOr.fromXML(child, elts);
-        } else if (child.getNodeName().equals("not")) {
+        } else if (child.getName().equals("not")) {
         	//if(BuildConfig.DEBUG) Log.d(TAG, "switchOnCriteria(): Child Node Name: " + "not");
             c = LogicNot.fromXML(child, elts);
         }
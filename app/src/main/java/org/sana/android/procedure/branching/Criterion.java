@@ -26,6 +26,11 @@ public class Criterion {
     private CriterionType criterionType;
     private ProcedureElement element;
     private String value;
+    // numeric value for GREATER and LESS parsed once at construction
+    private double threshold = 0;
+    // the answer and result of the last evaluation
+    private String lastAnswer = null;
+    private boolean lastResult = false;
     
     /**
      * A new Criterion object
@@ -46,7 +51,7 @@ public class Criterion {
         		(critType == CriterionType.LESS)) 
         {
             try {
-                Double.parseDouble(val);
+                threshold = Double.parseDouble(val);
             } catch (NumberFormatException e) {
                 throw new ProcedureParseException("Cannot compare non-numeric "
                 		+"value. Cannot create criterion for element " 
@@ -78,6 +83,22 @@ public class Criterion {
             // empty user response, lets play it safe and show the page
             return false;
         }
+        // answer has not changed since the last evaluation
+        if (userVal.equals(lastAnswer))
+            return lastResult;
+        lastResult = evaluate(userVal);
+        lastAnswer = userVal;
+        return lastResult;
+    }
+    
+    /**
+     * Returns the element this Criterion tests the answer of.
+     */
+    public ProcedureElement getElement() {
+        return element;
+    }
+    
+    private boolean evaluate(String userVal) {
         // special case MULTI-SELECT
         if (element.getType() == ElementType.MULTI_SELECT) {
             // We (arbitrarily) handle MultiSelect by seeing if 
@@ -105,14 +126,14 @@ public class Criterion {
             break;
         case GREATER:
             try {
-                if (Double.parseDouble(userVal) > Double.parseDouble(value))
+                if (Double.parseDouble(userVal) > threshold)
                     result =  true;
             // show the page if we can't parse
             } catch (NumberFormatException e) {return true;}
             break;
         case LESS:
             try {
-                if (Double.parseDouble(userVal) < Double.parseDouble(value))
+                if (Double.parseDouble(userVal) < threshold)
                     result = true;
             // show the page if we can't parse
             } catch (NumberFormatException e) {return true;}
@@ -1,12 +1,12 @@
 package org.sana.android.procedure.branching;
 
+import java.util.Collection;
 import java.util.HashMap;
 
+import org.sana.android.procedure.DefinitionNode;
 import org.sana.android.procedure.ProcedureElement;
 import org.sana.android.procedure.ProcedureParseException;
 import org.sana.android.procedure.branching.Criterion.CriterionType;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 /**
  * LogicBase is a Criteria subclass that serves as a container for a single
@@ -24,23 +24,27 @@ public  class LogicBase extends Criteria {
         return criterion.criterionMet();
     }
     
-    public static LogicBase fromXML(Node node, HashMap<String, 
+    @Override
+    public void collectElements(Collection<ProcedureElement> elements) {
+        elements.add(criterion.getElement());
+    }
+    
+    public static LogicBase fromXML(DefinitionNode node, HashMap<String, 
     		ProcedureElement> elts) throws ProcedureParseException 
     {
-        if(!node.getNodeName().equals("Criteria")) {
+        if(!node.getName().equals("Criteria")) {
             throw new ProcedureParseException("LogicBase got NodeName " 
-            		+ node.getNodeName());
+            		+ node.getName());
         }
-        if(node.getChildNodes().getLength() != 0) {
+        if(node.getChildCount() != 0) {
             throw new ProcedureParseException("A single criteria has children.");
         }
         
-        NamedNodeMap attributes = node.getAttributes();
-        Node typeNode = attributes.getNamedItem("type");
+        String typeAttr = node.getAttribute("type");
         String type = "";
         CriterionType critType;
-        if(typeNode != null) {                
-            type = typeNode.getNodeValue();
+        if(typeAttr != null) {                
+            type = typeAttr;
             if (type.equals("EQUALS"))
                 critType = CriterionType.EQUALS;
             else if (type.equals("GREATER"))
@@ -49,26 +53,26 @@ public  class LogicBase extends Criteria {
                 critType = CriterionType.LESS;
             else
                 throw new ProcedureParseException("LogicBase bad type for "
-                		+"NodeName " + node.getNodeName());
+                		+"NodeName " + node.getName());
         } else {
             throw new ProcedureParseException("LogicBase no type for NodeName " 
-            		+ node.getNodeName());
+            		+ node.getName());
         }
-        Node elementIdNode = attributes.getNamedItem("id");
+        String elementIdAttr = node.getAttribute("id");
         String elementId = "";
-        if(elementIdNode != null) {                
-            elementId = elementIdNode.getNodeValue();
+        if(elementIdAttr != null) {                
+            elementId = elementIdAttr;
         } else {
             throw new ProcedureParseException("LogicBase no id for NodeName " 
-            		+ node.getNodeName());
+            		+ node.getName());
         }            
-        Node valueNode = attributes.getNamedItem("value");
+        String valueAttr = node.getAttribute("value");
         String value = "";
-        if(valueNode != null) {                
-            value = valueNode.getNodeValue();
+        if(valueAttr != null) {                
+            value = valueAttr;
         } else {
             throw new ProcedureParseException("LogicBase no value for NodeName " 
-            		+ node.getNodeName());
+            		+ node.getName());
         }
         ProcedureElement elt = elts.get(elementId);
         if (elt == null)
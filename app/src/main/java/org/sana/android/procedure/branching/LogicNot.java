@@ -1,11 +1,12 @@
 package org.sana.android.procedure.branching;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
+import org.sana.android.procedure.DefinitionNode;
 import org.sana.android.procedure.ProcedureElement;
 import org.sana.android.procedure.ProcedureParseException;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import android.util.Log;
 
@@ -27,24 +28,29 @@ public class LogicNot extends Criteria {
     	Log.d(TAG, "criterionMet(): NOT: Result:" + result);
     	return result;
     }
+    @Override
+    public void collectElements(Collection<ProcedureElement> elements) {
+        criteria.collectElements(elements);
+    }
+    
     /**
-     * Constructs a negation Criteria from an XML Node
-     * @param node The source Node
+     * Constructs a negation Criteria from an XML node
+     * @param node The source definition node
      * @param elts a list of child criteria
      * @return
      * @throws ProcedureParseException
      */
-    public static LogicNot fromXML(Node node, 
+    public static LogicNot fromXML(DefinitionNode node, 
     		HashMap<String, ProcedureElement> elts) throws ProcedureParseException 
     {
-        if(!node.getNodeName().equals("not"))
+        if(!node.getName().equals("not"))
             throw new ProcedureParseException("LogicNot got NodeName " 
-            		+ node.getNodeName());
-        NodeList children = node.getChildNodes();
-        if (children.getLength() != 3)
+            		+ node.getName());
+        List<DefinitionNode> children = node.getElements();
+        if (children.size() != 1)
             throw new ProcedureParseException("LogicNot wrong number of "
             		+"elements: expects 1");
-        Node child = children.item(1);
+        DefinitionNode child = children.get(0);
         return new LogicNot(Criteria.switchOnCriteria(child, elts));
     }
 }
\ No newline at end of file
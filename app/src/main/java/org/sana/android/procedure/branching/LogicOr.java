@@ -1,14 +1,14 @@
 package org.sana.android.procedure.branching;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
 import org.sana.BuildConfig;
+import org.sana.android.procedure.DefinitionNode;
 import org.sana.android.procedure.ProcedureElement;
 import org.sana.android.procedure.ProcedureParseException;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import android.util.Log;
 
@@ -37,27 +37,31 @@ public class LogicOr extends Criteria {
     		Log.d(TAG, "criterionMet(): OR: Result:" + result);
     	return result;
     }
+    @Override
+    public void collectElements(Collection<ProcedureElement> elements) {
+        for(Criteria c : criteria)
+            c.collectElements(elements);
+    }
+    
     /**
-     * Constructs a logical or Criteria from an XML Node
-     * @param node The source Node
+     * Constructs a logical or Criteria from an XML node
+     * @param node The source definition node
      * @param elts a list of child criteria
      * @return
      * @throws ProcedureParseException
      */
-    public static LogicOr fromXML(Node node, 
+    public static LogicOr fromXML(DefinitionNode node, 
     		HashMap<String, ProcedureElement> elts) throws ProcedureParseException 
     {
-        if(!node.getNodeName().equals("or"))
+        if(!node.getName().equals("or"))
             throw new ProcedureParseException("LogicOr got NodeName " 
-            		+ node.getNodeName());
-        NodeList children = node.getChildNodes();
+            		+ node.getName());
         List<Criteria> crits = new ArrayList<Criteria>();
-        for(int i=0; i<children.getLength();i++) {
-            Node child = children.item(i);
-            if(child.getNodeName().equals("Criteria") || 
-                    child.getNodeName().equals("and") || 
-                    child.getNodeName().equals("or") || 
-                    child.getNodeName().equals("not")) {
+        for(DefinitionNode child : node.getElements()) {
+            if(child.getName().equals("Criteria") || 
+                    child.getName().equals("and") || 
+                    child.getName().equals("or") || 
+                    child.getName().equals("not")) {
                 crits.add(Criteria.switchOnCriteria(child, elts));
             }
         }
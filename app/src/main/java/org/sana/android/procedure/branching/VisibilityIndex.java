@@ -0,0 +1,197 @@
+package org.sana.android.procedure.branching;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sana.android.procedure.ProcedureElement;
+import org.sana.android.procedure.ProcedurePage;
+
+/**
+ * Tracks which pages of a procedure are visible. The elements referenced by
+ * the criteria of each page are indexed so that when answers change only the
+ * pages which depend on a changed element are evaluated again. Pages without
+ * criteria are always visible and never evaluated.
+ * <p/>
+ * Answers are read from the elements, which may read them from their
+ * widgets, so changes are detected by comparing the answer of each indexed
+ * element to the value last seen. The comparison is only made after
+ * {@link #invalidate()} has been called, once, by the first query which
+ * follows. Methods should be called from the thread which owns the procedure
+ * views.
+ */
+public class VisibilityIndex {
+    public static final String TAG = VisibilityIndex.class.getSimpleName();
+
+    private final ProcedurePage[] pages;
+    private final boolean[] visible;
+    private int visibleCount;
+
+    // elements referenced by any criteria and the pages depending on each
+    private final ProcedureElement[] elements;
+    private final int[][] dependents;
+    private final String[] answers;
+    private final BitSet changed;
+    private boolean dirty = false;
+
+    /**
+     * Creates a new index and evaluates every page.
+     *
+     * @param pages the pages of the procedure in order
+     */
+    public VisibilityIndex(List<ProcedurePage> pages) {
+        this.pages = pages.toArray(new ProcedurePage[pages.size()]);
+        visible = new boolean[this.pages.length];
+        changed = new BitSet(this.pages.length);
+
+        Map<ProcedureElement, List<Integer>> index =
+                new IdentityHashMap<ProcedureElement, List<Integer>>();
+        List<ProcedureElement> order = new ArrayList<ProcedureElement>();
+        Set<ProcedureElement> referenced = new LinkedHashSet<ProcedureElement>();
+        for (int i = 0; i < this.pages.length; i++) {
+            referenced.clear();
+            this.pages[i].getCriteria().collectElements(referenced);
+            for (ProcedureElement el : referenced) {
+                List<Integer> list = index.get(el);
+                if (list == null) {
+                    list = new ArrayList<Integer>();
+                    index.put(el, list);
+                    order.add(el);
+                }
+                list.add(i);
+            }
+        }
+        elements = order.toArray(new ProcedureElement[order.size()]);
+        dependents = new int[elements.length][];
+        answers = new String[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            List<Integer> list = index.get(elements[i]);
+            dependents[i] = new int[list.size()];
+            for (int j = 0; j < dependents[i].length; j++)
+                dependents[i][j] = list.get(j);
+            answers[i] = elements[i].getAnswer();
+        }
+        visibleCount = 0;
+        for (int i = 0; i < this.pages.length; i++) {
+            visible[i] = this.pages[i].shouldDisplay();
+            if (visible[i])
+                visibleCount++;
+        }
+    }
+
+    /**
+     * Marks the answers as possibly changed. The index is refreshed by the
+     * next query rather than immediately.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Evaluates the pages which depend on any element whose answer changed
+     * since the last refresh.
+     */
+    public void refresh() {
+        dirty = false;
+        for (int i = 0; i < elements.length; i++) {
+            String answer = elements[i].getAnswer();
+            if ((answer == null) ? answers[i] == null
+                    : answer.equals(answers[i]))
+                continue;
+            answers[i] = answer;
+            for (int page : dependents[i])
+                changed.set(page);
+        }
+        for (int i = changed.nextSetBit(0); i >= 0;
+                i = changed.nextSetBit(i + 1))
+        {
+            boolean display = pages[i].shouldDisplay();
+            if (display != visible[i]) {
+                visible[i] = display;
+                visibleCount += (display) ? 1 : -1;
+            }
+        }
+        changed.clear();
+    }
+
+    private void refreshIfDirty() {
+        if (dirty)
+            refresh();
+    }
+
+    /**
+     * Whether the page at an index is visible given the current answers.
+     */
+    public boolean isVisible(int index) {
+        refreshIfDirty();
+        return visible[index];
+    }
+
+    /**
+     * The number of visible pages.
+     */
+    public int getVisibleCount() {
+        refreshIfDirty();
+        return visibleCount;
+    }
+
+    /**
+     * The number of visible pages before an index.
+     */
+    public int countVisibleBefore(int index) {
+        refreshIfDirty();
+        int count = 0;
+        for (int i = 0; i < index && i < visible.length; i++) {
+            if (visible[i])
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the index of the first visible page at or after an index or
+     * -1 if there is none.
+     */
+    public int nextVisible(int from) {
+        refreshIfDirty();
+        for (int i = Math.max(from, 0); i < visible.length; i++) {
+            if (visible[i])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last visible page at or before an index or
+     * -1 if there is none.
+     */
+    public int previousVisible(int from) {
+        refreshIfDirty();
+        for (int i = Math.min(from, visible.length - 1); i >= 0; i--) {
+            if (visible[i])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the visible page at a position counting only
+     * visible pages or -1 if there is none.
+     */
+    public int indexOfVisible(int position) {
+        refreshIfDirty();
+        int count = 0;
+        for (int i = 0; i < visible.length; i++) {
+            if (visible[i]) {
+                if (count == position)
+                    return i;
+                count++;
+            }
+        }
+        return -1;
+    }
+}
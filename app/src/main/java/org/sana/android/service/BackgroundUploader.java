@@ -1,7 +1,6 @@
 package org.sana.android.service;
 
-import java.util.PriorityQueue;
-
+import org.sana.android.app.UploadQueue;
 import org.sana.android.provider.Encounters;
 import org.sana.android.provider.Patients;
 import org.sana.android.provider.Procedures;
@@ -46,7 +45,7 @@ public class BackgroundUploader extends Service {
 		INVALID
 	}
 	
-	private PriorityQueue<Uri> queue = null;
+	private UploadQueue queue = null;
 
 	private CredentialStatus credentialStatus = CredentialStatus.VALID;
 	//private CheckCredentialsTask checkCredentialsTask = null;
@@ -182,12 +181,10 @@ public class BackgroundUploader extends Service {
 		}
 		
 		Log.i(TAG, "Adding " + procedureUri + " to the upload queue.");
-		QueueManager.addToQueue(this, queue, procedureUri);
-		Log.i(TAG, "Queue is now: " + queue.toString());
-		
+		// Queue position and status are written in a single update
 		int status = getUploadStatusForCredentialStatus(credentialStatus);
-		QueueManager.setProcedureUploadStatus(getApplicationContext(), 
-				procedureUri, status);
+		queue.offer(procedureUri, status);
+		Log.i(TAG, "Queue is now: " + queue.toString());
 		
 		// Start the upload process if possible. Does its work in an AsyncTask
 		processUploadQueue();
@@ -249,14 +246,18 @@ public class BackgroundUploader extends Service {
 				@Override
 				protected Void doInBackground(Void... params) {
 					while (!queue.isEmpty() && updateQueueStatusAndCheckConnection()) {
-						Uri procedure = queue.element();
+						Uri procedure = queue.peek();
 						Log.i(TAG,"Uploading procedure " + procedure);
 						
 						try {
-							// Signify procedure upload in progress
-							QueueManager.setProcedureUploadStatus(
-									BackgroundUploader.this, procedure, 
-									QueueManager.UPLOAD_STATUS_IN_PROGRESS);
+							// Signify procedure upload in progress. Drops
+							// items whose record no longer exists.
+							if (!queue.claim(procedure)) {
+								QueueManager.removeFromQueue(
+										BackgroundUploader.this, queue, 
+										procedure);
+								continue;
+							}
 							
 							boolean uploadResult = 
 								MDSInterface2.postProcedureToDjangoServer(
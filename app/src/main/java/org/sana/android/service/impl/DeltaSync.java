@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2013, Sana
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sana nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Sana BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.sana.android.service.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+
+import org.sana.android.content.Uris;
+import org.sana.api.IModel;
+import org.sana.core.Model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+/**
+ * Tracks the incremental sync position of each collection fetched from the
+ * server. The position is the latest <code>modified</code> time reported by
+ * the server for any object already stored, so later requests only ask for
+ * objects modified since then. Collections are fetched in pages and objects
+ * deleted on the server are returned with {@link Model#voided} set.
+ * <p/>
+ * The watermark only has a resolution of seconds so the comparison is
+ * inclusive. Objects modified in the same second as the watermark are
+ * fetched again rather than missed.
+ * <p/>
+ * Pages are sorted by <code>modified,uuid</code> and each page is requested
+ * from the latest modified time of the page before it, skipping only the
+ * objects already received at that time. An object modified while paging
+ * through the collection is fetched again on a later page instead of
+ * shifting the objects not yet fetched into pages already read.
+ * <p/>
+ * A watermark should only be advanced after every page fetched with it has
+ * been written. Writes are upserts keyed by uuid so, if the process dies
+ * between writing a page and advancing the watermark, the same objects are
+ * fetched and applied again on the next sync.
+ *
+ * @author Sana Development
+ *
+ */
+public class DeltaSync {
+    public static final String TAG = DeltaSync.class.getSimpleName();
+
+    /** Query parameter holding the watermark. */
+    public static final String PARAM_MODIFIED_SINCE = "modified__gte";
+    /** Query parameter holding the sort order of the pages. */
+    public static final String PARAM_ORDER_BY = "order_by";
+    /** Query parameter holding the page size. */
+    public static final String PARAM_LIMIT = "limit";
+    /** Query parameter holding the number of objects to skip. */
+    public static final String PARAM_OFFSET = "offset";
+
+    public static final int PAGE_SIZE = 200;
+
+    /** The page order. Ties on modified are broken by uuid. */
+    public static final String ORDER = "modified,uuid";
+
+    static final String KEY_PREFIX = "last_sync.";
+
+    private DeltaSync(){}
+
+    /**
+     * Returns the preference key of the watermark for a collection.
+     *
+     * @param uri The collection uri.
+     * @return The key or null if the collection is not synced incrementally.
+     */
+    static String getKey(Uri uri){
+        // filtered requests only see part of the collection
+        if(!TextUtils.isEmpty(uri.getEncodedQuery()))
+            return null;
+        switch(Uris.getDescriptor(uri)){
+        case Uris.SUBJECT_DIR:
+            return KEY_PREFIX + "subjects";
+        case Uris.ENCOUNTER_TASK_DIR:
+            return KEY_PREFIX + "encounter_tasks";
+        case Uris.PROCEDURE_DIR:
+            return KEY_PREFIX + "procedures";
+        case Uris.CONCEPT_DIR:
+            return KEY_PREFIX + "concepts";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the watermark of a collection.
+     *
+     * @param context The current context.
+     * @param uri The collection uri.
+     * @return The watermark or null if the collection has never been synced.
+     */
+    public static Date getWatermark(Context context, Uri uri){
+        String key = getKey(uri);
+        if(key == null)
+            return null;
+        SharedPreferences preferences =
+                PreferenceManager.getDefaultSharedPreferences(context);
+        long value = preferences.getLong(key, 0);
+        return (value > 0)? new Date(value): null;
+    }
+
+    /**
+     * Stores the watermark of a collection if it is later than the current
+     * value.
+     *
+     * @param context The current context.
+     * @param uri The collection uri.
+     * @param watermark The new watermark.
+     */
+    public static void setWatermark(Context context, Uri uri, Date watermark){
+        String key = getKey(uri);
+        if(key == null || watermark == null)
+            return;
+        SharedPreferences preferences =
+                PreferenceManager.getDefaultSharedPreferences(context);
+        if(watermark.getTime() > preferences.getLong(key, 0))
+            preferences.edit().putLong(key, watermark.getTime()).commit();
+    }
+
+    /**
+     * Forgets the watermark of a collection so that the next sync fetches
+     * everything.
+     *
+     * @param context The current context.
+     * @param uri The collection uri.
+     */
+    public static void resetWatermark(Context context, Uri uri){
+        String key = getKey(uri);
+        if(key == null)
+            return;
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(key).commit();
+    }
+
+    /**
+     * Appends the watermark, sort order, and paging parameters to a request
+     * uri.
+     *
+     * @param uri The collection request uri.
+     * @param since The watermark or null to fetch everything.
+     * @param offset The number of objects to skip.
+     * @return A new uri for the page.
+     * @see #getNextOffset(Collection, Date, int)
+     */
+    public static URI getPage(URI uri, Date since, int offset){
+        StringBuilder builder = new StringBuilder(uri.toString());
+        builder.append((uri.getRawQuery() == null)? '?': '&');
+        if(since != null){
+            String value = new SimpleDateFormat(IModel.DATE_FORMAT,
+                    Locale.US).format(since);
+            builder.append(PARAM_MODIFIED_SINCE).append('=')
+                .append(encode(value)).append('&');
+        }
+        builder.append(PARAM_ORDER_BY).append('=').append(encode(ORDER))
+            .append('&').append(PARAM_LIMIT).append('=').append(PAGE_SIZE)
+            .append('&').append(PARAM_OFFSET).append('=').append(offset);
+        return URI.create(builder.toString());
+    }
+
+    /**
+     * Returns the latest modified time of a collection of objects and a
+     * current value.
+     */
+    public static Date getLatest(Collection<? extends Model> objs, Date current){
+        Date latest = current;
+        if(objs == null)
+            return latest;
+        for(Model obj: objs){
+            if(obj.modified != null
+                    && (latest == null || obj.modified.after(latest)))
+                latest = obj.modified;
+        }
+        return latest;
+    }
+
+    /**
+     * Returns the offset of the page after a page just received, when the
+     * next page is requested from the latest modified time of the page. Only
+     * the objects already received at that time are skipped.
+     *
+     * @param page The page just received.
+     * @param since The watermark the page was requested with.
+     * @param offset The offset the page was requested with.
+     * @return The offset for the next page.
+     */
+    public static int getNextOffset(Collection<? extends Model> page,
+            Date since, int offset)
+    {
+        Date latest = getLatest(page, since);
+        // without modified times fall back to plain offset paging
+        if(latest == null)
+            return offset + page.size();
+        int next = (latest.equals(since))? offset: 0;
+        for(Model obj: page){
+            if(latest.equals(obj.modified))
+                next++;
+        }
+        return next;
+    }
+
+    /**
+     * Whether a page received holds objects which have not been seen. A
+     * page is not new if it is empty or if it starts with the same object as
+     * the previous page, which happens when the server ignores the offset.
+     *
+     * @param page The page just received.
+     * @param previous The uuid of the first object of the previous page.
+     */
+    public static boolean isNewPage(Collection<? extends Model> page,
+            String previous)
+    {
+        if(page == null || page.isEmpty())
+            return false;
+        String first = page.iterator().next().uuid;
+        return previous == null || !previous.equals(first);
+    }
+
+    static String encode(String value){
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
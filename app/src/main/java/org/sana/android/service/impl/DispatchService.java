@@ -37,6 +37,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
@@ -48,6 +49,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -55,9 +57,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Map;
 import java.util.Queue;
 import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.TimeUnit;
@@ -95,6 +100,7 @@ import org.sana.android.content.core.PatientWrapper;
 import org.sana.android.db.ModelWrapper;
 import org.sana.android.net.MDSInterface;
 import org.sana.android.net.MDSInterface2;
+import org.sana.android.net.MediaFetcher;
 import org.sana.android.provider.EncounterTasks;
 import org.sana.android.provider.Encounters;
 import org.sana.android.provider.BaseContract;
@@ -117,22 +123,27 @@ import org.sana.net.http.handler.EncounterTaskResponseHandler;
 
 import org.sana.net.http.handler.PatientResponseHandler;
 import org.sana.util.DateUtil;
+import org.sana.text.json.JsonCodecs;
 
-import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 
 import android.app.Notification;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
@@ -144,6 +155,7 @@ import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Process;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.app.NotificationCompat;
@@ -199,22 +211,25 @@ public class DispatchService extends Service{
         public abstract List<ContentValues> values(Response<T> response);
 
         public Response<T> fromJson(Message msg){
-            Log.d("JSONHandler<T>", msg.obj.toString());
-            Type type = new TypeToken<Response<T>>(){}.getType();
-
-
-            Gson gson = new GsonBuilder()
-                     .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                     .setDateFormat("yyyy-MM-dd HH:mm:ss")
-                     .create();
-            Response<T> response = gson.fromJson(msg.obj.toString(), type);
-            Log.d("JSONHandler<T>", msg.obj.toString());
-            return response;
+            return fromJson(msg.obj.toString());
         }
 
 
         public Response<T> fromJson(String json){
-            return null;
+            return fromJson(new JsonReader(new StringReader(json)));
+        }
+
+        /**
+         * Decodes a response from a reader, which is closed afterwards.
+         */
+        public Response<T> fromJson(JsonReader reader){
+            Type type = new TypeToken<Response<T>>(){}.getType();
+            Gson gson = JsonCodecs.getApi();
+            try{
+                return gson.fromJson(reader, type);
+            } finally {
+                try{ reader.close(); } catch (IOException e){}
+            }
         }
 
         public abstract ContentValues[] values(T t);
@@ -251,25 +266,16 @@ public class DispatchService extends Service{
     };
 
     final SyncHandler<Collection<Patient>> patientListHandler = new SyncHandler<Collection<Patient>>(){
-        public  Response<Collection<Patient>> fromJson(Message msg){
+        public  Response<Collection<Patient>> fromJson(JsonReader reader){
             Type type = new TypeToken<Response<List<Patient>>>(){}.getType();
-            Gson gson = new GsonBuilder()
-                     .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                     .setDateFormat(DispatchService.this.getString(R.string.cfg_format_date_value))
-                     .create();
-            Response<Collection<Patient>> response = gson.fromJson(msg.obj.toString(), type);
-            return response;
-        }
-
-        public  Response<Collection<Patient>> fromJson(String json){
-            Type type = new TypeToken<Response<List<Patient>>>(){}.getType();
-            Gson gson = new GsonBuilder()
-                     .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                     .setDateFormat(DispatchService.this.getString(R.string.cfg_format_date_value))
-                     .create();
-            Response<Collection<Patient>> response = gson.fromJson(json, type);
-            return response;
-
+            Gson gson = JsonCodecs.getApi(
+                    DispatchService.this.getString(R.string.cfg_format_date_value));
+            try{
+                Response<Collection<Patient>> response = gson.fromJson(reader, type);
+                return response;
+            } finally {
+                try{ reader.close(); } catch (IOException e){}
+            }
         }
 
         @Override
@@ -294,24 +300,10 @@ public class DispatchService extends Service{
                             Log.d(TAG, "deleting erroneous directory " + f.getAbsolutePath());
                             f.delete();
                         }
-                        if(f.exists()){
-                            // no need to download again
-                            Log.d(TAG, "File exists " + f.getAbsolutePath());
-                            if(f.isDirectory())
-                                f.delete();
-                            else
-                                vals.put(Patients.Contract.IMAGE, Uri.fromFile(f).toString());
-                        } else {
-                            // TODO Add image download here
-                            Log.d(TAG, "Need to download file to: " + f.getAbsolutePath());
-                            if(f.exists() && f.isDirectory())
-                                f.delete();
-                            f.getParentFile().mkdirs();
-                            boolean result = MDSInterface2.getFile(DispatchService.this, "media/" + p.getImage().toASCIIString(), f);
-                            Log.d(TAG, "Download success: " + result);
-                            vals.put(Patients.Contract.IMAGE, Uri.fromFile(f).toString());
-
-                        }
+                        // Fetched or revalidated in the background
+                        MediaFetcher.getInstance(DispatchService.this).fetch(
+                                "media/" + p.getImage().toASCIIString(), f);
+                        vals.put(Patients.Contract.IMAGE, Uri.fromFile(f).toString());
                     } catch(Exception e){
                         Log.e(TAG, e.getMessage());
                         e.printStackTrace();
@@ -349,7 +341,8 @@ public class DispatchService extends Service{
             for(EncounterTask task:response.message){
                 ContentValues value = new ContentValues();
                 value.put(EncounterTasks.Contract.UUID , task.uuid);
-                value.put(EncounterTasks.Contract.DUE_DATE , task.due_on);
+                if(task.due_on != null)
+                    value.put(EncounterTasks.Contract.DUE_DATE , task.due_on);
                 value.put(EncounterTasks.Contract.PROCEDURE , task.procedure.uuid);
                 value.put(EncounterTasks.Contract.SUBJECT , task.subject.uuid );
                 value.put(EncounterTasks.Contract.ENCOUNTER, task.encounter.uuid);
@@ -369,7 +362,8 @@ public class DispatchService extends Service{
                 EncounterTask task = iterator.next();
                 ContentValues value = new ContentValues();
                 value.put(EncounterTasks.Contract.UUID , task.uuid);
-                value.put(EncounterTasks.Contract.DUE_DATE , task.due_on);
+                if(task.due_on != null)
+                    value.put(EncounterTasks.Contract.DUE_DATE , task.due_on);
                 value.put(EncounterTasks.Contract.PROCEDURE , task.procedure.uuid);
                 value.put(EncounterTasks.Contract.SUBJECT , task.subject.uuid );
                 if(task.encounter != null)
@@ -628,11 +622,35 @@ public class DispatchService extends Service{
                         case Uris.SUBJECT_DIR:
 
                             try {
-                                //List<ContentValues> content = new ArrayList<ContentValues>();
+                                // Fetch pages modified since the last sync
                                 PatientResponseHandler pHandler = new PatientResponseHandler();
-                                Response<Collection<Patient>> patientListResponse = MDSInterface2.apiGet(uri,username,password,
-                                    pHandler);
-                                bcastCode = createOrUpdateSubjects(patientListResponse.message, startId);
+                                Date latest = DeltaSync.getWatermark(DispatchService.this, msgUri);
+                                String previous = null;
+                                int offset = 0;
+                                bcastCode = Response.Code.OK.code;
+                                while(true){
+                                    Response<Collection<Patient>> patientListResponse = MDSInterface2.apiGet(
+                                        DeltaSync.getPage(uri, latest, offset),username,password,
+                                        pHandler);
+                                    Collection<Patient> page = patientListResponse.message;
+                                    if(page == null){
+                                        bcastCode = patientListResponse.code;
+                                        break;
+                                    }
+                                    if(!DeltaSync.isNewPage(page, previous))
+                                        break;
+                                    bcastCode = createOrUpdateSubjects(page, startId);
+                                    if(bcastCode != Response.Code.OK.code)
+                                        break;
+                                    offset = DeltaSync.getNextOffset(page, latest, offset);
+                                    latest = DeltaSync.getLatest(page, latest);
+                                    if(page.size() != DeltaSync.PAGE_SIZE)
+                                        break;
+                                    previous = page.iterator().next().uuid;
+                                }
+                                // Only advance once every page has been written
+                                if(bcastCode == Response.Code.OK.code)
+                                    DeltaSync.setWatermark(DispatchService.this, msgUri, latest);
                                 bcastMessage = "";
                                 Log.d(TAG, "" +Uris.SUBJECT_DIR+"...code " + bcastCode);
                             } catch (Exception e) {
@@ -705,13 +723,35 @@ public class DispatchService extends Service{
                         case Uris.ENCOUNTER_TASK_DIR:
                             if (method.equals("GET")){
                                 EncounterTaskResponseHandler handler = new EncounterTaskResponseHandler();
-                                Collection<EncounterTask> objs = Collections.emptyList();
                                 try {
-                                    Response<Collection<EncounterTask>> response = MDSInterface2.apiGet(uri,username,password,handler);
-                                    objs = response.message;
-                                    Log.i(TAG, "GET EncounterTask: " + objs.size());
-                                    bcastCode = createOrUpdateEncounterTasks(response.message, startId);
-
+                                    // Fetch pages modified since the last sync
+                                    Date latest = DeltaSync.getWatermark(DispatchService.this, msgUri);
+                                    String previous = null;
+                                    int offset = 0;
+                                    bcastCode = Response.Code.OK.code;
+                                    while(true){
+                                        Response<Collection<EncounterTask>> response = MDSInterface2.apiGet(
+                                            DeltaSync.getPage(uri, latest, offset),username,password,handler);
+                                        Collection<EncounterTask> objs = response.message;
+                                        if(objs == null){
+                                            bcastCode = response.code;
+                                            break;
+                                        }
+                                        Log.i(TAG, "GET EncounterTask: " + objs.size());
+                                        if(!DeltaSync.isNewPage(objs, previous))
+                                            break;
+                                        bcastCode = createOrUpdateEncounterTasks(objs, startId);
+                                        if(bcastCode != Response.Code.OK.code)
+                                            break;
+                                        offset = DeltaSync.getNextOffset(objs, latest, offset);
+                                        latest = DeltaSync.getLatest(objs, latest);
+                                        if(objs.size() != DeltaSync.PAGE_SIZE)
+                                            break;
+                                        previous = objs.iterator().next().uuid;
+                                    }
+                                    // Only advance once every page has been written
+                                    if(bcastCode == Response.Code.OK.code)
+                                        DeltaSync.setWatermark(DispatchService.this, msgUri, latest);
                                 } catch (Exception e) {
                                     Log.e(TAG, "GET failed: " + uri.toASCIIString());
                                     Log.e(TAG,"...." + e.getMessage());
@@ -852,6 +892,37 @@ public class DispatchService extends Service{
     private AtomicInteger numNotifications = new AtomicInteger(0);
     private QueueControl failQueue = new QueueControl();
 
+    // Pauses resending failed requests while there is no network
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver(){
+        @Override
+        public void onReceive(Context context, Intent intent){
+            failQueue.setConnected(isConnected());
+        }
+    };
+
+    // Refreshes subject lists once images have arrived
+    private final MediaFetcher.Listener mMediaListener = new MediaFetcher.Listener(){
+        @Override
+        public void onProgress(File file, boolean updated, int completed, int total){
+            Log.d(TAG, "Media " + completed + "/" + total + ": " + file.getName()
+                    + ((updated)? " updated": " current"));
+        }
+
+        @Override
+        public void onFinished(int updated){
+            Log.i(TAG, "Media fetch finished. updated=" + updated);
+            if(updated > 0)
+                getContentResolver().notifyChange(Subjects.CONTENT_URI, null);
+        }
+    };
+
+    boolean isConnected(){
+        ConnectivityManager manager = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = (manager != null)? manager.getActiveNetworkInfo(): null;
+        return info != null && info.isConnected();
+    }
+
     ////////////////////////////////////////////////////////////////////////////
     //  Begin Overridden methods
     ////////////////////////////////////////////////////////////////////////////
@@ -873,6 +944,10 @@ public class DispatchService extends Service{
             initialized = checkInit();
         mNotificationFactory = NotificationFactory.getInstance(this);
         mNotificationFactory.setContentTitle(R.string.network_alert);
+        MediaFetcher.getInstance(this).setListener(mMediaListener);
+        failQueue.setConnected(isConnected());
+        registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
       }
 
     /* (non-Javadoc)
@@ -957,6 +1032,8 @@ public class DispatchService extends Service{
                 Log.w(TAG, "RESEND queue is not empty");
             }
             failQueue.cancel();
+            unregisterReceiver(mConnectivityReceiver);
+            MediaFetcher.getInstance(this).setListener(null);
             mNotificationFactory.cancelAll();
         } catch(Exception e){
             e.printStackTrace();
@@ -1026,44 +1103,6 @@ public class DispatchService extends Service{
         return true;
     }
 
-    //TODO Refactor these out
-    /**
-     * Returns the number of ms until the next sync should occur
-     *
-     * @param uri
-     * @return
-     */
-    private final long nextSync(Uri uri){
-        final String METHOD = "delta(Uri)";
-
-        SharedPreferences preferences =
-                PreferenceManager.getDefaultSharedPreferences(DispatchService.this);
-        String key = "last_sync";
-
-        switch(Uris.getDescriptor(uri)){
-        default:
-            key = "last_sync";
-        }
-        long now = new Date().getTime();
-        long tdelta = Long.valueOf(getString(R.string.sync_delta));
-        long delta = now - preferences.getLong(key, 0);
-        return delta;
-    }
-
-    private final void resetSync(Uri uri){
-        final String METHOD = "resetSync(Uri)";
-
-        SharedPreferences preferences =
-                PreferenceManager.getDefaultSharedPreferences(DispatchService.this);
-
-        String key = null;
-        switch(Uris.getDescriptor(uri)){
-        default:
-                key = "last_sync";
-        }
-        preferences.edit().putLong(key, new Date().getTime()).commit();
-    }
-
     // The dispatch server URI
     URI uHost = null;
     HttpClient mClient = null;
@@ -1169,26 +1208,22 @@ public class DispatchService extends Service{
         T t = null;
         JsonReader reader = new JsonReader(new InputStreamReader(url.getInputStream()));
         Type type = new TypeToken<T>(){}.getType();
-        t = new Gson().fromJson(reader, type);
+        t = JsonCodecs.get().fromJson(reader, type);
         return t;
     }
 
     static <T> T readJSONStream(HttpURLConnection url, Context context) throws IOException{
         T t = null;
         JsonReader reader = new JsonReader(new InputStreamReader(url.getInputStream()));
-        final Gson gson = new GsonBuilder()
-         .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-         .setDateFormat(context.getString(R.string.cfg_format_date_value))
-         .create();
+        final Gson gson = JsonCodecs.getApi(
+                context.getString(R.string.cfg_format_date_value));
         Type type = new TypeToken<T>(){}.getType();
         return gson.fromJson(reader, type);
     }
 
     static <T> T readJSONStream(String string, Context context) throws IOException{
-        final Gson gson = new GsonBuilder()
-         .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-         .setDateFormat(context.getString(R.string.cfg_format_date_value))
-         .create();
+        final Gson gson = JsonCodecs.getApi(
+                context.getString(R.string.cfg_format_date_value));
         Type type = new TypeToken<T>(){}.getType();
         return gson.fromJson(string, type);
     }
@@ -1259,43 +1294,117 @@ public class DispatchService extends Service{
         }
         return exists;
     }
-    //TODO Handle the modified part
+
+    /**
+     * Maximum number of bound arguments per IN clause. SQLite limits a
+     * statement to 999 host parameters.
+     */
+    static final int MAX_SELECTION_ARGS = 500;
+
+    /**
+     * Fetches the uuid values of all of the objects which already exist in
+     * the table for a content uri using one query per
+     * {@link #MAX_SELECTION_ARGS} objects rather than one per object.
+     *
+     * @param uri The content uri of the table
+     * @param objs The objects to check
+     * @return The uuid values which already exist
+     */
+    public final Set<String> getExistingUuids(Uri uri, Collection<? extends Model> objs){
+        Set<String> existing = new HashSet<String>();
+        if(objs == null || objs.isEmpty())
+            return existing;
+        List<String> uuids = new ArrayList<String>(objs.size());
+        for(Model obj:objs){
+            uuids.add(obj.uuid);
+        }
+        final String[] projection = new String[]{ BaseContract.UUID };
+        for(int start = 0; start < uuids.size(); start += MAX_SELECTION_ARGS){
+            List<String> chunk = uuids.subList(start,
+                    Math.min(start + MAX_SELECTION_ARGS, uuids.size()));
+            StringBuilder selection = new StringBuilder(BaseContract.UUID);
+            selection.append(" IN (");
+            for(int i = 0; i < chunk.size(); i++){
+                selection.append((i == 0)? "?": ",?");
+            }
+            selection.append(")");
+            Cursor c = null;
+            try{
+                c = getContentResolver().query(uri, projection,
+                        selection.toString(),
+                        chunk.toArray(new String[chunk.size()]), null);
+                while(c != null && c.moveToNext()){
+                    existing.add(c.getString(0));
+                }
+            } finally {
+                if(c != null) c.close();
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Applies the inserts and updates for a table as a single batch.
+     *
+     * @return The number of operations applied or -1 if the batch failed.
+     */
+    final int applyUpserts(Uri uri, List<ContentValues> insert, List<ModelEntity> update){
+        return applyUpserts(uri, insert, update, Collections.<String>emptyList());
+    }
+
+    /**
+     * Applies the inserts, updates, and deletes for a table as a single
+     * batch. Deletes are given as uuids and selected explicitly.
+     *
+     * @return The number of operations applied or -1 if the batch failed.
+     */
+    final int applyUpserts(Uri uri, List<ContentValues> insert,
+            List<ModelEntity> update, List<String> delete)
+    {
+        ArrayList<ContentProviderOperation> ops =
+                new ArrayList<ContentProviderOperation>(insert.size()
+                        + update.size() + delete.size());
+        for(ContentValues vals:insert){
+            ops.add(ContentProviderOperation.newInsert(uri)
+                    .withValues(vals).build());
+        }
+        for(ModelEntity me:update){
+            ops.add(ContentProviderOperation.newUpdate(me.getUri())
+                    .withValues(me.getEntityValues()).build());
+        }
+        for(String uuid:delete){
+            ops.add(ContentProviderOperation.newDelete(uri)
+                    .withSelection(BaseContract.UUID + " = ?", new String[]{ uuid })
+                    .build());
+        }
+        if(ops.isEmpty())
+            return 0;
+        try {
+            ContentProviderResult[] results = getContentResolver().applyBatch(
+                    uri.getAuthority(), ops);
+            return results.length;
+        } catch (RemoteException e) {
+            Log.e(TAG, "applyUpserts(): " + e.getMessage());
+        } catch (OperationApplicationException e) {
+            Log.e(TAG, "applyUpserts(): " + e.getMessage());
+        }
+        return -1;
+    }
+    /**
+     * Queues a media file to be fetched, or revalidated with a conditional
+     * GET if it exists, and sets the local uri in the values.
+     */
     public Uri getFileIfNotExistsOrNotModified(URI remote, File dir,
         ContentValues vals, int startId)
     {
         Log.i(TAG, "getFileIfNotExists() remote=" + remote.toASCIIString()
                     +", dir=" +dir.getPath()
                     + ", startId=" + startId);
-        Uri result = Uri.EMPTY;
-        try{
-            File local = new File(dir, remote.toASCIIString());
-            if(local.isDirectory()){
-                Log.w(TAG, "....deleting erroneous directory " + local.getAbsolutePath());
-                local.delete();
-            }
-            if(!local.exists()){
-                try{
-                    Log.d(TAG, "....Need to download file to: " + local.getAbsolutePath());
-                    if(local.isDirectory())
-                        local.delete();
-                    local.getParentFile().mkdirs();
-                    // Try to fetch and add to ContentVals if success
-                    result = Uri.fromFile(local);
-                    sendFileGetDispatchSelf(result,startId);
-                    vals.put(Patients.Contract.IMAGE, result.toString());
-                } catch(Exception e){
-                    Log.w(TAG, "....Something went wront getting" + remote.toASCIIString());
-                    e.printStackTrace();
-                    result = Uri.EMPTY;
-                }
-            } else {
-                // no need to download again
-                // TODO Check file size/mod time
-                Log.d(TAG, "....File exists " + local.getAbsolutePath());
-            }
-        } catch(Exception e){
-            e.printStackTrace();
-        }
+        File local = new File(dir, remote.toASCIIString());
+        Uri result = Uri.fromFile(local);
+        MediaFetcher.getInstance(this).fetch("media/" + remote.toASCIIString(),
+                local);
+        vals.put(Patients.Contract.IMAGE, result.toString());
         return result;
     }
 
@@ -1314,12 +1423,22 @@ public class DispatchService extends Service{
         // Containers for instances that must be inserted or updated
         List<ContentValues> insert = new ArrayList<ContentValues>();
         List<ModelEntity> update = new ArrayList<ModelEntity>();
+        List<String> delete = new ArrayList<String>();
+
+        // Fetch everything we already have in one pass
+        Set<String> existing = getExistingUuids(Subjects.CONTENT_URI, t);
 
         // Begin process of iterating over the list
         int index = 0;
         Iterator<Patient> iterator =  t.iterator();
         while(iterator.hasNext()){
             Patient p = iterator.next();
+            // Remove anything deleted on the server
+            if(p.voided){
+                if(existing.contains(p.uuid))
+                    delete.add(p.uuid);
+                continue;
+            }
             ContentValues vals = new ContentValues();
             vals.put(Patients.Contract.GIVEN_NAME, p.getGiven_name());
             vals.put(Patients.Contract.FAMILY_NAME, p.getFamily_name());
@@ -1339,7 +1458,7 @@ public class DispatchService extends Service{
             }
 
             // Don't add uuid initially
-            if(!exists(Subjects.CONTENT_URI, p)){
+            if(!existing.contains(p.uuid)){
                 vals.put(Patients.Contract.UUID, p.uuid);
                 insert.add(vals);
             } else {
@@ -1350,18 +1469,13 @@ public class DispatchService extends Service{
             }
 
         }
-        // Handle the insert(s)
-        int inserted = getContentResolver().bulkInsert(Subjects.CONTENT_URI,
-                toArray(insert));
-        Log.d(TAG, "....inserted=" + inserted);
-
-        // Handle the update(s)
-        int updated = 0;
-        for(ModelEntity me:update){
-            updated += getContentResolver().update(me.getUri(),
-                    me.getEntityValues(),null,null);
-        }
-        Log.d(TAG, "....updates=" + updated);
+        // Handle the insert(s) and update(s) in one batch
+        Log.d(TAG, "....inserts=" + insert.size() + ", updates=" + update.size()
+                + ", deletes=" + delete.size());
+        int applied = applyUpserts(Subjects.CONTENT_URI, insert, update, delete);
+        Log.d(TAG, "....applied=" + applied);
+        if(applied < 0)
+            return Response.Code.INTERNAL_ERROR.code;
         // Successful return a 200 code
         return Response.Code.OK.code;
     }
@@ -1374,14 +1488,23 @@ public class DispatchService extends Service{
         Map<String,Subject> subjects = new HashMap<String,Subject>();
         List<ContentValues> insert = new ArrayList<ContentValues>();
         List<ModelEntity> update = new ArrayList<ModelEntity>();
+        List<String> delete = new ArrayList<String>();
+        Set<String> existing = getExistingUuids(EncounterTasks.CONTENT_URI, t);
 
         Iterator<EncounterTask> iterator =  t.iterator();
             int index = 0;
             while(iterator.hasNext()){
                 EncounterTask task = iterator.next();
+                // Remove anything deleted on the server
+                if(task.voided){
+                    if(existing.contains(task.uuid))
+                        delete.add(task.uuid);
+                    continue;
+                }
                 ContentValues value = new ContentValues();
                 value.put(EncounterTasks.Contract.UUID , task.uuid);
-                value.put(EncounterTasks.Contract.DUE_DATE , task.due_on);
+                if(task.due_on != null)
+                    value.put(EncounterTasks.Contract.DUE_DATE , task.due_on);
                 value.put(EncounterTasks.Contract.PROCEDURE , task.procedure.uuid);
                 value.put(EncounterTasks.Contract.SUBJECT , task.subject.uuid );
                 subjects.put(task.subject.uuid, task.subject);
@@ -1389,7 +1512,7 @@ public class DispatchService extends Service{
                     value.put(EncounterTasks.Contract.ENCOUNTER, task.encounter.uuid);
                 value.put(EncounterTasks.Contract.OBSERVER , task.assigned_to.uuid);
                 value.put(EncounterTasks.Contract.STATUS , task.getStatus());
-                if(!exists(EncounterTasks.CONTENT_URI, task))
+                if(!existing.contains(task.uuid))
                     insert.add(value);
                 else
                     update.add(
@@ -1398,16 +1521,13 @@ public class DispatchService extends Service{
                             value));
             }
 
-            int inserted = getContentResolver().bulkInsert(EncounterTasks.CONTENT_URI, toArray(insert));
-            Log.d(TAG, "....inserted=" + inserted);
+            Log.d(TAG, "....inserts=" + insert.size());
             Log.d(TAG, "....updates=" + update.size());
-            int updated = 0;
-            for(ModelEntity me:update){
-                updated += getContentResolver().update(me.getUri(),me.getEntityValues(),null,null);
-            }
-            Log.d(TAG, "....updated=" + updated);
+            Log.d(TAG, "....deletes=" + delete.size());
+            int applied = applyUpserts(EncounterTasks.CONTENT_URI, insert, update, delete);
+            Log.d(TAG, "....applied=" + applied);
             //createOrUpdateSubjects(patients.values(), startId);
-            result = 200;
+            result = (applied < 0)? Response.Code.INTERNAL_ERROR.code: 200;
             return result;
         }
 
@@ -1515,7 +1635,8 @@ public class DispatchService extends Service{
         holder.uri = uri;
         Log.d(TAG,"....Queue size: "  + failQueue.size());
         Log.d(TAG,"....adding 1 item");
-        failQueue.add(holder);
+        if(!failQueue.add(holder))
+            return;
         Log.d(TAG,"....Queue size: "  + failQueue.size());
         failQueue.start();
         failQueue.resend();
@@ -1577,7 +1698,17 @@ public class DispatchService extends Service{
 
         public MessageHolder(){}
 
-        public MessageHolder(MessageHolder message){}
+        public MessageHolder(MessageHolder message){
+            intent = message.intent;
+            priority = message.priority;
+            what = message.what;
+            arg1 = message.arg1;
+            arg2 = message.arg2;
+            object = message.object;
+            data = new Bundle(message.data);
+            uri = message.uri;
+            due = message.due;
+        }
 
         public MessageHolder(Message message){
             what = message.what;
@@ -1595,6 +1726,14 @@ public class DispatchService extends Service{
         Object object = null;
         Bundle data = new Bundle();
         Uri uri = Uri.EMPTY;
+        long due = 0;
+
+        /**
+         * Identifies the request so that a request is only retried once.
+         */
+        String key(){
+            return what + ":" + uri;
+        }
 
         public int compareTo(MessageHolder another){
             if(this.what == another.what){
@@ -1609,64 +1748,175 @@ public class DispatchService extends Service{
         }
     }
 
+    /**
+     * Schedules failed requests to be sent again. Each request is retried
+     * after an exponentially increasing, jittered delay based on the number
+     * of attempts already made, which is carried in the message data. A
+     * request which fails again while waiting replaces the waiting copy
+     * rather than being queued twice. Requests which are due close together
+     * are sent as a single batch and nothing is sent while there is no
+     * network connection.
+     */
     class QueueControl{
-        //LinkedList<Integer> queue = new LinkedList<Integer>();
-        LinkedList<Uri> queue = new LinkedList<Uri>();
-
-        //Hashtable<Integer,MessageHolder> pending = new Hashtable<Integer,MessageHolder>();
-        Hashtable<Uri,MessageHolder> pending = new Hashtable<Uri,MessageHolder>();
-        //Hashtable<Integer,ArrayList<MessageHolder>> pending = Hashtable<Integer,ArrayList<MessageHolder>>();
+        static final String EXTRA_ATTEMPTS = "retry_attempts";
+        static final long BASE_DELAY = 15000;
+        static final long MAX_DELAY = 15*60000;
+        static final long BATCH_WINDOW = 2000;
+        static final int MAX_ATTEMPTS = 10;
+
+        // waiting requests by identity and ordered by the time they are due
+        final Map<String,MessageHolder> pending = new HashMap<String,MessageHolder>();
+        final PriorityQueue<MessageHolder> queue = new PriorityQueue<MessageHolder>(11,
+            new Comparator<MessageHolder>(){
+                @Override
+                public int compare(MessageHolder lhs, MessageHolder rhs){
+                    return (lhs.due < rhs.due)? -1: (lhs.due == rhs.due)? 0: 1;
+                }
+            });
 
         private final ScheduledExecutorService scheduler =
             Executors.newScheduledThreadPool(1);
+        private final Random random = new Random();
+        private ScheduledFuture<?> handle = null;
+        private long scheduled = Long.MAX_VALUE;
         AtomicBoolean halt = new AtomicBoolean(false);
+        AtomicBoolean connected = new AtomicBoolean(true);
+
+        final Runnable sender = new Runnable(){
+            public void run(){
+                Log.d(TAG, "QueueControl sender.run()");
+                List<MessageHolder> ready = new ArrayList<MessageHolder>();
+                synchronized(queue){
+                    handle = null;
+                    scheduled = Long.MAX_VALUE;
+                    if(halt.get() || !connected.get())
+                        return;
+                    long cutoff = System.currentTimeMillis() + BATCH_WINDOW;
+                    while(!queue.isEmpty() && queue.peek().due <= cutoff){
+                        MessageHolder next = queue.poll();
+                        pending.remove(next.key());
+                        ready.add(next);
+                    }
+                    reschedule();
+                }
+                Log.d(TAG, "....resending " + ready.size());
+                for(MessageHolder message: ready)
+                    handleFailResend(message);
+            }
+        };
+
+        /**
+         * Schedules the next send if any requests are waiting.
+         */
         public void resend(){
             Log.i(TAG, "QueueControl resend()");
-            if(halt.get()){
+            synchronized(queue){
+                reschedule();
+            }
+        }
+
+        // Must hold the queue lock
+        private void reschedule(){
+            if(halt.get() || !connected.get() || queue.isEmpty())
                 return;
+            long due = queue.peek().due;
+            if(handle != null){
+                if(due >= scheduled)
+                    return;
+                handle.cancel(false);
+            }
+            scheduled = due;
+            long delay = Math.max(0, due - System.currentTimeMillis());
+            handle = scheduler.schedule(sender, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Returns the delay before the next attempt. The delay doubles with
+         * each attempt up to a limit and is then spread randomly over the
+         * upper half of the interval.
+         */
+        long getDelay(int attempts){
+            long delay = BASE_DELAY << Math.min(attempts, 16);
+            delay = Math.min(delay, MAX_DELAY);
+            long half = delay / 2;
+            synchronized(random){
+                return half + (long)(random.nextDouble() * half);
             }
-            final Runnable sender = new Runnable(){
-                public void run(){
-                    Log.d(TAG, "QueueControl sender.run()");
-                    synchronized(queue){
-                        Uri head = queue.poll();
-                        if(head != null){
-                            MessageHolder next = pending.remove(head);
-                            handleFailResend(next);
-                        }
-                    }
-                }
-            };
-            final ScheduledFuture handle =
-                scheduler.schedule(sender, 15, TimeUnit.SECONDS);
         }
 
         public boolean isEmpty(){
             boolean empty = true;
             synchronized(queue){
-                empty = (queue.size() > 0);
+                empty = queue.isEmpty();
             }
             return empty;
         }
 
-        public void add(MessageHolder message){
+        /**
+         * Adds a failed request to be sent again. The attempt count is read
+         * from and written to the message data.
+         *
+         * @return false if the request has been tried too many times.
+         */
+        public boolean add(MessageHolder message){
             Log.i(TAG, "QueueControl add()");
+            int attempts = message.data.getInt(EXTRA_ATTEMPTS, 0) + 1;
+            if(attempts > MAX_ATTEMPTS){
+                Log.w(TAG, "....dropping " + message.key() + " after "
+                        + MAX_ATTEMPTS + " attempts");
+                return false;
+            }
+            message.data.putInt(EXTRA_ATTEMPTS, attempts);
+            message.due = System.currentTimeMillis() + getDelay(attempts - 1);
             synchronized(queue){
-                queue.add(message.uri);
-                pending.put(message.uri, message);
+                MessageHolder previous = pending.put(message.key(), message);
+                if(previous != null)
+                    queue.remove(previous);
+                queue.add(message);
             }
             halt.set(false);
+            return true;
         }
 
         public final void cancel(){
             Log.i(TAG, "QueueControl cancel()");
             halt.set(true);
+            synchronized(queue){
+                if(handle != null)
+                    handle.cancel(false);
+                handle = null;
+                scheduled = Long.MAX_VALUE;
+            }
         }
 
-        public boolean contains(Uri what){
+        /**
+         * Pauses sending while there is no connection. When the connection
+         * returns anything already due is sent.
+         */
+        public void setConnected(boolean connected){
+            Log.i(TAG, "QueueControl setConnected() " + connected);
+            if(this.connected.getAndSet(connected) == connected)
+                return;
+            synchronized(queue){
+                if(connected){
+                    reschedule();
+                } else if(handle != null){
+                    handle.cancel(false);
+                    handle = null;
+                    scheduled = Long.MAX_VALUE;
+                }
+            }
+        }
+
+        public boolean contains(Uri uri){
             boolean contains = false;
             synchronized(queue){
-                contains = queue.contains(what);
+                for(MessageHolder message: pending.values()){
+                    if(message.uri.equals(uri)){
+                        contains = true;
+                        break;
+                    }
+                }
             }
             return contains;
         }
@@ -1680,14 +1930,14 @@ public class DispatchService extends Service{
         }
 
         public MessageHolder[] toArray(){
-            MessageHolder[] array = new MessageHolder[pending.size()];
             synchronized(queue){
+                MessageHolder[] array = new MessageHolder[queue.size()];
                 int index = 0;
-                for(MessageHolder message:pending.values()){
-                    array[index] = new MessageHolder(message);
+                for(MessageHolder message: queue){
+                    array[index++] = new MessageHolder(message);
                 }
+                return array;
             }
-            return array;
         }
 
         public final void start(){
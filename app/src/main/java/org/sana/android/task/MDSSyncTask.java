@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.sana.core.Event;
+import org.sana.android.content.ModelContentProvider;
 import org.sana.android.net.MDSInterface;
 import org.sana.android.provider.Events;
 import org.sana.android.provider.Events.Contract;
@@ -13,8 +14,11 @@ import org.sana.android.util.SanaUtil;
 import android.app.ProgressDialog;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.AsyncTask;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 /**
@@ -32,6 +36,25 @@ public class MDSSyncTask extends AsyncTask<Context, Void, Integer> {
 	/** Indicates synching failed. */
 	public static final Integer EMR_SYNC_FAILURE = 2;
 	
+	/** The largest number of events sent in one request. */
+	public static final int EVENT_PAGE_SIZE = 200;
+
+	/**
+	 * Preference holding the id range, as "first,last", of a batch of events
+	 * which the server has accepted but which may not have been marked as
+	 * uploaded yet.
+	 */
+	static final String PREFERENCE_EVENTS_ACKED = "s_events_acked";
+
+	private static final String[] EVENT_PROJECTION = new String[] {
+		Contract._ID,
+		Contract.CREATED,
+		Contract.EVENT_TYPE,
+		Contract.EVENT_VALUE,
+		Contract.ENCOUNTER,
+		Contract.SUBJECT,
+		Contract.OBSERVER };
+
 	private ProgressDialog progressDialog;
 	private Context mContext = null; // TODO context leak?
 	
@@ -48,86 +71,118 @@ public class MDSSyncTask extends AsyncTask<Context, Void, Integer> {
 		return MDSInterface.updatePatientDatabase(c, c.getContentResolver());
 	}
 	
+	// Reads a page of events which have not been uploaded
+	private static Cursor queryEvents(Context c, long after){
+		Uri uri = Events.CONTENT_URI.buildUpon()
+				.appendQueryParameter(ModelContentProvider.QUERY_LIMIT,
+						String.valueOf(EVENT_PAGE_SIZE))
+				.build();
+		return c.getContentResolver().query(uri, EVENT_PROJECTION,
+				Contract.UPLOADED + "=? AND " + Contract._ID + ">?",
+				new String[] { "0", String.valueOf(after) },
+				Contract._ID + " ASC");
+	}
+
+	// Marks the events with ids in (first, last] as uploaded
+	private static int markUploaded(Context c, long first, long last){
+		ContentValues cv = new ContentValues();
+		cv.put(Contract.UPLOADED, 1);
+		// a single statement so the batch is marked in one transaction
+		return c.getContentResolver().update(Events.CONTENT_URI, cv,
+				Contract.UPLOADED + "=? AND " + Contract._ID + ">? AND "
+						+ Contract._ID + "<=?",
+				new String[] { "0", String.valueOf(first),
+						String.valueOf(last) });
+	}
+
+	/**
+	 * Completes the marking of a batch which the server acknowledged if the
+	 * previous sync stopped before the batch was marked as uploaded.
+	 */
+	private static void resumeAcknowledged(Context c,
+			SharedPreferences preferences)
+	{
+		String acked = preferences.getString(PREFERENCE_EVENTS_ACKED, null);
+		if (acked == null)
+			return;
+		try {
+			String[] range = acked.split(",");
+			int rows = markUploaded(c, Long.parseLong(range[0]),
+					Long.parseLong(range[1]));
+			Log.i(TAG, "Marked " + rows + " previously acknowledged events.");
+		} catch (RuntimeException e) {
+			Log.w(TAG, "Discarding bad acknowledged range: " + acked);
+		}
+		preferences.edit().remove(PREFERENCE_EVENTS_ACKED).commit();
+	}
+
+	/**
+	 * Uploads the events which have not been uploaded in pages of
+	 * {@link #EVENT_PAGE_SIZE}. Each page is marked as uploaded as soon as
+	 * the server accepts it so a failure only requires the remaining pages
+	 * to be sent again.
+	 */
 	private boolean syncEvents(Context c) {
-		Cursor cursor = null; 
 		Log.i(TAG, "Syncing the event log to the MDS.");
-		
-		try {
-			// Get all un-uploaded events.
-			cursor = c.getContentResolver().query(Events.CONTENT_URI, 
-					new String[] {  Contract._ID, 
-								    Contract.CREATED, 
-									Contract.EVENT_TYPE, 
-									Contract.EVENT_VALUE, 
-									Contract.ENCOUNTER, 
-									Contract.SUBJECT, 
-									Contract.OBSERVER }, 
-					Contract.UPLOADED+"=?", new String[] { "0" }, null);
-			int numEvents = cursor.getCount();
-			
-			if (numEvents == 0) {
-				// Nothing to upload, quit.
-				Log.i(TAG, "No unuploaded events. Skipping syncEvents.");
-				return true;
-			} else {
-				Log.i(TAG, "There are " + numEvents + " unuploaded events.");
-			}
-			
-			StringBuilder sb = new StringBuilder("(");
-			List<Event> events = new ArrayList<Event>(numEvents);
+		SharedPreferences preferences =
+				PreferenceManager.getDefaultSharedPreferences(c);
+		resumeAcknowledged(c, preferences);
 
-			cursor.moveToFirst();
-			while (!cursor.isAfterLast()) {
-				
-				Event e = new Event();
-				e.event_time = cursor.getLong(cursor.getColumnIndex(
-						Contract.CREATED));
-				e.event_type = cursor.getString(cursor.getColumnIndex(
-						Contract.EVENT_TYPE));
-				e.event_value = cursor.getString(cursor.getColumnIndex(
-						Contract.EVENT_VALUE));
-				e.encounter = cursor.getString(cursor.getColumnIndex(
-						Contract.ENCOUNTER));
-				e.subject = cursor.getString(cursor.getColumnIndex(
-						Contract.SUBJECT));
-				e.observer = cursor.getString(cursor.getColumnIndex(
-						Contract.OBSERVER));
-				int id = cursor.getInt(cursor.getColumnIndex(
-						Contract._ID));
-				events.add(e);
-				
-				sb.append(id);
-				if (!cursor.isLast()) {
-					sb.append(",");
+		long after = -1;
+		int total = 0;
+		try {
+			while (true) {
+				List<Event> events = new ArrayList<Event>(EVENT_PAGE_SIZE);
+				long last = after;
+				Cursor cursor = queryEvents(c, after);
+				try {
+					while (cursor != null && cursor.moveToNext()) {
+						Event e = new Event();
+						e.event_time = cursor.getLong(1);
+						e.event_type = cursor.getString(2);
+						e.event_value = cursor.getString(3);
+						e.encounter = cursor.getString(4);
+						e.subject = cursor.getString(5);
+						e.observer = cursor.getString(6);
+						events.add(e);
+						last = cursor.getLong(0);
+					}
+				} finally {
+					if (cursor != null)
+						cursor.close();
 				}
-				cursor.moveToNext();
-			}
-			sb.append(")");
+				if (events.isEmpty())
+					break;
 
-			// Submit the events to the MDS
-			boolean result = MDSInterface.submitEvents(c, events);
-			
-			// Set the uploaded events as uploaded in the database.
-			if (result) {
-				Log.i(TAG, "Successfully uploaded " + numEvents + " events.");
-				ContentValues cv = new ContentValues();
-				cv.put(Contract.UPLOADED, 1);
-				int rowsUpdated = c.getContentResolver().update(
-						Events.CONTENT_URI, cv, 
-						Contract._ID +" in " + sb.toString(), null);
-				if (rowsUpdated != numEvents) {
-					Log.w(TAG, 
+				// Submit the events to the MDS
+				if (!MDSInterface.submitEvents(c, events)) {
+					Log.w(TAG, "Event upload stopped after " + total
+							+ " events.");
+					return false;
+				}
+				// Remember the batch until it is marked in case we stop here
+				preferences.edit().putString(PREFERENCE_EVENTS_ACKED,
+						after + "," + last).commit();
+				int rowsUpdated = markUploaded(c, after, last);
+				preferences.edit().remove(PREFERENCE_EVENTS_ACKED).commit();
+				if (rowsUpdated != events.size()) {
+					Log.w(TAG,
 					"Didn't get as many rows updated as we thought we would.");
 				}
-			} 
-			return result;
+				total += events.size();
+				after = last;
+				if (events.size() < EVENT_PAGE_SIZE)
+					break;
+			}
+			if (total == 0)
+				Log.i(TAG, "No unuploaded events. Skipping syncEvents.");
+			else
+				Log.i(TAG, "Successfully uploaded " + total + " events.");
+			return true;
 		} catch (Exception e) {
 			Log.e(TAG, "While trying to submit the event log, got exception: "
 					+ e.toString());
 			e.printStackTrace();
-		} finally {
-			if (cursor != null)
-				cursor.close();
 		}
 		return false;
 	}
@@ -44,8 +44,8 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 import org.sana.R;
 import org.sana.net.Response;
+import org.sana.text.json.JsonCodecs;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import android.content.Intent;
@@ -103,7 +103,7 @@ public class NetHandler<T> extends Handler {
 			//Log.d(TAG, "Received from MDS:" + responseString);
 			
 			Type type = new TypeToken<Response<T>>(){}.getType();
-			response = new Gson().fromJson(responseString, type);
+			response = JsonCodecs.get().fromJson(responseString, type);
 		} catch (ClientProtocolException e) {
 			Log.e(TAG, "ClientProtocolException: " + e.getMessage());
 		} catch (IOException e) {